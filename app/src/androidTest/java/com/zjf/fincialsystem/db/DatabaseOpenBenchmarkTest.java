@@ -0,0 +1,150 @@
+package com.zjf.fincialsystem.db;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zjf.fincialsystem.db.dao.BaseDao;
+import com.zjf.fincialsystem.db.dao.TransactionDao;
+import com.zjf.fincialsystem.model.Transaction;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 数据库打开耗时测试
+ * 比较口令（每次打开都做PBKDF2密钥派生）与原始密钥，分别在cipher_page_size为1024和4096时的打开耗时，
+ * 打开耗时包含密钥派生和第一次查询，结果输出到logcat
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseOpenBenchmarkTest {
+
+    private static final String TAG = "DatabaseOpenBenchmark";
+    private static final int[] PAGE_SIZES = {1024, 4096};
+    private static final int ROUNDS = 5;
+    private static final int ROWS = 5_000;
+
+    private Context context;
+    private final List<File> files = new ArrayList<>();
+    private String passphrase;
+    private String rawKey;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+
+        // 与SecurityUtils相同：32字节随机密钥，口令为Base64，原始密钥为x'十六进制'
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        passphrase = Base64.encodeToString(key, Base64.NO_WRAP);
+        StringBuilder hex = new StringBuilder("x'");
+        for (byte b : key) {
+            hex.append(String.format("%02X", b & 0xFF));
+        }
+        rawKey = hex.append('\'').toString();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void openLatency_passphraseVsRawKey() {
+        for (int pageSize : PAGE_SIZES) {
+            for (boolean raw : new boolean[]{false, true}) {
+                String key = raw ? rawKey : passphrase;
+                File file = new File(context.getCacheDir(),
+                        "open_benchmark_" + pageSize + (raw ? "_raw" : "_passphrase") + ".db");
+                files.add(file);
+                create(file, key, pageSize);
+
+                long[] nanos = new long[ROUNDS];
+                for (int round = 0; round < ROUNDS; round++) {
+                    long begin = System.nanoTime();
+                    SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), key, null,
+                            SQLiteDatabase.OPEN_READWRITE, pageSizeHook(pageSize));
+                    // 密钥在第一次读取时才派生，计入打开耗时
+                    assertEquals(pageSize, queryLong(database, "PRAGMA cipher_page_size"));
+                    queryLong(database, "SELECT COUNT(*) FROM sqlite_master");
+                    nanos[round] = System.nanoTime() - begin;
+                    database.close();
+                }
+                Arrays.sort(nanos);
+                Log.i(TAG, String.format("%s, cipher_page_size=%d: 打开中位数%.1fms，最慢%.1fms（%d次）",
+                        raw ? "原始密钥" : "口令", pageSize, nanos[ROUNDS / 2] / 1e6, nanos[ROUNDS - 1] / 1e6, ROUNDS));
+            }
+        }
+    }
+
+    /**
+     * 按应用的表结构建库并写入一些交易记录
+     */
+    private void create(File file, String key, int pageSize) {
+        file.delete();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, key, null, pageSizeHook(pageSize));
+        try {
+            new FinanceDatabaseHelper(context).onCreate(database);
+            long now = System.currentTimeMillis();
+            List<Transaction> transactions = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                Transaction transaction = new Transaction(0, 1, i % 11 + 1, Transaction.TYPE_EXPENSE,
+                        i % 500 + 0.5, new Date(now - i * 60_000L), "测试" + i);
+                transaction.setCreatedAt(now);
+                transaction.setUpdatedAt(now);
+                transactions.add(transaction);
+            }
+            assertEquals(ROWS, new TransactionDao(database).insertAll(transactions).getSuccessCount());
+        } finally {
+            BaseDao.releaseStatements(database);
+            database.close();
+        }
+    }
+
+    /**
+     * cipher_page_size需要在设置密钥之后、第一次访问之前设置，创建和打开时必须一致
+     */
+    private static SQLiteDatabaseHook pageSizeHook(final int pageSize) {
+        return new SQLiteDatabaseHook() {
+            @Override
+            public void preKey(SQLiteDatabase database) {
+            }
+
+            @Override
+            public void postKey(SQLiteDatabase database) {
+                database.rawExecSQL("PRAGMA cipher_page_size = " + pageSize);
+            }
+        };
+    }
+
+    private static long queryLong(SQLiteDatabase database, String sql) {
+        Cursor cursor = database.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
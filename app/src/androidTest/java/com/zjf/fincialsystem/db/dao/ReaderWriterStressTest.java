@@ -0,0 +1,229 @@
+package com.zjf.fincialsystem.db.dao;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
+import com.zjf.fincialsystem.model.Transaction;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 读写并发压力测试
+ * 一个线程批量写入交易记录的同时，多个线程执行TransactionDao的聚合查询，
+ * 分别统计读连接池和读写共用写连接两种方式下查询的吞吐量和p99延迟，结果输出到logcat
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReaderWriterStressTest {
+
+    private static final String TAG = "ReaderWriterStressTest";
+    private static final String KEY = "reader_writer_stress_test";
+    private static final long USER_ID = 1;
+
+    private static final int READER_THREADS = 4;
+    private static final int READER_CONNECTIONS = 2;
+    private static final int SEED_ROWS = 20_000;
+    private static final int WRITE_BATCHES = 40;
+    private static final int WRITE_BATCH_SIZE = 500;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File databaseFile;
+    private SQLiteDatabase database;
+    private ReaderPool readerPool;
+    private long startTime;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+        databaseFile = new File(context.getCacheDir(), "reader_writer_stress_test.db");
+        databaseFile.delete();
+        new File(databaseFile.getPath() + "-wal").delete();
+        new File(databaseFile.getPath() + "-shm").delete();
+        database = SQLiteDatabase.openOrCreateDatabase(databaseFile, KEY, null);
+        new FinanceDatabaseHelper(context).onCreate(database);
+
+        Cursor cursor = database.rawQuery("PRAGMA journal_mode = WAL", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("wal", cursor.getString(0).toLowerCase());
+        } finally {
+            cursor.close();
+        }
+
+        startTime = System.currentTimeMillis() - 365 * DAY;
+        BatchResult seeded = new TransactionDao(database).insertAll(transactions(0, SEED_ROWS));
+        assertEquals(SEED_ROWS, seeded.getSuccessCount());
+        readerPool = new ReaderPool(databaseFile.getPath(), KEY, READER_CONNECTIONS);
+    }
+
+    @After
+    public void tearDown() {
+        if (readerPool != null) {
+            readerPool.close();
+        }
+        if (database != null) {
+            BaseDao.releaseStatements(database);
+            database.close();
+        }
+        databaseFile.delete();
+        new File(databaseFile.getPath() + "-wal").delete();
+        new File(databaseFile.getPath() + "-shm").delete();
+    }
+
+    @Test
+    public void aggregatesDuringBulkInsert() throws Exception {
+        // 先跑共用写连接，再跑读连接池，两次写入的行数相同
+        Result shared = run("共用写连接", new TransactionDao(database), SEED_ROWS);
+        Result pooled = run("读连接池", new TransactionDao(database, readerPool),
+                SEED_ROWS + WRITE_BATCHES * WRITE_BATCH_SIZE);
+
+        Log.i(TAG, shared.toString());
+        Log.i(TAG, pooled.toString());
+        assertTrue(shared.reads > 0);
+        assertTrue(pooled.reads > 0);
+    }
+
+    /**
+     * 写线程分批插入，同时读线程循环执行聚合查询，写入完成后停止读线程
+     * @param rowsBefore 开始前的行数，用于检查写入是否完整
+     */
+    private Result run(String name, final TransactionDao dao, int rowsBefore) throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch writerDone = new CountDownLatch(1);
+        final List<List<Long>> latencies = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+
+        for (int i = 0; i < READER_THREADS; i++) {
+            final List<Long> threadLatencies = new ArrayList<>();
+            latencies.add(threadLatencies);
+            final int reader = i;
+            readers.add(new Thread(() -> {
+                try {
+                    Date end = new Date();
+                    Date start = new Date(end.getTime() - 90 * DAY);
+                    while (writerDone.getCount() > 0) {
+                        long begin = System.nanoTime();
+                        if (reader % 2 == 0) {
+                            dao.queryOverview(USER_ID, start, end);
+                        } else {
+                            dao.sumExpenseByDateRange(USER_ID, start, end);
+                        }
+                        threadLatencies.add(System.nanoTime() - begin);
+                    }
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                }
+            }, name + "-reader-" + i));
+        }
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int batch = 0; batch < WRITE_BATCHES; batch++) {
+                    int from = SEED_ROWS + batch * WRITE_BATCH_SIZE;
+                    BatchResult result = dao.insertAll(transactions(from, WRITE_BATCH_SIZE));
+                    assertEquals(WRITE_BATCH_SIZE, result.getSuccessCount());
+                }
+            } catch (Throwable t) {
+                error.compareAndSet(null, t);
+            } finally {
+                writerDone.countDown();
+            }
+        }, name + "-writer");
+
+        long begin = System.nanoTime();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        assertNull("并发执行出错: " + error.get(), error.get());
+        assertEquals(rowsBefore + WRITE_BATCHES * WRITE_BATCH_SIZE,
+                dao.simpleQueryForLong("SELECT COUNT(*) FROM transactions"));
+
+        List<Long> all = new ArrayList<>();
+        for (List<Long> threadLatencies : latencies) {
+            all.addAll(threadLatencies);
+        }
+        return new Result(name, all, elapsed);
+    }
+
+    private List<Transaction> transactions(int from, int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            Transaction transaction = new Transaction(0, USER_ID, i % 11 + 1,
+                    i % 5 == 0 ? Transaction.TYPE_INCOME : Transaction.TYPE_EXPENSE,
+                    i % 500 + 0.5, new Date(startTime + (i % 365) * DAY), "压力测试" + i);
+            transaction.setCreatedAt(startTime);
+            transaction.setUpdatedAt(startTime);
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    /**
+     * 一次压力测试中读操作的统计
+     */
+    private static class Result {
+        final String name;
+        final int reads;
+        final double throughput;
+        final double p50Ms;
+        final double p99Ms;
+        final double writeMs;
+
+        Result(String name, List<Long> latencies, long elapsedNanos) {
+            this.name = name;
+            this.reads = latencies.size();
+            long[] sorted = new long[reads];
+            for (int i = 0; i < reads; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            this.throughput = reads / (elapsedNanos / 1e9);
+            this.p50Ms = percentile(sorted, 0.50) / 1e6;
+            this.p99Ms = percentile(sorted, 0.99) / 1e6;
+            this.writeMs = elapsedNanos / 1e6;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 写入%.0fms，查询%d次，吞吐量%.1f次/秒，p50 %.2fms，p99 %.2fms",
+                    name, writeMs, reads, throughput, p50Ms, p99Ms);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.zjf.fincialsystem.db.dao;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.model.Transaction;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 行映射耗时测试
+ * 映射5万条交易记录，比较每行调用getColumnIndex查找列索引与每个游标只解析一次，结果输出到logcat。
+ * 两种方式使用同一个映射器和同一条查询，差别只在列索引的解析次数
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMapperBenchmarkTest {
+
+    private static final String TAG = "RowMapperBenchmark";
+    private static final long USER_ID = 1;
+    private static final int ROWS = 50_000;
+    private static final int ROUNDS = 5;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File databaseFile;
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+        databaseFile = new File(context.getCacheDir(), "row_mapper_benchmark.db");
+        databaseFile.delete();
+        database = SQLiteDatabase.openOrCreateDatabase(databaseFile, "row_mapper_benchmark", null);
+        new FinanceDatabaseHelper(context).onCreate(database);
+
+        long startTime = System.currentTimeMillis() - 365 * DAY;
+        List<Transaction> transactions = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Transaction transaction = new Transaction(0, USER_ID, i % 11 + 1, Transaction.TYPE_EXPENSE,
+                    i % 500 + 0.5, new Date(startTime + (i % 365) * DAY), "测试" + i);
+            transaction.setNote("备注" + i);
+            transaction.setCreatedAt(startTime);
+            transaction.setUpdatedAt(startTime);
+            transactions.add(transaction);
+        }
+        assertEquals(ROWS, new TransactionDao(database).insertAll(transactions).getSuccessCount());
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            BaseDao.releaseStatements(database);
+            database.close();
+        }
+        databaseFile.delete();
+    }
+
+    @Test
+    public void map50k_resolvedOnceVsPerRow() {
+        final RowMapper<Transaction> mapper = TransactionDao.getTransactionMapper();
+        long[] perRow = new long[ROUNDS];
+        long[] once = new long[ROUNDS];
+        // 交替执行，两种方式受缓存和温度的影响相同
+        for (int round = 0; round < ROUNDS; round++) {
+            perRow[round] = time(mapper, true);
+            once[round] = time(mapper, false);
+        }
+        log("每行getColumnIndex", perRow);
+        log("每个游标解析一次", once);
+    }
+
+    /**
+     * 查询全部交易记录并映射
+     * @param perRow 是否每行重新解析列索引（旧实现）
+     * @return 耗时（纳秒）
+     */
+    private long time(RowMapper<Transaction> mapper, boolean perRow) {
+        List<Transaction> result = new ArrayList<>(ROWS);
+        long begin = System.nanoTime();
+        Cursor cursor = database.query(FinanceDatabaseHelper.TABLE_TRANSACTIONS, mapper.getColumns(),
+                "user_id = ?", new String[]{String.valueOf(USER_ID)}, null, null, null);
+        try {
+            if (perRow) {
+                while (cursor.moveToNext()) {
+                    result.add(mapper.map(cursor, mapper.resolve(cursor)));
+                }
+            } else {
+                mapper.mapAll(cursor, result);
+            }
+        } finally {
+            cursor.close();
+        }
+        long elapsed = System.nanoTime() - begin;
+        assertEquals(ROWS, result.size());
+        return elapsed;
+    }
+
+    private static void log(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        Log.i(TAG, String.format("%s: 映射%d行中位数%.1fms，每行%.0fns（%d轮）",
+                name, ROWS, median / 1e6, (double) median / ROWS, nanos.length));
+    }
+}
@@ -0,0 +1,186 @@
+package com.zjf.fincialsystem.db.dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.model.Transaction;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 预编译语句缓存的单次调用耗时测试
+ * 在10万行的交易记录表上，比较缓存语句与每次重新解析SQL的单值查询和插入，结果输出到logcat
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementCacheBenchmarkTest {
+
+    private static final String TAG = "StatementCacheBenchmark";
+    private static final long USER_ID = 1;
+    private static final int ROWS = 100_000;
+    private static final int WARMUP = 100;
+    private static final int CALLS = 2_000;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private File databaseFile;
+    private SQLiteDatabase database;
+    private TransactionDao dao;
+    private long startTime;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+        databaseFile = new File(context.getCacheDir(), "statement_cache_benchmark.db");
+        databaseFile.delete();
+        database = SQLiteDatabase.openOrCreateDatabase(databaseFile, "statement_cache_benchmark", null);
+        new FinanceDatabaseHelper(context).onCreate(database);
+
+        dao = new TransactionDao(database);
+        startTime = System.currentTimeMillis() - 365 * DAY;
+        List<Transaction> transactions = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            transactions.add(transaction(i));
+        }
+        assertEquals(ROWS, dao.insertAll(transactions).getSuccessCount());
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            BaseDao.releaseStatements(database);
+            database.close();
+        }
+        databaseFile.delete();
+    }
+
+    @Test
+    public void scalarAggregate_cachedVsUncached() {
+        final String sql = findHotQuery("sumByTypeAndDateRange");
+        final Date start = new Date(startTime + 100 * DAY);
+        final Date end = new Date(startTime + 107 * DAY);
+        final String[] args = {String.valueOf(USER_ID), String.valueOf(Transaction.TYPE_EXPENSE),
+                String.valueOf(start.getTime()), String.valueOf(end.getTime())};
+        long expected = dao.sumExpenseByDateRange(USER_ID, start, end);
+        assertTrue(expected > 0);
+
+        // 缓存语句：重新绑定参数后执行
+        long[] cached = measure(() -> assertEquals(expected, dao.sumExpenseByDateRange(USER_ID, start, end)));
+        // 旧实现：每次rawQuery重新解析SQL
+        long[] rawQuery = measure(() -> {
+            Cursor cursor = database.rawQuery(sql, args);
+            try {
+                cursor.moveToFirst();
+                assertEquals(expected, cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+        });
+        // 每次编译新语句，用完关闭
+        long[] compiled = measure(() -> {
+            SQLiteStatement statement = database.compileStatement(sql);
+            try {
+                BaseDao.bindArgs(statement, USER_ID, Transaction.TYPE_EXPENSE, start.getTime(), end.getTime());
+                assertEquals(expected, statement.simpleQueryForLong());
+            } finally {
+                statement.close();
+            }
+        });
+
+        log("sumExpenseByDateRange 缓存语句", cached);
+        log("sumExpenseByDateRange rawQuery", rawQuery);
+        log("sumExpenseByDateRange 每次编译", compiled);
+    }
+
+    @Test
+    public void insert_cachedVsContentValues() {
+        final int[] next = {ROWS};
+        // 缓存语句：TransactionDao.insert
+        long[] cached = measure(() -> assertTrue(dao.insert(transaction(next[0]++)) > 0));
+        // 旧实现：每次构建ContentValues，由SQLiteDatabase.insert拼接并编译INSERT
+        long[] contentValues = measure(() -> {
+            Transaction transaction = transaction(next[0]++);
+            ContentValues values = new ContentValues();
+            values.put("user_id", transaction.getUserId());
+            values.put("amount_cents", transaction.getAmountCents());
+            values.put("type", transaction.getType());
+            values.put("category_id", transaction.getCategoryId());
+            values.put("date", transaction.getDate().getTime());
+            values.put("description", transaction.getDescription());
+            values.put("note", transaction.getNote());
+            values.put("image_path", transaction.getImagePath());
+            values.put("created_at", transaction.getCreatedAt());
+            values.put("updated_at", transaction.getUpdatedAt());
+            assertTrue(database.insert(FinanceDatabaseHelper.TABLE_TRANSACTIONS, null, values) > 0);
+        });
+
+        log("insert 缓存语句", cached);
+        log("insert ContentValues", contentValues);
+    }
+
+    /**
+     * 预热后逐次计时
+     * @return 每次调用的耗时（纳秒），已排序
+     */
+    private static long[] measure(Runnable call) {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+        long[] nanos = new long[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            long begin = System.nanoTime();
+            call.run();
+            nanos[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void log(String name, long[] sorted) {
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        Log.i(TAG, String.format("%s: 平均%.1fµs，p50 %.1fµs，p99 %.1fµs（%d次，表中%d行）",
+                name, total / 1e3 / sorted.length, sorted[sorted.length / 2] / 1e3,
+                sorted[(int) Math.ceil(sorted.length * 0.99) - 1] / 1e3, sorted.length, ROWS));
+    }
+
+    private static String findHotQuery(String name) {
+        for (String[] query : TransactionDao.getHotQueries()) {
+            if (query[0].equals(name)) {
+                return query[1];
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private Transaction transaction(int i) {
+        Transaction transaction = new Transaction(0, USER_ID, i % 11 + 1,
+                i % 5 == 0 ? Transaction.TYPE_INCOME : Transaction.TYPE_EXPENSE,
+                i % 500 + 0.5, new Date(startTime + (i % 365) * DAY), "测试" + i);
+        transaction.setCreatedAt(startTime);
+        transaction.setUpdatedAt(startTime);
+        return transaction;
+    }
+}
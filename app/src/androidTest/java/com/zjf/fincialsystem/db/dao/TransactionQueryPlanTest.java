@@ -0,0 +1,92 @@
+package com.zjf.fincialsystem.db.dao;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 交易记录热点查询的执行计划测试
+ * 在按最新结构新建的数据库上执行EXPLAIN QUERY PLAN，确认没有查询退化为全表扫描
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionQueryPlanTest {
+
+    private File databaseFile;
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        SQLiteDatabase.loadLibs(context);
+        databaseFile = new File(context.getCacheDir(), "query_plan_test.db");
+        databaseFile.delete();
+        database = SQLiteDatabase.openOrCreateDatabase(databaseFile, "query_plan_test", null);
+        new FinanceDatabaseHelper(context).onCreate(database);
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            BaseDao.releaseStatements(database);
+            database.close();
+        }
+        databaseFile.delete();
+    }
+
+    @Test
+    public void hotQueriesUseIndexes() {
+        List<String> fullScans = new ArrayList<>();
+        for (String[] query : TransactionDao.getHotQueries()) {
+            String plan = explain(query[1]);
+            // "SCAN 表名"表示全表扫描，"SEARCH ... USING INDEX/PRIMARY KEY"表示命中索引
+            for (String detail : plan.split("; ")) {
+                if (detail.startsWith("SCAN") && !detail.contains("USING")) {
+                    fullScans.add(query[0] + ": " + plan);
+                    break;
+                }
+            }
+        }
+        assertTrue("全表扫描的查询: " + fullScans, fullScans.isEmpty());
+    }
+
+    private String explain(String sql) {
+        // 参数个数与占位符保持一致，EXPLAIN只关心语句结构
+        int argCount = sql.length() - sql.replace("?", "").length();
+        String[] args = new String[argCount];
+        for (int i = 0; i < argCount; i++) {
+            args[i] = "0";
+        }
+
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append("; ");
+                }
+                plan.append(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -7,6 +7,7 @@ import android.text.TextUtils;
 import com.blankj.utilcode.util.LogUtils;
 import com.blankj.utilcode.util.Utils;
 import com.zjf.fincialsystem.db.DataCacheManager;
+import com.zjf.fincialsystem.db.DatabaseMaintenance;
 import com.zjf.fincialsystem.db.DatabaseManager;
 import com.zjf.fincialsystem.network.NetworkManager;
 import com.zjf.fincialsystem.utils.TokenManager;
@@ -70,11 +71,15 @@ public class FinanceApplication extends Application {
     
     /**
      * 初始化数据库
+     * 在数据库线程异步打开，启动时不等待密钥派生，需要数据库的地方通过DatabaseManager等待打开完成
      */
     private void initDatabase() {
         try {
-            DatabaseManager.getInstance().init(this);
-            LogUtils.d("FinanceApplication", "数据库初始化成功");
+            DatabaseManager.getInstance().initAsync(this);
+            LogUtils.d("FinanceApplication", "数据库开始异步初始化");
+            
+            // 应用空闲或充电时维护数据库（统计信息、回收空闲页）
+            DatabaseMaintenance.getInstance().install(this);
         } catch (Exception e) {
             LogUtils.e("FinanceApplication", "数据库初始化失败", e);
         }
@@ -0,0 +1,169 @@
+package com.zjf.fincialsystem.db;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+/**
+ * 金额从REAL（元）改为INTEGER（分）（版本5）
+ * SQLite不支持修改列类型，REAL亲和性的列会把整数转回浮点数，因此需要重建表。
+ * 登记时只把旧表改名为legacy表（只修改表结构定义，不复制数据）并按新结构建空表，应用立即写入新表；
+ * 旧表中的行在数据库打开后按主键分批复制到新表，同时转换金额和版本4的时间列，全部复制完成后删除旧表。
+ * 查询读取视图而不直接读表：复制完成前视图合并新表和旧表中尚未复制的行（读取时转换金额和时间），
+ * 列表、搜索和统计始终包含全部记录；完成后视图直接读取新表。
+ * 尚未复制的旧记录被修改前先由{@link #promote}单独复制到新表，删除时同时删除旧表中的行。
+ * 复制时跳过新表中已存在的id（已提前复制的行）；新表上的汇总、全文索引触发器随复制逐行更新
+ */
+public class AmountCentsMigration extends BackgroundMigration {
+
+    public static final AmountCentsMigration TRANSACTIONS = new AmountCentsMigration(
+            "transactions_cents", FinanceDatabaseHelper.TABLE_TRANSACTIONS, FinanceDatabaseHelper.VIEW_TRANSACTIONS,
+            FinanceDatabaseHelper.CREATE_TABLE_TRANSACTIONS,
+            new String[]{"idx_transactions_user_date", "idx_transactions_user_type_date", "idx_transactions_user_category_date"},
+            "id, remote_id, user_id, amount_cents, type, category_id, date, description, note, image_path, created_at, updated_at",
+            "id, NULL, user_id, " + toCents("amount") + ", type, category_id, " + DateColumnsMigration.localTimeToMillis("date") +
+                    ", description, note, image_path, " + DateColumnsMigration.utcTimeToMillis("created_at") +
+                    ", " + DateColumnsMigration.utcTimeToMillis("updated_at"));
+
+    public static final AmountCentsMigration BUDGETS = new AmountCentsMigration(
+            "budgets_cents", FinanceDatabaseHelper.TABLE_BUDGETS, FinanceDatabaseHelper.VIEW_BUDGETS,
+            FinanceDatabaseHelper.CREATE_TABLE_BUDGETS,
+            new String[0],
+            "id, user_id, category_id, amount_cents, period, start_date, end_date, notify_percent, notify_enabled",
+            "id, user_id, category_id, " + toCents("amount") + ", period, " + DateColumnsMigration.localTimeToMillis("start_date") +
+                    ", " + DateColumnsMigration.localTimeToMillis("end_date") + ", notify_percent, notify_enabled");
+
+    private final String name;
+    private final String table;
+    private final String legacyTable;
+    private final String view;
+    private final String createSql;
+    private final String[] indexNames;
+    private final String columns;
+    private final String expressions;
+    private final String sqlCopy;
+
+    /**
+     * @param name 迁移名称
+     * @param table 表名
+     * @param view 查询使用的视图名
+     * @param createSql 新表的建表语句
+     * @param indexNames 旧表上的索引，改名后仍挂在旧表上，需要删除后在新表上重建
+     * @param columns 新表的列
+     * @param expressions 从旧表读取各列的表达式，与columns一一对应
+     */
+    private AmountCentsMigration(String name, String table, String view, String createSql, String[] indexNames,
+                                 String columns, String expressions) {
+        this.name = name;
+        this.table = table;
+        this.legacyTable = table + "_legacy";
+        this.view = view;
+        this.createSql = createSql;
+        this.indexNames = indexNames;
+        this.columns = columns;
+        this.expressions = expressions;
+        this.sqlCopy = "INSERT OR IGNORE INTO " + table + " (" + columns + ") SELECT " + expressions +
+                " FROM " + legacyTable + " WHERE id > ? AND id <= ?";
+    }
+
+    private static String toCents(String column) {
+        return "CAST(ROUND(" + column + " * 100) AS INTEGER)";
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    protected String getTable() {
+        return legacyTable;
+    }
+
+    @Override
+    public void prepare(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + legacyTable);
+        for (String indexName : indexNames) {
+            db.execSQL("DROP INDEX IF EXISTS " + indexName);
+        }
+        db.execSQL(createSql);
+        // 新表从旧表的自增序号继续分配id，避免与尚未复制的旧记录冲突
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, seq FROM sqlite_sequence WHERE name = ?",
+                new Object[]{table, legacyTable});
+        if (FinanceDatabaseHelper.TABLE_TRANSACTIONS.equals(table)) {
+            FinanceDatabaseHelper.createTransactionIndexes(db);
+        }
+        createView(db);
+    }
+
+    @Override
+    public int migrateRange(SQLiteDatabase db, long afterId, long upToId) {
+        SQLiteStatement statement = db.compileStatement(sqlCopy);
+        try {
+            statement.bindLong(1, afterId);
+            statement.bindLong(2, upToId);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public void complete(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + legacyTable);
+        createView(db);
+    }
+
+    /**
+     * 建立（或重建）查询使用的视图
+     * 旧表存在时合并新表和旧表中尚未复制的行：进度之后、且未被提前复制到新表的行。
+     * 复制与进度在同一事务中提交，任一时刻每条记录恰好出现一次
+     * @param db 数据库
+     */
+    public void createView(SQLiteDatabase db) {
+        db.execSQL("DROP VIEW IF EXISTS " + view);
+        String sql = "CREATE VIEW " + view + " AS SELECT " + columns + " FROM " + table;
+        if (hasLegacyTable(db)) {
+            sql += " UNION ALL SELECT " + expressions + " FROM " + legacyTable + " l" +
+                    " WHERE l.id > IFNULL((SELECT last_id FROM " + MigrationManager.TABLE_MIGRATION_STATE +
+                    " WHERE name = '" + name + "'), 0)" +
+                    " AND NOT EXISTS (SELECT 1 FROM " + table + " n WHERE n.id = l.id)";
+        }
+        db.execSQL(sql);
+    }
+
+    /**
+     * 修改记录前调用：记录仍在旧表中尚未复制时，先单独复制到新表，修改作用于新表中的行
+     * 已复制或旧表已删除时不做任何操作；复制跳过已存在的id，与后台复制交错执行也只复制一次
+     * @param db 写连接
+     * @param id 记录ID
+     */
+    public void promote(SQLiteDatabase db, long id) {
+        if (hasLegacyTable(db)) {
+            migrateRange(db, id - 1, id);
+        }
+    }
+
+    /**
+     * 删除记录时调用：同时删除旧表中尚未复制的行，避免之后被复制回来
+     * @param db 写连接
+     * @param id 记录ID
+     * @return 旧表中删除的行数
+     */
+    public int deleteLegacy(SQLiteDatabase db, long id) {
+        if (!hasLegacyTable(db)) {
+            return 0;
+        }
+        return db.delete(legacyTable, "id = ?", new String[]{String.valueOf(id)});
+    }
+
+    private boolean hasLegacyTable(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{legacyTable});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.zjf.fincialsystem.db;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+/**
+ * 后台分批执行的迁移
+ * 升级时onUpgrade只执行prepare（建表、建触发器等轻量操作）并登记，不阻塞应用启动；
+ * 已有数据按主键范围在数据库线程分批回填，每批与进度在同一事务中提交，进程被杀后从上次的位置继续。
+ * 完成前应用如何处理未回填的行由各迁移说明，如继续使用旧的数据表示、兼容读取旧格式，完成后再切换
+ */
+public abstract class BackgroundMigration {
+
+    /**
+     * @return 迁移名称，作为进度表的主键，发布后不能修改
+     */
+    public abstract String getName();
+
+    /**
+     * @return 需要回填的表，按其整数主键id分批
+     */
+    protected abstract String getTable();
+
+    /**
+     * 轻量准备，在onUpgrade中执行
+     * 登记后新写入的行由这里建立的触发器等机制维护，回填只需处理登记时已存在的行
+     * @param db 数据库
+     */
+    public abstract void prepare(SQLiteDatabase db);
+
+    /**
+     * 回填主键范围(afterId, upToId]内的行，在事务中调用
+     * @param db 数据库
+     * @param afterId 上一批的上界
+     * @param upToId 本批的上界
+     * @return 处理的行数
+     */
+    public abstract int migrateRange(SQLiteDatabase db, long afterId, long upToId);
+
+    /**
+     * 回填完成，与最后一批在同一事务中调用，用于切换到新的数据表示
+     * @param db 数据库
+     */
+    public abstract void complete(SQLiteDatabase db);
+
+    /**
+     * 查询回填范围的上界，即登记时的最大主键
+     * @param db 数据库
+     * @return 最大主键，表为空时返回0
+     */
+    public long queryTargetId(SQLiteDatabase db) {
+        return queryLong(db, "SELECT IFNULL(MAX(id), 0) FROM " + getTable(), null);
+    }
+
+    /**
+     * 查询下一批的上界
+     * @param db 数据库
+     * @param afterId 上一批的上界
+     * @param targetId 回填范围的上界
+     * @param chunkSize 每批行数
+     * @return 本批最后一行的主键，已没有需要回填的行时返回-1
+     */
+    public long nextChunkEnd(SQLiteDatabase db, long afterId, long targetId, int chunkSize) {
+        return queryLong(db, "SELECT IFNULL(MAX(id), -1) FROM (SELECT id FROM " + getTable() +
+                        " WHERE id > ? AND id <= ? ORDER BY id LIMIT " + chunkSize + ")",
+                new String[]{String.valueOf(afterId), String.valueOf(targetId)});
+    }
+
+    /**
+     * 触发器条件：OLD行已回填，或是登记后新增的行
+     * 回填期间更新、删除触发器加上此条件，未回填的行由回填读取其最新内容，避免重复计入或移出
+     * @param name 迁移名称
+     * @return WHEN子句
+     */
+    protected static String backfilledGuard(String name) {
+        return " WHEN OLD.id <= (SELECT last_id FROM " + MigrationManager.TABLE_MIGRATION_STATE +
+                " WHERE name = '" + name + "') OR OLD.id > (SELECT target_id FROM " + MigrationManager.TABLE_MIGRATION_STATE +
+                " WHERE name = '" + name + "')";
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args);
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.zjf.fincialsystem.db;
+
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 文件缓存存储
+ * 每个键一个文件，内容为文件头（魔数、格式版本、写入时间）加UTF-8编码的JSON。
+ * 写入在后台线程先写临时文件再重命名，进程中途被杀也不会留下半个文件，写一个键也不会重写其他键；
+ * 只在读取某个键时才加载对应的文件，较大的文件使用内存映射读取。
+ * 需要增量更新的键可以在快照之后追加变更记录（{@link #append}），下次{@link #put}快照时清空
+ */
+public class CacheFileStore {
+
+    private static final String TAG = "CacheFileStore";
+
+    private static final int MAGIC = 0x46434631;
+    private static final int FORMAT_VERSION = 1;
+    // 魔数(4) + 格式版本(4) + 写入时间(8)
+    private static final int HEADER_SIZE = 16;
+
+    private static final String SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    // 超过此大小的文件使用内存映射读取，小文件直接读入堆内存更快
+    private static final long MMAP_THRESHOLD = 64 * 1024;
+
+    /**
+     * 已提交但还未写入磁盘的数据
+     */
+    private static final class Entry {
+        final byte[] data;
+        final long timestamp;
+
+        Entry(byte[] data, long timestamp) {
+            this.data = data;
+            this.timestamp = timestamp;
+        }
+    }
+
+    // 已提交删除、还未从磁盘删除的键
+    private static final Entry REMOVED = new Entry(null, 0);
+
+    private final File directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // 待写入的数据，读取时优先返回，写入完成后移除
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    // 快照写入时间，首次查询时从文件头读取
+    private final Map<String, Long> timestamps = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory 缓存目录，不存在时自动创建
+     */
+    public CacheFileStore(File directory) {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            LogUtils.e(TAG, "创建缓存目录失败: " + directory);
+        }
+        // 清理上次写入中途退出留下的临时文件
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 保存数据，立即对读取可见，在后台线程写入磁盘
+     * @param key 缓存键
+     * @param json 数据
+     */
+    public void put(final String key, String json) {
+        final Entry entry = new Entry(json.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+        pending.put(key, entry);
+        timestamps.put(key, entry.timestamp);
+        writer.execute(() -> {
+            // 之后又有新的写入或删除时跳过，由后面的任务处理
+            if (pending.get(key) != entry) {
+                return;
+            }
+            try {
+                write(key, entry);
+            } catch (IOException e) {
+                LogUtils.e(TAG, "写入缓存文件失败: " + key, e);
+            } finally {
+                pending.remove(key, entry);
+            }
+        });
+    }
+
+    /**
+     * 读取数据
+     * @param key 缓存键
+     * @return 数据，不存在或文件损坏时返回null
+     */
+    public String get(String key) {
+        Entry entry = pending.get(key);
+        if (entry == REMOVED) {
+            return null;
+        }
+        if (entry != null) {
+            return new String(entry.data, StandardCharsets.UTF_8);
+        }
+
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            ByteBuffer buffer;
+            if (size > MMAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 读满为止
+                }
+                buffer.flip();
+            }
+            if (readHeader(buffer) == null) {
+                LogUtils.e(TAG, "缓存文件格式错误: " + key);
+                return null;
+            }
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            LogUtils.e(TAG, "读取缓存文件失败: " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取快照的写入时间，只读取文件头；之后追加的变更记录不改变此时间
+     * @param key 缓存键
+     * @return 写入时间（毫秒），不存在时返回0
+     */
+    public long getTimestamp(String key) {
+        Long cached = timestamps.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Entry entry = pending.get(key);
+        if (entry != null) {
+            return entry.timestamp;
+        }
+
+        long timestamp = 0;
+        File file = getFile(key);
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] header = new byte[HEADER_SIZE];
+                raf.readFully(header);
+                Long value = readHeader(ByteBuffer.wrap(header));
+                timestamp = value != null ? value : 0;
+            } catch (IOException e) {
+                LogUtils.e(TAG, "读取缓存文件头失败: " + key, e);
+            }
+        }
+        timestamps.put(key, timestamp);
+        return timestamp;
+    }
+
+    /**
+     * 在快照之后追加一条变更记录，在后台线程写入
+     * 记录按追加顺序保存，下次put快照或remove时清空；不改变{@link #getTimestamp}返回的快照时间
+     * @param key 缓存键
+     * @param record 变更记录
+     */
+    public void append(final String key, String record) {
+        final byte[] data = record.getBytes(StandardCharsets.UTF_8);
+        writer.execute(() -> {
+            try {
+                appendRecord(key, data);
+            } catch (IOException e) {
+                LogUtils.e(TAG, "追加变更记录失败: " + key, e);
+            }
+        });
+    }
+
+    /**
+     * 读取快照之后追加的变更记录
+     * 进程在追加中途退出时丢弃末尾不完整的记录
+     * @param key 缓存键
+     * @return 变更记录，按追加顺序
+     */
+    public synchronized List<String> readJournal(String key) {
+        List<String> records = new ArrayList<>();
+        File journal = getJournalFile(key);
+        if (!journal.exists()) {
+            return records;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            ByteBuffer buffer = size > MMAP_THRESHOLD
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                    : ByteBuffer.allocate((int) size);
+            if (!(buffer instanceof MappedByteBuffer)) {
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 读满为止
+                }
+                buffer.flip();
+            }
+            long valid = 0;
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                buffer.get(data);
+                records.add(new String(data, StandardCharsets.UTF_8));
+                valid = buffer.position();
+            }
+            if (valid < size) {
+                LogUtils.w(TAG, "丢弃不完整的变更记录: " + key + ", " + (size - valid) + "字节");
+                channel.truncate(valid);
+            }
+        } catch (IOException e) {
+            LogUtils.e(TAG, "读取变更记录失败: " + key, e);
+        }
+        return records;
+    }
+
+    /**
+     * 删除数据
+     * @param key 缓存键
+     */
+    public void remove(final String key) {
+        pending.put(key, REMOVED);
+        timestamps.put(key, 0L);
+        writer.execute(() -> {
+            if (pending.get(key) != REMOVED) {
+                return;
+            }
+            synchronized (this) {
+                getFile(key).delete();
+                getJournalFile(key).delete();
+            }
+            pending.remove(key, REMOVED);
+        });
+    }
+
+    /**
+     * 删除所有数据
+     */
+    public synchronized void clear() {
+        pending.clear();
+        timestamps.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 在写入线程执行任务，排在之前提交的写入之后，用于不应阻塞调用线程的文件操作
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * 等待之前提交的写入、追加和删除完成
+     */
+    void flush() throws InterruptedException, ExecutionException {
+        writer.submit(() -> { }).get();
+    }
+
+    /**
+     * 写临时文件并同步到磁盘后重命名为正式文件
+     * 与clear互斥，避免清除后又被正在进行的写入恢复
+     */
+    private synchronized void write(String key, Entry entry) throws IOException {
+        if (pending.get(key) != entry) {
+            return;
+        }
+        File file = getFile(key);
+        File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp); FileChannel channel = out.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(entry.timestamp);
+            header.flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(entry.data)};
+            long total = HEADER_SIZE + entry.data.length;
+            long written = 0;
+            while (written < total) {
+                written += channel.write(buffers);
+            }
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("重命名缓存文件失败: " + file);
+        }
+        // 新快照已包含之前追加的变更
+        getJournalFile(key).delete();
+    }
+
+    /**
+     * 追加一条记录：长度(4) + 内容，同步到磁盘
+     */
+    private synchronized void appendRecord(String key, byte[] data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(getJournalFile(key), true); FileChannel channel = out.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + data.length);
+            buffer.putInt(data.length).put(data);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * 校验文件头并读取写入时间，读取后缓冲区位于数据开始处
+     * @return 写入时间，格式不正确时返回null
+     */
+    private static Long readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * 缓存键对应的文件，键中的特殊字符替换为下划线，替换过的加上哈希避免冲突
+     */
+    private File getFile(String key) {
+        return new File(directory, getFileName(key) + SUFFIX);
+    }
+
+    private File getJournalFile(String key) {
+        return new File(directory, getFileName(key) + JOURNAL_SUFFIX);
+    }
+
+    private static String getFileName(String key) {
+        String name = key.replaceAll("[^A-Za-z0-9_-]", "_");
+        if (!name.equals(key)) {
+            name = name + "_" + Integer.toHexString(key.hashCode());
+        }
+        return name;
+    }
+}
@@ -0,0 +1,82 @@
+package com.zjf.fincialsystem.db;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+/**
+ * 根据已有交易记录生成按日汇总数据（版本6）
+ * 登记时建汇总表和触发器，新增的交易由插入触发器计入；
+ * 回填期间更新、删除触发器只处理已回填的行（和登记后新增的行），未回填的行由回填读取其最新内容，
+ * 避免同一笔交易被移出后又重复计入；回填完成后换回无条件的触发器。
+ * 回填完成前汇总只包含已回填的交易，概览、每日合计和预算已用金额直接按交易记录视图统计
+ */
+public class DailyTotalsMigration extends BackgroundMigration {
+
+    public static final String NAME = "daily_totals";
+
+    private static final String GUARD = backfilledGuard(NAME);
+
+    private static final String CREATE_GUARDED_TRIGGER_UPDATE =
+            "CREATE TRIGGER trg_transactions_rollup_update" +
+                    " AFTER UPDATE OF user_id, date, type, category_id, amount_cents ON " + FinanceDatabaseHelper.TABLE_TRANSACTIONS +
+                    GUARD + " BEGIN " + FinanceDatabaseHelper.ROLLUP_REMOVE_OLD + FinanceDatabaseHelper.ROLLUP_ADD_NEW + " END";
+
+    private static final String CREATE_GUARDED_TRIGGER_DELETE =
+            "CREATE TRIGGER trg_transactions_rollup_delete AFTER DELETE ON " + FinanceDatabaseHelper.TABLE_TRANSACTIONS +
+                    GUARD + " BEGIN " + FinanceDatabaseHelper.ROLLUP_REMOVE_OLD + " END";
+
+    // 一批交易按汇总键分组后累加到汇总表
+    private static final String SQL_BACKFILL = "INSERT INTO " + FinanceDatabaseHelper.TABLE_DAILY_TOTALS +
+            " (user_id, day, type, category_id, sum_cents, count)" +
+            " SELECT IFNULL(user_id, 0), " + FinanceDatabaseHelper.dayExpression("date") + ", type, IFNULL(category_id, 0)," +
+            " SUM(amount_cents), COUNT(*) FROM " + FinanceDatabaseHelper.TABLE_TRANSACTIONS +
+            " WHERE id > ? AND id <= ? AND date IS NOT NULL GROUP BY 1, 2, 3, 4" +
+            " ON CONFLICT(user_id, day, type, category_id) DO UPDATE SET" +
+            " sum_cents = sum_cents + excluded.sum_cents, count = count + excluded.count";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected String getTable() {
+        return FinanceDatabaseHelper.TABLE_TRANSACTIONS;
+    }
+
+    @Override
+    public void prepare(SQLiteDatabase db) {
+        db.execSQL(FinanceDatabaseHelper.CREATE_TABLE_DAILY_TOTALS);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_ROLLUP_INSERT);
+        dropUpdateDeleteTriggers(db);
+        db.execSQL(CREATE_GUARDED_TRIGGER_UPDATE);
+        db.execSQL(CREATE_GUARDED_TRIGGER_DELETE);
+    }
+
+    /**
+     * @return 写入的汇总行数
+     */
+    @Override
+    public int migrateRange(SQLiteDatabase db, long afterId, long upToId) {
+        SQLiteStatement statement = db.compileStatement(SQL_BACKFILL);
+        try {
+            statement.bindLong(1, afterId);
+            statement.bindLong(2, upToId);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public void complete(SQLiteDatabase db) {
+        dropUpdateDeleteTriggers(db);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_ROLLUP_UPDATE);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_ROLLUP_DELETE);
+    }
+
+    private static void dropUpdateDeleteTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS trg_transactions_rollup_update");
+        db.execSQL("DROP TRIGGER IF EXISTS trg_transactions_rollup_delete");
+    }
+}
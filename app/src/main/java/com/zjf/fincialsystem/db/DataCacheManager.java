@@ -1,45 +1,84 @@
 package com.zjf.fincialsystem.db;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.zjf.fincialsystem.model.Budget;
 import com.zjf.fincialsystem.model.Category;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.model.Transaction;
+import com.zjf.fincialsystem.network.MoneyTypeAdapter;
 import com.zjf.fincialsystem.utils.LogUtils;
 
+import java.io.File;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * 数据缓存管理器
  * 用于管理网络数据的本地缓存，实现离线模式和数据持久化
+ * 每个缓存键单独存为一个文件（见{@link CacheFileStore}），只加载用到的键，保存一个键不会重写其他键
  */
 public class DataCacheManager {
     private static final String TAG = "DataCacheManager";
+    // 旧版本使用的SharedPreferences，启动时删除
     private static final String PREF_NAME = "fincialsystem_data_cache";
+    private static final String CACHE_DIR = "data_cache";
+    // 内存缓存上限：最大堆的1/32，最多8MB
+    private static final long MEMORY_CACHE_MAX_SIZE = Math.min(Runtime.getRuntime().maxMemory() / 32, 8L * 1024 * 1024);
+    // 超过缓存时长后仍可作为过期数据使用的时间，无网络或后台刷新时显示
+    private static final long MAX_STALE = 7 * 24 * 60 * 60 * 1000L; // 7天
+    
+    /**
+     * 缓存新鲜度
+     */
+    public enum Freshness {
+        /** 在缓存时长内，可直接使用 */
+        FRESH,
+        /** 超过缓存时长，可先显示再刷新 */
+        STALE,
+        /** 不存在或过期太久，不再使用 */
+        EXPIRED
+    }
     private static final String KEY_CATEGORIES = "categories";
     private static final String KEY_TRANSACTIONS = "transactions";
     private static final String KEY_BUDGETS = "budgets";
     private static final String KEY_STATISTICS = "statistics";
-    private static final String KEY_TIMESTAMP_PREFIX = "timestamp_";
     
     private static DataCacheManager instance;
-    private final SharedPreferences sharedPreferences;
+    private final CacheFileStore store;
     private final Gson gson;
     
-    // 内存缓存
-    private Map<String, Object> memoryCache;
+    // 内存缓存，按估算大小淘汰，过期时间取自getCacheDuration
+    private final MemoryCache memoryCache;
+    
+    // 交易记录按id缓存，增删改和刷新只写入变化的部分
+    private final TransactionCache transactionCache;
+    
+    // 过期数据先返回给界面，再在后台刷新
+    private volatile boolean staleWhileRevalidate = true;
     
     private DataCacheManager(Context context) {
-        sharedPreferences = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
-        memoryCache = new HashMap<>();
+        this(new CacheFileStore(new File(context.getApplicationContext().getFilesDir(), CACHE_DIR)));
+        Context appContext = context.getApplicationContext();
+        // 旧缓存整体存在一个XML里，不再迁移，首次请求时重新缓存；在写入线程删除，不在启动时阻塞主线程
+        store.execute(() -> appContext.deleteSharedPreferences(PREF_NAME));
+    }
+    
+    /**
+     * 使用指定的文件存储创建，测试时使用
+     */
+    DataCacheManager(CacheFileStore store) {
+        this.store = store;
+        gson = new GsonBuilder()
+                .registerTypeAdapter(Money.class, new MoneyTypeAdapter())
+                .create();
+        memoryCache = new MemoryCache(MEMORY_CACHE_MAX_SIZE);
+        transactionCache = new TransactionCache(store, gson, KEY_TRANSACTIONS);
     }
     
     /**
@@ -60,24 +99,39 @@ public class DataCacheManager {
      * 清除所有缓存数据
      */
     public void clearAllCaches() {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.clear();
-        editor.apply();
+        store.clear();
         memoryCache.clear();
+        transactionCache.clear();
         LogUtils.d(TAG, "所有缓存数据已清除");
     }
     
+    /**
+     * 获取内存缓存的命中、未命中和淘汰统计
+     */
+    public MemoryCache.Stats getMemoryCacheStats() {
+        return memoryCache.getStats();
+    }
+    
+    /**
+     * 是否启用先返回过期缓存再后台刷新的模式
+     */
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+    
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+    
     /**
      * 获取缓存过期时间
      * @param key 缓存键
-     * @return 过期时间（单位：毫秒）
+     * @return 过期时间（单位：毫秒），即最后一次网络刷新的时间加上缓存时长；不存在时返回0
      */
     private long getCacheExpiry(String key) {
-        // 默认缓存过期时间为30分钟
-        long defaultExpiry = 30 * 60 * 1000L;
-        
-        // 从偏好设置中获取过期时间戳
-        return sharedPreferences.getLong(KEY_TIMESTAMP_PREFIX + key, 0);
+        // 交易记录有本地增删改，按合并网络数据的时间计算；其他键只在网络刷新时整体写入，取缓存文件头中的写入时间
+        long timestamp = KEY_TRANSACTIONS.equals(key) ? transactionCache.getRefreshedAt() : store.getTimestamp(key);
+        return timestamp == 0 ? 0 : timestamp + getCacheDuration(key);
     }
     
     /**
@@ -109,18 +163,49 @@ public class DataCacheManager {
     }
     
     /**
-     * 判断缓存是否有效
+     * 获取缓存新鲜度
+     * @param key 缓存键
+     * @return 缓存时长内为FRESH，之后MAX_STALE内为STALE，不存在或更久为EXPIRED
+     */
+    public Freshness getFreshness(String key) {
+        try {
+            long expiry = getCacheExpiry(key);
+            if (expiry == 0) {
+                return Freshness.EXPIRED; // 不存在时间戳，缓存无效
+            }
+            
+            long currentTime = System.currentTimeMillis();
+            if (currentTime < expiry) {
+                return Freshness.FRESH;
+            }
+            return currentTime < expiry + MAX_STALE ? Freshness.STALE : Freshness.EXPIRED;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "检查缓存新鲜度出错: " + e.getMessage(), e);
+            return Freshness.EXPIRED;
+        }
+    }
+    
+    /**
+     * 判断缓存是否可以作为过期数据使用（FRESH或STALE）
+     * @param key 缓存键
+     * @return 缓存是否可用
+     */
+    public boolean isCacheUsable(String key) {
+        return getFreshness(key) != Freshness.EXPIRED;
+    }
+    
+    /**
+     * 判断缓存是否有效（在缓存时长内）
      * @param key 缓存键
      * @return 缓存是否有效
      */
     public boolean isCacheValid(String key) {
         try {
-            long timestamp = sharedPreferences.getLong(KEY_TIMESTAMP_PREFIX + key, 0);
-            if (timestamp == 0) {
+            long expiry = getCacheExpiry(key);
+            if (expiry == 0) {
                 return false; // 不存在时间戳，缓存无效
             }
             
-            long expiry = getCacheExpiry(key);
             long currentTime = System.currentTimeMillis();
             
             boolean isValid = currentTime < expiry;
@@ -160,19 +245,68 @@ public class DataCacheManager {
     
     /**
      * 保存交易记录列表缓存
-     * @param transactions 交易记录列表
+     * 与已缓存的数据合并，只写入新增、修改和已删除的交易
+     * @param transactions 网络返回的完整交易记录列表
      */
     public void saveTransactions(List<Transaction> transactions) {
-        saveCache(KEY_TRANSACTIONS, transactions);
+        if (transactions == null) {
+            LogUtils.e(TAG, "不能保存空的交易记录列表");
+            return;
+        }
+        try {
+            transactionCache.merge(transactions);
+        } catch (Exception e) {
+            LogUtils.e(TAG, "保存交易记录缓存失败", e);
+        }
     }
     
     /**
      * 获取交易记录列表缓存
-     * @return 交易记录列表，如无缓存则返回空列表
+     * @return 交易记录列表，按日期倒序，如无缓存则返回空列表
      */
     public List<Transaction> getTransactions() {
-        Type type = new TypeToken<List<Transaction>>(){}.getType();
-        return getCache(KEY_TRANSACTIONS, type, new ArrayList<>());
+        try {
+            return transactionCache.getAll();
+        } catch (Exception e) {
+            LogUtils.e(TAG, "获取交易记录缓存失败", e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 获取单条交易记录缓存
+     * @param id 交易记录ID
+     * @return 交易记录，不存在时返回null
+     */
+    public Transaction getTransaction(long id) {
+        return transactionCache.get(id);
+    }
+    
+    /**
+     * 新增或更新单条交易记录缓存
+     * @param transaction 交易记录
+     */
+    public void putTransaction(Transaction transaction) {
+        if (transaction == null) {
+            return;
+        }
+        try {
+            transactionCache.put(transaction);
+        } catch (Exception e) {
+            LogUtils.e(TAG, "更新交易记录缓存失败: " + transaction.getId(), e);
+        }
+    }
+    
+    /**
+     * 删除单条交易记录缓存
+     * @param id 交易记录ID
+     */
+    public void removeTransaction(long id) {
+        try {
+            transactionCache.remove(id);
+        } catch (Exception e) {
+            LogUtils.e(TAG, "删除交易记录缓存失败: " + id, e);
+        }
     }
     
     /**
@@ -207,14 +341,10 @@ public class DataCacheManager {
             String statisticsJson = gson.toJson(statistics);
             
             // 保存到磁盘
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putString(key, statisticsJson);
-            editor.putLong(KEY_TIMESTAMP_PREFIX + key, System.currentTimeMillis());
-            editor.apply();
+            store.put(key, statisticsJson);
             
             // 同步更新内存缓存
-            memoryCache.put(key, statistics);
-            memoryCache.put(KEY_TIMESTAMP_PREFIX + key, System.currentTimeMillis());
+            putMemoryCache(key, statistics, statisticsJson, System.currentTimeMillis());
             
             LogUtils.d(TAG, "统计数据已保存到缓存: " + key + ", 条目数: " + statistics.size());
         } catch (Exception e) {
@@ -228,18 +358,16 @@ public class DataCacheManager {
     public Map<String, Object> getStatistics(String key) {
         try {
             // 先尝试从内存缓存获取
-            if (memoryCache.containsKey(key)) {
-                Object cached = memoryCache.get(key);
-                if (cached instanceof Map) {
-                    LogUtils.d(TAG, "从内存缓存获取统计数据: " + key);
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> result = (Map<String, Object>) cached;
-                    return result;
-                }
+            Object cached = memoryCache.get(key);
+            if (cached instanceof Map) {
+                LogUtils.d(TAG, "从内存缓存获取统计数据: " + key);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> result = (Map<String, Object>) cached;
+                return result;
             }
             
             // 从磁盘缓存获取
-            String statisticsJson = sharedPreferences.getString(key, null);
+            String statisticsJson = store.get(key);
             if (statisticsJson != null) {
                 LogUtils.d(TAG, "从磁盘缓存获取统计数据: " + key);
                 
@@ -249,7 +377,7 @@ public class DataCacheManager {
                 
                 // 放入内存缓存
                 if (statistics != null) {
-                    memoryCache.put(key, statistics);
+                    putMemoryCache(key, statistics, statisticsJson, store.getTimestamp(key));
                     return statistics;
                 }
             }
@@ -270,13 +398,10 @@ public class DataCacheManager {
     private void saveCache(String key, Object data) {
         try {
             String json = gson.toJson(data);
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.putString(key, json);
-            editor.putLong(KEY_TIMESTAMP_PREFIX + key, System.currentTimeMillis());
-            editor.apply();
+            store.put(key, json);
             
             // 更新内存缓存
-            memoryCache.put(key, data);
+            putMemoryCache(key, data, json, System.currentTimeMillis());
             
             LogUtils.d(TAG, "缓存数据已保存: " + key);
         } catch (Exception e) {
@@ -294,20 +419,18 @@ public class DataCacheManager {
     private <T> T getCache(String key, Type type, T defaultValue) {
         try {
             // 优先从内存缓存获取
-            if (memoryCache.containsKey(key)) {
-                Object data = memoryCache.get(key);
-                if (data != null) {
-                    return (T) data;
-                }
+            Object cached = memoryCache.get(key);
+            if (cached != null) {
+                return (T) cached;
             }
             
             // 从持久化存储获取
-            String json = sharedPreferences.getString(key, null);
+            String json = store.get(key);
             if (json != null) {
                 T data = gson.fromJson(json, type);
                 
                 // 更新内存缓存
-                memoryCache.put(key, data);
+                putMemoryCache(key, data, json, store.getTimestamp(key));
                 
                 LogUtils.d(TAG, "从缓存获取数据: " + key);
                 return data;
@@ -318,4 +441,16 @@ public class DataCacheManager {
         
         return defaultValue;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 放入内存缓存，按JSON长度估算占用的内存，写入时间加上缓存时长后过期
+     * @param key 缓存键
+     * @param data 数据
+     * @param json 数据的JSON
+     * @param writtenAt 写入时间
+     */
+    private void putMemoryCache(String key, Object data, String json, long writtenAt) {
+        int weight = json.length() * 2;
+        memoryCache.put(key, data, weight, writtenAt + getCacheDuration(key));
+    }
+} 
@@ -0,0 +1,520 @@
+package com.zjf.fincialsystem.db;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据库空闲维护
+ * 应用退到后台、熄屏或接通电源后，在没有可见界面时执行ANALYZE、PRAGMA optimize和增量回收空闲页；
+ * 维护在单独的线程执行而不占用数据库线程，整库VACUUM、ANALYZE期间界面查询仍由只读连接直接执行，
+ * 只有写操作在写连接上等待。每个步骤是单独的任务，超出时间预算或用户回到前台就停止，剩余的工作留到下次空闲。
+ * 未开启增量回收的旧数据库需要整库VACUUM一次才能开启，这一步无法中途停止、不受时间预算限制，
+ * 因此不放在维护步骤中，而是在一次完整维护之后、仍没有可见界面时单独执行，并且只转换足够小的数据库
+ */
+public class DatabaseMaintenance {
+
+    private static final String TAG = "DatabaseMaintenance";
+
+    private static final String PREFS_NAME = "database_maintenance";
+    private static final String KEY_LAST_RUN = "last_run";
+
+    // 两次完整维护的最短间隔
+    private static final long MIN_INTERVAL_MS = TimeUnit.HOURS.toMillis(24);
+
+    // 进入空闲后等待一段时间再开始，用户很快切回应用时不做维护
+    private static final long IDLE_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+
+    // 单次维护的时间预算，超出后剩余步骤留到下次空闲
+    private static final long TIME_BUDGET_MS = TimeUnit.SECONDS.toMillis(3);
+
+    // ANALYZE每个索引最多采样的行数，限制统计耗时
+    private static final int ANALYSIS_LIMIT = 1000;
+
+    // 每个任务增量回收的页数
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+
+    // 未开启增量回收的数据库需要整库VACUUM一次才能开启，小于此大小时空闲即可转换，否则等充电时再转换
+    private static final long SMALL_DATABASE_BYTES = 4 * 1024 * 1024;
+
+    // 超过此大小不自动转换：整库VACUUM耗时与文件大小成正比，期间写操作全部等待，还需要同样大小的临时空间
+    private static final long MAX_CONVERSION_BYTES = 32 * 1024 * 1024;
+
+    // auto_vacuum = INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * 维护结果监听，用于记录维护前后的文件大小和耗时
+     */
+    public interface Listener {
+        /**
+         * 一次维护结束（完成或中途停止），在维护线程回调
+         * @param report 维护结果
+         */
+        void onMaintenanceFinished(Report report);
+    }
+
+    /**
+     * 一次维护的结果
+     */
+    public static class Report {
+        private final String trigger;
+        private final long sizeBeforeBytes;
+        private long sizeAfterBytes;
+        private long durationMs;
+        private boolean completed;
+        private final List<String> steps = new ArrayList<>();
+
+        Report(String trigger, long sizeBeforeBytes) {
+            this.trigger = trigger;
+            this.sizeBeforeBytes = sizeBeforeBytes;
+        }
+
+        /**
+         * @return 触发原因：background、screen_off、charging或manual；开启增量回收的整库VACUUM为auto_vacuum
+         */
+        public String getTrigger() {
+            return trigger;
+        }
+
+        /**
+         * @return 维护前数据库文件和WAL文件的总大小
+         */
+        public long getSizeBeforeBytes() {
+            return sizeBeforeBytes;
+        }
+
+        /**
+         * @return 维护后数据库文件和WAL文件的总大小
+         */
+        public long getSizeAfterBytes() {
+            return sizeAfterBytes;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * @return 是否执行完全部步骤，false表示超出预算或被用户操作打断
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return 已执行的步骤及各自耗时
+         */
+        public List<String> getSteps() {
+            return steps;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "trigger=" + trigger +
+                    ", sizeBefore=" + sizeBeforeBytes +
+                    ", sizeAfter=" + sizeAfterBytes +
+                    ", duration=" + durationMs + "ms" +
+                    ", completed=" + completed +
+                    ", steps=" + steps +
+                    '}';
+        }
+    }
+
+    /**
+     * 维护步骤
+     */
+    private interface Step {
+        /**
+         * 执行一次
+         * @param db 写连接
+         * @return 是否已完成，未完成时会再次排队执行
+         */
+        boolean run(SQLiteDatabase db);
+    }
+
+    private static volatile DatabaseMaintenance instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 维护线程，长时间的步骤不阻塞数据库线程上排队的查询
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger startedActivities = new AtomicInteger();
+    private Context context;
+    private volatile Listener listener = report -> LogUtils.i(TAG, "数据库维护结束：" + report);
+    private volatile boolean running;
+    // 本次维护发现数据库未开启增量回收，完成后单独转换，只在维护线程访问
+    private boolean conversionNeeded;
+    private Runnable pendingRun;
+    // 正在进行的维护结果，只在维护线程访问
+    private Report currentReport;
+
+    public static DatabaseMaintenance getInstance() {
+        if (instance == null) {
+            synchronized (DatabaseMaintenance.class) {
+                if (instance == null) {
+                    instance = new DatabaseMaintenance();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DatabaseMaintenance() {
+    }
+
+    /**
+     * 注册空闲检测：应用退到后台、熄屏、接通电源时安排一次维护
+     * @param application 应用
+     */
+    public void install(Application application) {
+        context = application.getApplicationContext();
+
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityStarted(Activity activity) {
+                startedActivities.incrementAndGet();
+                cancelPending();
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+                if (startedActivities.decrementAndGet() <= 0) {
+                    schedule("background");
+                }
+            }
+
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                schedule(Intent.ACTION_POWER_CONNECTED.equals(intent.getAction()) ? "charging" : "screen_off");
+            }
+        }, filter);
+    }
+
+    /**
+     * 设置维护结果监听，默认输出日志
+     * @param listener 监听
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 立即执行一次维护，忽略空闲条件和间隔限制
+     */
+    public void runNow() {
+        executor.execute(() -> start("manual"));
+    }
+
+    /**
+     * 空闲一段时间后检查条件并执行维护，期间用户回到前台则取消；充电时也要求没有可见界面
+     * @param trigger 触发原因
+     */
+    private void schedule(final String trigger) {
+        mainHandler.post(() -> {
+            cancelPending();
+            pendingRun = () -> {
+                pendingRun = null;
+                if (!isIdle()) {
+                    return;
+                }
+                if (System.currentTimeMillis() - getPrefs().getLong(KEY_LAST_RUN, 0) < MIN_INTERVAL_MS) {
+                    return;
+                }
+                executor.execute(() -> start(trigger));
+            };
+            mainHandler.postDelayed(pendingRun, IDLE_DELAY_MS);
+        });
+    }
+
+    private void cancelPending() {
+        if (pendingRun != null) {
+            mainHandler.removeCallbacks(pendingRun);
+            pendingRun = null;
+        }
+    }
+
+    /**
+     * 开始维护，在维护线程执行
+     * @param trigger 触发原因
+     */
+    private void start(String trigger) {
+        if (running) {
+            return;
+        }
+        SQLiteDatabase db = DatabaseManager.getInstance().getWritableDatabase();
+        if (db == null || !db.isOpen()) {
+            return;
+        }
+        running = true;
+
+        Deque<Step> steps = new ArrayDeque<>();
+        steps.add(this::analyze);
+        steps.add(this::optimize);
+        steps.add(this::vacuum);
+        steps.add(this::checkpoint);
+
+        Report report = new Report(trigger, getDatabaseSize(db));
+        currentReport = report;
+        conversionNeeded = false;
+        LogUtils.i(TAG, "开始数据库维护：" + trigger);
+        runNextStep(db, steps, report, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * 执行下一个步骤，之后把自己重新排到维护线程队尾，步骤之间写连接上等待的写操作可以先执行
+     */
+    private void runNextStep(final SQLiteDatabase db, final Deque<Step> steps, final Report report, final long startTime) {
+        boolean interrupted = !db.isOpen()
+                || SystemClock.elapsedRealtime() - startTime > TIME_BUDGET_MS
+                || (!isIdle() && !"manual".equals(report.trigger));
+        if (interrupted || steps.isEmpty()) {
+            finish(db, report, startTime, steps.isEmpty());
+            return;
+        }
+
+        Step step = steps.peek();
+        boolean done;
+        try {
+            done = step.run(db);
+        } catch (Exception e) {
+            LogUtils.e(TAG, "数据库维护步骤失败：" + e.getMessage(), e);
+            done = true;
+        }
+        if (done) {
+            steps.poll();
+        }
+        executor.execute(() -> runNextStep(db, steps, report, startTime));
+    }
+
+    private void finish(SQLiteDatabase db, Report report, long startTime, boolean completed) {
+        running = false;
+        currentReport = null;
+        report.completed = completed;
+        report.durationMs = SystemClock.elapsedRealtime() - startTime;
+        report.sizeAfterBytes = db.isOpen() ? getDatabaseSize(db) : report.sizeBeforeBytes;
+        if (completed && context != null) {
+            getPrefs().edit().putLong(KEY_LAST_RUN, System.currentTimeMillis()).apply();
+        }
+        notifyListener(report);
+        if (completed && conversionNeeded) {
+            conversionNeeded = false;
+            executor.execute(() -> convertToIncrementalVacuum(db));
+        }
+    }
+
+    private void notifyListener(Report report) {
+        Listener current = listener;
+        if (current != null) {
+            try {
+                current.onMaintenanceFinished(report);
+            } catch (Exception e) {
+                LogUtils.e(TAG, "维护结果回调失败：" + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 采样更新统计信息，查询优化器据此选择索引
+     */
+    private boolean analyze(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        queryPragma(db, "PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+        db.execSQL("ANALYZE");
+        addStep("analyze", start);
+        return true;
+    }
+
+    private boolean optimize(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        queryPragma(db, "PRAGMA optimize");
+        addStep("optimize", start);
+        return true;
+    }
+
+    /**
+     * 回收空闲页，每次最多回收VACUUM_PAGES_PER_STEP页
+     * 未开启增量回收时跳过，记下在维护完成后单独转换（见{@link #convertToIncrementalVacuum}）
+     */
+    private boolean vacuum(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        Long freePages = queryPragma(db, "PRAGMA freelist_count");
+        if (freePages == null || freePages == 0) {
+            return true;
+        }
+
+        Long autoVacuum = queryPragma(db, "PRAGMA auto_vacuum");
+        if (autoVacuum == null || autoVacuum != AUTO_VACUUM_INCREMENTAL) {
+            conversionNeeded = true;
+            return true;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_STEP + ")", null);
+            // 每回收一页返回一行，需要读完才会执行完
+            cursor.getCount();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        addStep("incremental_vacuum", start);
+        return freePages <= VACUUM_PAGES_PER_STEP;
+    }
+
+    /**
+     * 整库VACUUM一次并开启增量回收，之后删除数据留下的空闲页都可以增量回收，在维护线程执行
+     * 不受时间预算限制：VACUUM无法中途停止，期间写连接上的写操作全部等待（只读连接的查询不受影响）。
+     * 因此只在没有可见界面时执行，数据库小于SMALL_DATABASE_BYTES，或正在充电且小于MAX_CONVERSION_BYTES，
+     * 否则留到下次维护；更大的数据库不自动转换
+     */
+    private void convertToIncrementalVacuum(SQLiteDatabase db) {
+        if (running || !db.isOpen() || !isIdle()) {
+            return;
+        }
+        long size = getDatabaseSize(db);
+        if (size > MAX_CONVERSION_BYTES) {
+            LogUtils.w(TAG, "数据库过大，不自动开启增量回收：" + size);
+            return;
+        }
+        if (size > SMALL_DATABASE_BYTES && !isCharging()) {
+            LogUtils.d(TAG, "未开启增量回收，等待充电时转换");
+            return;
+        }
+
+        running = true;
+        long startTime = SystemClock.elapsedRealtime();
+        Report report = new Report("auto_vacuum", size);
+        currentReport = report;
+        try {
+            queryPragma(db, "PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            addStep("vacuum", startTime);
+            // VACUUM重写的页都在WAL里，截断后文件才会变小
+            checkpoint(db);
+            report.completed = true;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "开启增量回收失败：" + e.getMessage(), e);
+        } finally {
+            running = false;
+            currentReport = null;
+        }
+        report.durationMs = SystemClock.elapsedRealtime() - startTime;
+        report.sizeAfterBytes = db.isOpen() ? getDatabaseSize(db) : size;
+        notifyListener(report);
+    }
+
+    /**
+     * 检查点后截断WAL文件，回收的空间才会真正从磁盘上释放
+     */
+    private boolean checkpoint(SQLiteDatabase db) {
+        long start = SystemClock.elapsedRealtime();
+        queryPragma(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+        addStep("checkpoint", start);
+        return true;
+    }
+
+    /**
+     * 记录步骤耗时到当前维护结果
+     */
+    private void addStep(String name, long start) {
+        String step = name + " " + (SystemClock.elapsedRealtime() - start) + "ms";
+        LogUtils.d(TAG, step);
+        if (currentReport != null) {
+            currentReport.steps.add(step);
+        }
+    }
+
+    /**
+     * 执行PRAGMA并读取第一列
+     * @return 结果，没有返回行时为null
+     */
+    private static Long queryPragma(SQLiteDatabase db, String sql) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            return cursor != null && cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @return 数据库文件和WAL文件的总大小
+     */
+    private static long getDatabaseSize(SQLiteDatabase db) {
+        String path = db.getPath();
+        return new File(path).length() + new File(path + "-wal").length();
+    }
+
+    /**
+     * @return 是否没有可见的界面
+     */
+    private boolean isIdle() {
+        return startedActivities.get() <= 0;
+    }
+
+    private boolean isCharging() {
+        if (context == null) {
+            return false;
+        }
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private SharedPreferences getPrefs() {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
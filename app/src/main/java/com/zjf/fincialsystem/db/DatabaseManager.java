@@ -2,7 +2,12 @@ package com.zjf.fincialsystem.db;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
+import com.zjf.fincialsystem.db.dao.BaseDao;
+import com.zjf.fincialsystem.db.dao.BudgetDao;
 import com.zjf.fincialsystem.db.dao.CategoryDao;
 import com.zjf.fincialsystem.db.dao.TransactionDao;
 import com.zjf.fincialsystem.db.dao.UserDao;
@@ -13,7 +18,14 @@ import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.SecurityUtils;
 
 import net.sqlcipher.database.SQLiteDatabase;
-import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 数据库管理器
@@ -23,14 +35,27 @@ public class DatabaseManager {
     private static final String TAG = "DatabaseManager";
     private static DatabaseManager instance;
     
+    // 只读连接个数，读写分离后后台同步写入不会阻塞界面查询
+    private static final int READER_COUNT = 2;
+    
     private FinanceDatabaseHelper dbHelper;
     private SQLiteDatabase database;
+    private ReaderPool readerPool;
+    private MigrationManager migrationManager;
     private UserDao userDao;
     private CategoryDao categoryDao;
     private TransactionDao transactionDao;
+    private BudgetDao budgetDao;
     private LoginHistoryDao loginHistoryDao;
     private NotificationDao notificationDao;
     
+    // 数据库后台线程，仓库层的本地查询都在这里执行，避免阻塞主线程
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    
+    // 数据库打开完成的屏障，initAsync提交打开任务后才需要等待
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+    private volatile boolean initStarted;
+    
     /**
      * 获取单例实例
      * @return 数据库管理器实例
@@ -46,63 +71,301 @@ public class DatabaseManager {
         return instance;
     }
     
+    /**
+     * 在数据库线程异步初始化数据库，不阻塞调用线程
+     * 加载SQLCipher库、派生密钥和打开数据库都比较耗时，应用启动时使用此方法，
+     * 之后提交到{@link #getExecutor()}的任务都会排在打开之后执行
+     * @param context 上下文
+     */
+    public void initAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        initStarted = true;
+        dbExecutor.execute(() -> init(appContext));
+    }
+    
+    /**
+     * 数据库是否已完成初始化（无论成功与否）
+     * @return 是否完成
+     */
+    public boolean isReady() {
+        return readyLatch.getCount() == 0;
+    }
+    
+    /**
+     * 阻塞等待数据库初始化完成，未调用过初始化时直接返回
+     * 只能在后台线程调用，主线程应使用{@link #whenReady}或把数据库操作提交到{@link #getExecutor()}；
+     * 不要在数据库线程上调用
+     * @throws IllegalStateException 在主线程调用时
+     */
+    public void awaitReady() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("不能在主线程访问数据库，请使用whenReady或getExecutor");
+        }
+        if (!initStarted || isReady()) {
+            return;
+        }
+        try {
+            if (!readyLatch.await(30, TimeUnit.SECONDS)) {
+                LogUtils.e(TAG, "等待数据库初始化超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LogUtils.e(TAG, "等待数据库初始化被中断", e);
+        }
+    }
+    
+    /**
+     * 数据库初始化完成后在主线程执行回调，已完成时也会异步回调
+     * @param callback 回调
+     */
+    public void whenReady(final Runnable callback) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        if (isReady() || !initStarted) {
+            mainHandler.post(callback);
+            return;
+        }
+        // 数据库线程是单线程，排在打开任务之后执行即表示打开已完成
+        dbExecutor.execute(() -> mainHandler.post(callback));
+    }
+    
     /**
      * 初始化数据库
      * @param context 上下文
      */
     public void init(Context context) {
+        initStarted = true;
+        try {
+            openDatabase(context);
+        } finally {
+            readyLatch.countDown();
+        }
+    }
+    
+    /**
+     * 打开数据库并初始化DAO
+     * @param context 上下文
+     */
+    private void openDatabase(Context context) {
         LogUtils.i(TAG, "初始化数据库");
         
         // 加载SQLCipher库
         SQLiteDatabase.loadLibs(context);
         
-        // 创建数据库Hook，用于自定义加密参数
-        SQLiteDatabaseHook hook = new SQLiteDatabaseHook() {
-            @Override
-            public void preKey(SQLiteDatabase database) {
-                // 在密钥应用前执行
-            }
-            
-            @Override
-            public void postKey(SQLiteDatabase database) {
-                // 在密钥应用后执行
-                database.execSQL("PRAGMA cipher_compatibility = 3");
-                database.execSQL("PRAGMA kdf_iter = 64000");
-                database.execSQL("PRAGMA cipher_page_size = 1024");
-            }
-        };
-        
         // 创建数据库帮助类
         dbHelper = new FinanceDatabaseHelper(context);
         
-        // 获取加密密钥
-        String encryptionKey = SecurityUtils.getDatabaseKey();
-        
         try {
+            long startTime = SystemClock.elapsedRealtime();
+            
             // 打开或创建加密数据库
-            database = dbHelper.getWritableDatabase(encryptionKey.toCharArray());
-            LogUtils.i(TAG, "数据库初始化成功");
+            String encryptionKey = openEncryptedDatabase(context);
+            LogUtils.i(TAG, "数据库初始化成功，打开耗时：" + (SystemClock.elapsedRealtime() - startTime) + "ms");
+            
+            // 开启WAL后读连接不会被写事务阻塞，开启失败时读写共用写连接
+            if (enableWriteAheadLog()) {
+                readerPool = new ReaderPool(database.getPath(), encryptionKey, READER_COUNT);
+            }
             
             // 初始化DAO
-            userDao = new UserDao(database);
-            categoryDao = new CategoryDao(database);
-            transactionDao = new TransactionDao(database);
-            loginHistoryDao = new LoginHistoryDao(database);
-            notificationDao = new NotificationDao(database);
+            userDao = new UserDao(database, readerPool);
+            categoryDao = new CategoryDao(database, readerPool);
+            transactionDao = new TransactionDao(database, readerPool);
+            budgetDao = new BudgetDao(database, readerPool);
+            loginHistoryDao = new LoginHistoryDao(database, readerPool);
+            notificationDao = new NotificationDao(database, readerPool);
             
             // 创建测试用户
             createTestUsers();
             
+            // 继续执行升级时登记的后台迁移，完成前相关查询使用旧的数据表示
+            startMigrations();
+            
+            // 清理超出保留策略的登录历史，排在打开之后分批执行
+            scheduleLoginHistoryPurge();
+            
         } catch (Exception e) {
             LogUtils.e(TAG, "初始化数据库失败：" + e.getMessage(), e);
         }
     }
     
+    /**
+     * 打开加密数据库，优先使用原始密钥
+     * 原始密钥跳过每次打开时的PBKDF2密钥派生；仍使用口令的已有数据库打开后一次性迁移为原始密钥，
+     * 首选密钥打开失败时（如迁移提交后标记未来得及保存）换另一种密钥重试
+     * @param context 上下文
+     * @return 打开数据库实际使用的密钥
+     */
+    private String openEncryptedDatabase(Context context) {
+        String passphrase = SecurityUtils.getDatabaseKey();
+        String rawKey = SecurityUtils.getRawDatabaseKey();
+        if (rawKey == null) {
+            database = dbHelper.getWritableDatabase(passphrase.toCharArray());
+            return passphrase;
+        }
+        
+        boolean isNewDatabase = !context.getDatabasePath(FinanceDatabaseHelper.DATABASE_NAME).exists();
+        boolean preferRawKey = isNewDatabase || SecurityUtils.isRawDatabaseKeyEnabled();
+        String preferredKey = preferRawKey ? rawKey : passphrase;
+        String fallbackKey = preferRawKey ? passphrase : rawKey;
+        
+        String usedKey;
+        try {
+            database = dbHelper.getWritableDatabase(preferredKey.toCharArray());
+            usedKey = preferredKey;
+        } catch (Exception e) {
+            LogUtils.w(TAG, "使用" + (preferRawKey ? "原始密钥" : "口令") + "打开数据库失败，换另一种密钥重试：" + e.getMessage());
+            database = dbHelper.getWritableDatabase(fallbackKey.toCharArray());
+            usedKey = fallbackKey;
+        }
+        
+        if (usedKey.equals(rawKey)) {
+            if (!SecurityUtils.isRawDatabaseKeyEnabled()) {
+                SecurityUtils.setRawDatabaseKeyEnabled(true);
+            }
+            return rawKey;
+        }
+        
+        SecurityUtils.setRawDatabaseKeyEnabled(false);
+        return migrateToRawKey(passphrase, rawKey);
+    }
+    
+    /**
+     * 用PRAGMA rekey把口令数据库迁移为原始密钥
+     * rekey前切换回回滚日志模式，之后由enableWriteAheadLog重新开启WAL
+     * @param passphrase 当前口令
+     * @param rawKey 原始密钥
+     * @return 迁移成功返回原始密钥，失败返回口令
+     */
+    private String migrateToRawKey(String passphrase, String rawKey) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("PRAGMA journal_mode = DELETE", null);
+            if (cursor != null) {
+                cursor.moveToFirst();
+            }
+            
+            long startTime = SystemClock.elapsedRealtime();
+            database.changePassword(rawKey);
+            SecurityUtils.setRawDatabaseKeyEnabled(true);
+            LogUtils.i(TAG, "数据库已迁移为原始密钥，耗时：" + (SystemClock.elapsedRealtime() - startTime) + "ms");
+            return rawKey;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "数据库迁移为原始密钥失败，继续使用口令：" + e.getMessage(), e);
+            return passphrase;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    /**
+     * 继续执行未完成的后台迁移，批次排在数据库线程队列中，与界面查询交替执行
+     */
+    private void startMigrations() {
+        migrationManager = new MigrationManager(database, dbExecutor);
+        updateDerivedTablesReady();
+        migrationManager.setListener((name, lastId, targetId, completed) -> {
+            LogUtils.d(TAG, "后台迁移" + name + "进度：" + lastId + "/" + targetId);
+            if (completed) {
+                updateDerivedTablesReady();
+            }
+        });
+        migrationManager.resumePending();
+    }
+    
+    /**
+     * 全文索引和按日汇总表在自身回填完成、且旧表中的交易全部复制到新表后才包含全部交易，
+     * 此前搜索和统计直接读取交易记录视图
+     */
+    private void updateDerivedTablesReady() {
+        boolean transactionsCopied = migrationManager.isCompleted(AmountCentsMigration.TRANSACTIONS.getName());
+        boolean dailyTotalsReady = transactionsCopied && migrationManager.isCompleted(DailyTotalsMigration.NAME);
+        transactionDao.setSearchIndexReady(transactionsCopied && migrationManager.isCompleted(TransactionSearchMigration.NAME));
+        transactionDao.setDailyTotalsReady(dailyTotalsReady);
+        budgetDao.setDailyTotalsReady(dailyTotalsReady);
+    }
+    
+    /**
+     * 获取迁移管理器，可查询后台迁移是否完成
+     * @return 迁移管理器
+     */
+    public MigrationManager getMigrationManager() {
+        awaitReady();
+        return migrationManager;
+    }
+    
+    /**
+     * 在数据库线程分批清理超出保留策略的登录历史
+     * 每批作为单独的任务提交，批次之间界面查询和登录记录的写入可以插队执行，
+     * 登录时只需插入一行，不随历史记录的增长变慢
+     */
+    public void scheduleLoginHistoryPurge() {
+        dbExecutor.execute(() -> {
+            if (loginHistoryDao == null) {
+                return;
+            }
+            Map<Long, Long> cutoffs = loginHistoryDao.queryPurgeCutoffs(System.currentTimeMillis());
+            if (!cutoffs.isEmpty()) {
+                purgeLoginHistoryChunk(new ArrayDeque<>(cutoffs.entrySet()), 0);
+            }
+        });
+    }
+    
+    /**
+     * 删除一批登录历史，未清理完时把下一批重新排到数据库线程队尾
+     * @param pending 待清理的用户及截止时间
+     * @param purged 已删除的行数
+     */
+    private void purgeLoginHistoryChunk(final Deque<Map.Entry<Long, Long>> pending, final int purged) {
+        Map.Entry<Long, Long> next = pending.peek();
+        if (next == null || database == null || !database.isOpen()) {
+            LogUtils.i(TAG, "登录历史清理完成，删除" + purged + "条");
+            return;
+        }
+        int deleted = loginHistoryDao.purgeChunk(next.getKey(), next.getValue(), LoginHistoryDao.PURGE_CHUNK_SIZE);
+        if (deleted < LoginHistoryDao.PURGE_CHUNK_SIZE) {
+            // 该用户已清理完或删除失败，处理下一个用户
+            pending.poll();
+        }
+        final int total = purged + Math.max(deleted, 0);
+        dbExecutor.execute(() -> purgeLoginHistoryChunk(pending, total));
+    }
+    
+    /**
+     * 将写连接切换为WAL日志模式，该模式会持久保存在数据库文件中
+     * @return 是否为WAL模式
+     */
+    private boolean enableWriteAheadLog() {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("PRAGMA journal_mode = WAL", null);
+            String mode = cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+            LogUtils.i(TAG, "数据库日志模式：" + mode);
+            return "wal".equalsIgnoreCase(mode);
+        } catch (Exception e) {
+            LogUtils.e(TAG, "开启WAL模式失败：" + e.getMessage(), e);
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
     /**
      * 关闭数据库
      */
     public void close() {
         LogUtils.i(TAG, "关闭数据库");
+        if (readerPool != null) {
+            readerPool.close();
+            readerPool = null;
+        }
+        if (database != null) {
+            // 先释放缓存的预编译语句
+            BaseDao.releaseStatements(database);
+        }
         if (database != null && database.isOpen()) {
             database.close();
         }
@@ -114,10 +377,11 @@ public class DatabaseManager {
     }
     
     /**
-     * 获取用户DAO
+     * 获取用户DAO，数据库正在异步打开时会等待打开完成，不能在主线程调用
      * @return 用户DAO
      */
     public UserDao getUserDao() {
+        awaitReady();
         return userDao;
     }
     
@@ -126,6 +390,7 @@ public class DatabaseManager {
      * @return 分类DAO
      */
     public CategoryDao getCategoryDao() {
+        awaitReady();
         return categoryDao;
     }
     
@@ -134,23 +399,62 @@ public class DatabaseManager {
      * @return 交易记录DAO
      */
     public TransactionDao getTransactionDao() {
+        awaitReady();
         return transactionDao;
     }
     
     /**
-     * 获取数据库实例
+     * 获取预算DAO
+     * @return 预算DAO
+     */
+    public BudgetDao getBudgetDao() {
+        awaitReady();
+        return budgetDao;
+    }
+    
+    /**
+     * 获取数据库后台执行器
+     * @return 执行器
+     */
+    public ExecutorService getExecutor() {
+        return dbExecutor;
+    }
+    
+    /**
+     * 获取数据库实例（写连接）
      * @return 数据库实例
      */
     public SQLiteDatabase getDatabase() {
+        awaitReady();
         return database;
     }
     
+    /**
+     * 获取写连接，所有写操作和事务都应在这个连接上执行
+     * @return 写连接
+     */
+    public SQLiteDatabase getWritableDatabase() {
+        awaitReady();
+        return database;
+    }
+    
+    /**
+     * 获取一个只读连接，用于不需要读到未提交写入的查询
+     * @return 读连接，连接池不可用时返回写连接
+     */
+    public SQLiteDatabase getReadableDatabase() {
+        awaitReady();
+        SQLiteDatabase reader = readerPool != null ? readerPool.acquire() : null;
+        return reader != null ? reader : database;
+    }
+    
     /**
      * 获取登录历史 DAO
      */
     public LoginHistoryDao getLoginHistoryDao() {
+        awaitReady();
         if (loginHistoryDao == null) {
-            loginHistoryDao = new LoginHistoryDao(database);
+            loginHistoryDao = new LoginHistoryDao(database, readerPool);
         }
         return loginHistoryDao;
     }
@@ -159,8 +463,9 @@ public class DatabaseManager {
      * 获取通知 DAO
      */
     public NotificationDao getNotificationDao() {
+        awaitReady();
         if (notificationDao == null) {
-            notificationDao = new NotificationDao(database);
+            notificationDao = new NotificationDao(database, readerPool);
         }
         return notificationDao;
     }
@@ -180,6 +485,7 @@ public class DatabaseManager {
             if (database != null) {
                 status.append("数据库是否打开: ").append(database.isOpen() ? "是" : "否").append("\n");
                 status.append("数据库是否可写: ").append(database.isReadOnly() ? "否(只读)" : "是").append("\n");
+                status.append("只读连接池: ").append(readerPool != null ? readerPool.getSize() + "个连接" : "未启用").append("\n");
                 
                 // 检查表是否存在
                 Cursor cursor = database.rawQuery(
@@ -196,6 +502,7 @@ public class DatabaseManager {
             status.append("UserDao: ").append(userDao != null ? "已创建" : "未创建").append("\n");
             status.append("CategoryDao: ").append(categoryDao != null ? "已创建" : "未创建").append("\n");
             status.append("TransactionDao: ").append(transactionDao != null ? "已创建" : "未创建").append("\n");
+            status.append("BudgetDao: ").append(budgetDao != null ? "已创建" : "未创建").append("\n");
             status.append("NotificationDao: ").append(notificationDao != null ? "已创建" : "未创建").append("\n");
             
         } catch (Exception e) {
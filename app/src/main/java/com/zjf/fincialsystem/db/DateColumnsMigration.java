@@ -0,0 +1,92 @@
+package com.zjf.fincialsystem.db;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+/**
+ * 将时间列中的字符串转换为毫秒时间戳（版本4）
+ * DAO写入的时间是本地时间字符串（需要'utc'修饰符转换），CURRENT_TIMESTAMP默认值是UTC字符串（直接转换）。
+ * DATETIME列为NUMERIC亲和性，整数值会按INTEGER存储，无需重建表，按主键分批原地转换；
+ * 新写入的行已经是毫秒，回填期间读取时间列兼容旧的字符串格式（见BaseDao.readDate）。
+ * 交易记录和预算表由{@link AmountCentsMigration}复制到新表时一并转换
+ */
+public class DateColumnsMigration extends BackgroundMigration {
+
+    public static final DateColumnsMigration LOGIN_HISTORY = new DateColumnsMigration(
+            "login_history_dates", FinanceDatabaseHelper.TABLE_LOGIN_HISTORY, "login_time");
+
+    public static final DateColumnsMigration NOTIFICATIONS = new DateColumnsMigration(
+            "notifications_dates", FinanceDatabaseHelper.TABLE_NOTIFICATIONS, "created_at");
+
+    private final String name;
+    private final String table;
+    private final String[] localTimeColumns;
+
+    /**
+     * @param name 迁移名称
+     * @param table 表名
+     * @param localTimeColumns 保存本地时间字符串的列
+     */
+    private DateColumnsMigration(String name, String table, String... localTimeColumns) {
+        this.name = name;
+        this.table = table;
+        this.localTimeColumns = localTimeColumns;
+    }
+
+    /**
+     * 本地时间字符串转换为毫秒时间戳的SQL表达式，已经是数字的值保持不变
+     * @param column 列名
+     * @return SQL表达式
+     */
+    static String localTimeToMillis(String column) {
+        return "CASE WHEN typeof(" + column + ") = 'text' THEN CAST(strftime('%s', " + column + ", 'utc') AS INTEGER) * 1000" +
+                " ELSE " + column + " END";
+    }
+
+    /**
+     * UTC时间字符串（CURRENT_TIMESTAMP默认值）转换为毫秒时间戳的SQL表达式，已经是数字的值保持不变
+     * @param column 列名
+     * @return SQL表达式
+     */
+    static String utcTimeToMillis(String column) {
+        return "CASE WHEN typeof(" + column + ") = 'text' THEN CAST(strftime('%s', " + column + ") AS INTEGER) * 1000" +
+                " ELSE " + column + " END";
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    protected String getTable() {
+        return table;
+    }
+
+    @Override
+    public void prepare(SQLiteDatabase db) {
+        // 不需要修改表结构
+    }
+
+    @Override
+    public int migrateRange(SQLiteDatabase db, long afterId, long upToId) {
+        int processed = 0;
+        for (String column : localTimeColumns) {
+            SQLiteStatement statement = db.compileStatement("UPDATE " + table + " SET " + column + " = " + localTimeToMillis(column) +
+                    " WHERE id > ? AND id <= ? AND typeof(" + column + ") = 'text'");
+            try {
+                statement.bindLong(1, afterId);
+                statement.bindLong(2, upToId);
+                processed = Math.max(processed, statement.executeUpdateDelete());
+            } finally {
+                statement.close();
+            }
+        }
+        return processed;
+    }
+
+    @Override
+    public void complete(SQLiteDatabase db) {
+        // 没有需要切换的内容
+    }
+}
@@ -20,6 +20,24 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
     public static final String TABLE_BUDGETS = "budgets";
     public static final String TABLE_LOGIN_HISTORY = "login_history";
     public static final String TABLE_NOTIFICATIONS = "notifications";
+    public static final String TABLE_DAILY_TOTALS = "daily_totals";
+    public static final String TABLE_TRANSACTIONS_FTS = "transactions_fts";
+    
+    // 查询使用的视图，金额迁移（版本5）完成前合并旧表中尚未复制的行，见AmountCentsMigration
+    public static final String VIEW_TRANSACTIONS = "transactions_view";
+    public static final String VIEW_BUDGETS = "budgets_view";
+    
+    // 当前时间的毫秒时间戳，作为时间列的默认值
+    private static final String NOW_MILLIS = "(CAST(strftime('%s','now') AS INTEGER) * 1000)";
+    
+    /**
+     * 将毫秒时间戳列转换为本地日期（yyyy-MM-dd）的SQL表达式
+     * @param millisColumn 毫秒时间戳列或参数
+     * @return SQL表达式
+     */
+    public static String dayExpression(String millisColumn) {
+        return "strftime('%Y-%m-%d', " + millisColumn + " / 1000, 'unixepoch', 'localtime')";
+    }
     
     // 用户表
     private static final String CREATE_TABLE_USERS = 
@@ -38,19 +56,20 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
                     ")";
     
     // 交易记录表
-    private static final String CREATE_TABLE_TRANSACTIONS = 
+    static final String CREATE_TABLE_TRANSACTIONS = 
             "CREATE TABLE IF NOT EXISTS " + TABLE_TRANSACTIONS + " (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "remote_id INTEGER," +  // 服务器ID，本地新增未同步的记录为NULL
                     "user_id INTEGER," +
-                    "amount REAL NOT NULL," +
+                    "amount_cents INTEGER NOT NULL," +  // 金额（分）
                     "type INTEGER NOT NULL," +  // 1:收入, 2:支出, 3:转账
                     "category_id INTEGER," +
-                    "date DATETIME DEFAULT CURRENT_TIMESTAMP," +
+                    "date INTEGER DEFAULT " + NOW_MILLIS + "," +  // 毫秒时间戳
                     "description TEXT," +  // 添加描述字段
                     "note TEXT," +
                     "image_path VARCHAR(200)," +
-                    "created_at DATETIME DEFAULT CURRENT_TIMESTAMP," +  // 添加创建时间
-                    "updated_at DATETIME DEFAULT CURRENT_TIMESTAMP," +  // 添加更新时间
+                    "created_at INTEGER DEFAULT " + NOW_MILLIS + "," +  // 添加创建时间
+                    "updated_at INTEGER DEFAULT " + NOW_MILLIS + "," +  // 添加更新时间
                     "FOREIGN KEY(user_id) REFERENCES " + TABLE_USERS + "(id)," +
                     "FOREIGN KEY(category_id) REFERENCES " + TABLE_CATEGORIES + "(id)" +
                     ")";
@@ -62,6 +81,7 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
                     "name VARCHAR(50) NOT NULL," +
                     "type VARCHAR(20) NOT NULL," +  // income, expense
                     "icon VARCHAR(50)," +
+                    "color VARCHAR(20)," +  // 图标背景色，如#FF5722
                     "parent_id INTEGER," +
                     "user_id INTEGER," +
                     "is_default INTEGER DEFAULT 0," +
@@ -70,15 +90,15 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
                     ")";
     
     // 预算表
-    private static final String CREATE_TABLE_BUDGETS = 
+    static final String CREATE_TABLE_BUDGETS = 
             "CREATE TABLE IF NOT EXISTS " + TABLE_BUDGETS + " (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                     "user_id INTEGER," +
                     "category_id INTEGER," +
-                    "amount REAL NOT NULL," +
+                    "amount_cents INTEGER NOT NULL," +  // 金额（分）
                     "period VARCHAR(20) NOT NULL," +  // monthly, yearly
-                    "start_date DATETIME," +
-                    "end_date DATETIME," +
+                    "start_date INTEGER," +  // 毫秒时间戳
+                    "end_date INTEGER," +  // 毫秒时间戳
                     "notify_percent INTEGER DEFAULT 80," +
                     "notify_enabled INTEGER DEFAULT 1," +
                     "FOREIGN KEY(user_id) REFERENCES " + TABLE_USERS + "(id)," +
@@ -90,7 +110,7 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
             "CREATE TABLE IF NOT EXISTS " + TABLE_LOGIN_HISTORY + " (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                     "user_id INTEGER," +
-                    "login_time DATETIME DEFAULT CURRENT_TIMESTAMP," +
+                    "login_time INTEGER DEFAULT " + NOW_MILLIS + "," +  // 毫秒时间戳
                     "ip_address VARCHAR(50)," +
                     "device_model VARCHAR(100)," +
                     "success INTEGER DEFAULT 1," +
@@ -105,14 +125,112 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
                     "title VARCHAR(100) NOT NULL," +
                     "content TEXT NOT NULL," +
                     "type VARCHAR(50)," +
-                    "created_at DATETIME DEFAULT CURRENT_TIMESTAMP," +
+                    "created_at INTEGER DEFAULT " + NOW_MILLIS + "," +  // 毫秒时间戳
                     "is_read INTEGER DEFAULT 0," +
                     "FOREIGN KEY(user_id) REFERENCES " + TABLE_USERS + "(id)" +
                     ")";
     
+    // 按日汇总表：每个用户每天每个类型/分类一行，由交易记录表的触发器维护
+    // 无分类的交易category_id记为0；无日期的交易不计入
+    static final String CREATE_TABLE_DAILY_TOTALS = 
+            "CREATE TABLE IF NOT EXISTS " + TABLE_DAILY_TOTALS + " (" +
+                    "user_id INTEGER NOT NULL," +
+                    "day TEXT NOT NULL," +  // 本地日期 yyyy-MM-dd
+                    "type INTEGER NOT NULL," +
+                    "category_id INTEGER NOT NULL DEFAULT 0," +
+                    "sum_cents INTEGER NOT NULL DEFAULT 0," +
+                    "count INTEGER NOT NULL DEFAULT 0," +
+                    "PRIMARY KEY (user_id, day, type, category_id)" +
+                    ") WITHOUT ROWID";
+    
+    // 触发器中把一条交易记录计入/移出汇总表的语句
+    static final String ROLLUP_ADD_NEW =
+            "INSERT INTO " + TABLE_DAILY_TOTALS + " (user_id, day, type, category_id, sum_cents, count) " +
+                    "SELECT IFNULL(NEW.user_id, 0), " + dayExpression("NEW.date") + ", NEW.type, IFNULL(NEW.category_id, 0), NEW.amount_cents, 1 " +
+                    "WHERE NEW.date IS NOT NULL " +
+                    "ON CONFLICT(user_id, day, type, category_id) DO UPDATE SET " +
+                    "sum_cents = sum_cents + excluded.sum_cents, count = count + 1;";
+    
+    static final String ROLLUP_REMOVE_OLD =
+            "UPDATE " + TABLE_DAILY_TOTALS + " SET sum_cents = sum_cents - OLD.amount_cents, count = count - 1 " +
+                    "WHERE OLD.date IS NOT NULL AND user_id = IFNULL(OLD.user_id, 0) AND day = " + dayExpression("OLD.date") +
+                    " AND type = OLD.type AND category_id = IFNULL(OLD.category_id, 0);" +
+                    "DELETE FROM " + TABLE_DAILY_TOTALS + " WHERE count <= 0 AND OLD.date IS NOT NULL" +
+                    " AND user_id = IFNULL(OLD.user_id, 0) AND day = " + dayExpression("OLD.date") + ";";
+    
+    static final String CREATE_TRIGGER_ROLLUP_INSERT =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_insert AFTER INSERT ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + ROLLUP_ADD_NEW + " END";
+    
+    static final String CREATE_TRIGGER_ROLLUP_UPDATE =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_update" +
+                    " AFTER UPDATE OF user_id, date, type, category_id, amount_cents ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + ROLLUP_REMOVE_OLD + ROLLUP_ADD_NEW + " END";
+    
+    static final String CREATE_TRIGGER_ROLLUP_DELETE =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_delete AFTER DELETE ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + ROLLUP_REMOVE_OLD + " END";
+    
+    // 交易记录全文索引：外部内容表，只保存索引不重复保存文本
+    // trigram分词按三字符子串建索引，中文没有空格分词也能做子串/前缀匹配
+    static final String CREATE_TABLE_TRANSACTIONS_FTS =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_TRANSACTIONS_FTS + " USING fts5(" +
+                    "description, note, content='" + TABLE_TRANSACTIONS + "', content_rowid='id', tokenize='trigram')";
+    
+    static final String FTS_ADD_NEW =
+            "INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (rowid, description, note) VALUES (NEW.id, NEW.description, NEW.note);";
+    
+    static final String FTS_REMOVE_OLD =
+            "INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (" + TABLE_TRANSACTIONS_FTS + ", rowid, description, note)" +
+                    " VALUES ('delete', OLD.id, OLD.description, OLD.note);";
+    
+    static final String CREATE_TRIGGER_FTS_INSERT =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_insert AFTER INSERT ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + FTS_ADD_NEW + " END";
+    
+    static final String CREATE_TRIGGER_FTS_UPDATE =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_update AFTER UPDATE OF description, note ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + FTS_REMOVE_OLD + FTS_ADD_NEW + " END";
+    
+    static final String CREATE_TRIGGER_FTS_DELETE =
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_delete AFTER DELETE ON " + TABLE_TRANSACTIONS +
+                    " BEGIN " + FTS_REMOVE_OLD + " END";
+    
+    // 交易记录表索引（按实际查询条件设计：user_id等值过滤 + date范围/排序）
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_DATE =
+            "CREATE INDEX IF NOT EXISTS idx_transactions_user_date ON " + TABLE_TRANSACTIONS +
+                    " (user_id, date)";
+    
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_TYPE_DATE =
+            "CREATE INDEX IF NOT EXISTS idx_transactions_user_type_date ON " + TABLE_TRANSACTIONS +
+                    " (user_id, type, date)";
+    
+    private static final String CREATE_INDEX_TRANSACTIONS_USER_CATEGORY_DATE =
+            "CREATE INDEX IF NOT EXISTS idx_transactions_user_category_date ON " + TABLE_TRANSACTIONS +
+                    " (user_id, category_id, date)";
+    
+    // 服务器ID唯一索引，同步时按服务器ID写入或更新；NULL互不冲突，本地新增的记录不受影响
+    private static final String CREATE_INDEX_TRANSACTIONS_REMOTE_ID =
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_transactions_remote_id ON " + TABLE_TRANSACTIONS +
+                    " (remote_id)";
+    
+    // 通知表索引：按用户查询未读数、未读列表，以及按时间倒序分页
+    private static final String CREATE_INDEX_NOTIFICATIONS_USER_READ_CREATED =
+            "CREATE INDEX IF NOT EXISTS idx_notifications_user_read_created ON " + TABLE_NOTIFICATIONS +
+                    " (user_id, is_read, created_at)";
+    
+    // 登录历史表索引：按用户查询历史和按时间清理旧记录；按用户和结果查询最后一次成功登录和失败次数
+    private static final String CREATE_INDEX_LOGIN_HISTORY_USER_TIME =
+            "CREATE INDEX IF NOT EXISTS idx_login_history_user_time ON " + TABLE_LOGIN_HISTORY +
+                    " (user_id, login_time)";
+    
+    private static final String CREATE_INDEX_LOGIN_HISTORY_USER_SUCCESS_TIME =
+            "CREATE INDEX IF NOT EXISTS idx_login_history_user_success_time ON " + TABLE_LOGIN_HISTORY +
+                    " (user_id, success, login_time)";
+    
     // 修改数据库版本号
     public static final String DATABASE_NAME = "financial_system.db";
-    public static final int DATABASE_VERSION = 2; // 增加版本号
+    public static final int DATABASE_VERSION = 12; // 版本12：交易记录、预算查询视图
     
     public FinanceDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -136,17 +254,34 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
             db.execSQL(CREATE_TABLE_TRANSACTIONS);
             LogUtils.d("Created transactions table");
             
+            createTransactionIndexes(db);
+            LogUtils.d("Created transactions indexes");
+            
+            createDailyTotals(db);
+            LogUtils.d("Created daily_totals table");
+            
+            if (createTransactionSearch(db)) {
+                LogUtils.d("Created transactions_fts table");
+            }
+            
             // 4. 预算表（引用用户表和分类表）
             db.execSQL(CREATE_TABLE_BUDGETS);
             LogUtils.d("Created budgets table");
             
+            createReadViews(db);
+            LogUtils.d("Created transactions and budgets views");
+            
             // 5. 登录历史表（引用用户表）
             db.execSQL(CREATE_TABLE_LOGIN_HISTORY);
             LogUtils.d("Created login_history table");
+            createLoginHistoryIndexes(db);
+            LogUtils.d("Created login_history indexes");
             
             // 6. 通知表（引用用户表）
             db.execSQL(CREATE_TABLE_NOTIFICATIONS);
             LogUtils.d("Created notifications table");
+            db.execSQL(CREATE_INDEX_NOTIFICATIONS_USER_READ_CREATED);
+            LogUtils.d("Created notifications index");
             
             // 插入默认分类数据
             insertDefaultCategories(db);
@@ -207,6 +342,192 @@ public class FinanceDatabaseHelper extends SQLiteOpenHelper {
                 LogUtils.e("Error upgrading database: " + e.getMessage(), e);
             }
         }
+        
+        // 版本3（交易记录复合索引）：版本3之前的数据库升级时一定也会执行版本5，索引在重建后的新表上创建
+        
+        // 版本4~6需要改写或汇总整张表，onUpgrade中只做轻量准备并登记后台迁移，
+        // 已有数据在数据库打开后分批处理，不阻塞首次启动；准备失败时不捕获异常，让整个升级事务回滚
+        if (oldVersion < 4) {
+            // 版本4：将格式化的时间字符串转换为毫秒时间戳
+            // 交易记录和预算表的时间列在版本5复制到新表时一并转换
+            MigrationManager.register(db, DateColumnsMigration.LOGIN_HISTORY);
+            MigrationManager.register(db, DateColumnsMigration.NOTIFICATIONS);
+            LogUtils.d("Date column conversion scheduled");
+        }
+        
+        if (oldVersion < 5) {
+            // 版本5：金额从REAL（元）改为INTEGER（分），旧表改名后分批复制到新表
+            MigrationManager.register(db, AmountCentsMigration.TRANSACTIONS);
+            MigrationManager.register(db, AmountCentsMigration.BUDGETS);
+            LogUtils.d("Amount columns rebuild scheduled");
+        }
+        
+        if (oldVersion < 6) {
+            // 版本6：按日汇总表及维护触发器；版本5复制的交易由插入触发器计入，其余已有交易分批汇总
+            MigrationManager.register(db, new DailyTotalsMigration());
+            LogUtils.d("Created daily_totals table, backfill scheduled");
+        }
+        
+        if (oldVersion < 7) {
+            // 版本7：交易记录全文索引及同步触发器；现有交易记录的索引在数据库打开后分批建立，不阻塞启动
+            try {
+                MigrationManager.register(db, new TransactionSearchMigration());
+                LogUtils.d("Created transactions_fts table, backfill scheduled");
+            } catch (Exception e) {
+                LogUtils.e("Error creating transactions_fts table: " + e.getMessage(), e);
+            }
+        }
+        
+        if (oldVersion < 8) {
+            // 版本8：分类表添加颜色列，交易列表连接分类表时一并读取
+            try {
+                if (!hasColumn(db, TABLE_CATEGORIES, "color")) {
+                    db.execSQL("ALTER TABLE " + TABLE_CATEGORIES + " ADD COLUMN color VARCHAR(20)");
+                }
+                LogUtils.d("Added color column to categories table");
+            } catch (Exception e) {
+                LogUtils.e("Error adding categories color column: " + e.getMessage(), e);
+            }
+        }
+        
+        if (oldVersion < 9) {
+            // 版本9：通知表按(user_id, is_read, created_at)建索引，未读数和未读列表不再全表扫描
+            try {
+                db.execSQL(CREATE_INDEX_NOTIFICATIONS_USER_READ_CREATED);
+                LogUtils.d("Added index to notifications table");
+            } catch (Exception e) {
+                LogUtils.e("Error creating notifications index: " + e.getMessage(), e);
+            }
+        }
+        
+        if (oldVersion < 10) {
+            // 版本10：登录历史表按用户建索引，登录时的查询和旧记录清理不再全表扫描
+            try {
+                createLoginHistoryIndexes(db);
+                LogUtils.d("Added indexes to login_history table");
+            } catch (Exception e) {
+                LogUtils.e("Error creating login_history indexes: " + e.getMessage(), e);
+            }
+        }
+        
+        if (oldVersion < 11) {
+            // 版本11：服务器ID单独存放，同步数据不再按本地自增主键写入，避免覆盖本地新增的记录
+            // 版本5的金额迁移在本次升级中登记时，新表已按当前结构创建
+            if (!hasColumn(db, TABLE_TRANSACTIONS, "remote_id")) {
+                db.execSQL("ALTER TABLE " + TABLE_TRANSACTIONS + " ADD COLUMN remote_id INTEGER");
+            }
+            db.execSQL(CREATE_INDEX_TRANSACTIONS_REMOTE_ID);
+            LogUtils.d("Added remote_id column to transactions table");
+        }
+        
+        if (oldVersion < 12) {
+            // 版本12：查询改为读取视图，金额迁移尚未完成时视图同时包含旧表中尚未复制的行
+            createReadViews(db);
+            LogUtils.d("Created transactions and budgets views");
+        }
+    }
+    
+    /**
+     * 检查表中是否存在指定列
+     * @param table 表名
+     * @param column 列名
+     * @return 是否存在
+     */
+    private boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        android.database.Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * 创建交易记录、预算的查询视图，金额迁移未完成时合并旧表
+     */
+    private void createReadViews(SQLiteDatabase db) {
+        AmountCentsMigration.TRANSACTIONS.createView(db);
+        AmountCentsMigration.BUDGETS.createView(db);
+    }
+    
+    /**
+     * 创建登录历史表索引
+     */
+    private void createLoginHistoryIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_LOGIN_HISTORY_USER_TIME);
+        db.execSQL(CREATE_INDEX_LOGIN_HISTORY_USER_SUCCESS_TIME);
+    }
+    
+    /**
+     * 创建交易记录表索引
+     * (user_id, date)：按用户查询并按日期排序/范围过滤
+     * (user_id, type, date)：按收支类型统计
+     * (user_id, category_id, date)：按分类查询及分类支出统计
+     * (remote_id)：唯一，同步服务器数据
+     */
+    static void createTransactionIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_REMOTE_ID);
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_DATE);
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_TYPE_DATE);
+        db.execSQL(CREATE_INDEX_TRANSACTIONS_USER_CATEGORY_DATE);
+        // 更新统计信息，让查询优化器能够选择合适的索引
+        db.execSQL("ANALYZE " + TABLE_TRANSACTIONS);
+    }
+    
+    /**
+     * 创建按日汇总表及维护触发器
+     * 触发器与交易记录的写入在同一语句中执行，单条、批量和UPSERT写入都会同步更新汇总
+     */
+    private void createDailyTotals(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_DAILY_TOTALS);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_INSERT);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_UPDATE);
+        db.execSQL(CREATE_TRIGGER_ROLLUP_DELETE);
+    }
+    
+    /**
+     * 创建交易记录全文索引及同步触发器
+     * 依赖FTS5，不可用时只记录错误，搜索会退回到LIKE查询，不影响其他表的创建
+     * @return 是否创建成功
+     */
+    private boolean createTransactionSearch(SQLiteDatabase db) {
+        try {
+            db.execSQL(CREATE_TABLE_TRANSACTIONS_FTS);
+            db.execSQL(CREATE_TRIGGER_FTS_INSERT);
+            db.execSQL(CREATE_TRIGGER_FTS_UPDATE);
+            db.execSQL(CREATE_TRIGGER_FTS_DELETE);
+            return true;
+        } catch (Exception e) {
+            LogUtils.e("Error creating transactions_fts table: " + e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 根据交易记录表重建全文索引，调用方负责事务
+     * @param db 数据库
+     */
+    public static void rebuildTransactionSearch(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + TABLE_TRANSACTIONS_FTS + " (" + TABLE_TRANSACTIONS_FTS + ") VALUES ('rebuild')");
+    }
+    
+    /**
+     * 根据交易记录表重新生成按日汇总数据
+     * 用于升级时初始化，或时区变化后重新按本地日期汇总；调用方负责事务
+     * @param db 数据库
+     */
+    public static void rebuildDailyTotals(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_DAILY_TOTALS);
+        db.execSQL("INSERT INTO " + TABLE_DAILY_TOTALS + " (user_id, day, type, category_id, sum_cents, count) " +
+                "SELECT IFNULL(user_id, 0), " + dayExpression("date") + ", type, IFNULL(category_id, 0), SUM(amount_cents), COUNT(*) " +
+                "FROM " + TABLE_TRANSACTIONS + " WHERE date IS NOT NULL " +
+                "GROUP BY 1, 2, 3, 4");
     }
     
     /**
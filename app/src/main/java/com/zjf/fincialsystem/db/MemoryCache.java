@@ -0,0 +1,174 @@
+package com.zjf.fincialsystem.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 内存缓存
+ * 按估算的字节数限制总大小，超出时淘汰最久未访问的条目；每个条目有自己的过期时间，过期后读取视为未命中。
+ * 所有操作在同一把锁内完成，可在网络回调线程和主线程并发使用
+ */
+public class MemoryCache {
+
+    private static final class Entry {
+        final Object value;
+        final int weight;
+        final long expiresAt;
+
+        Entry(Object value, int weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 统计数据快照
+     */
+    public static class Stats {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final long expiredCount;
+        public final int entryCount;
+        public final long size;
+        public final long maxSize;
+
+        Stats(long hitCount, long missCount, long evictionCount, long expiredCount,
+              int entryCount, long size, long maxSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expiredCount = expiredCount;
+            this.entryCount = entryCount;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "命中=%d, 未命中=%d, 命中率=%.1f%%, 淘汰=%d, 过期=%d, 条目=%d, 大小=%d/%d",
+                    hitCount, missCount, hitRate() * 100, evictionCount, expiredCount, entryCount, size, maxSize);
+        }
+    }
+
+    private final long maxSize;
+    // accessOrder为true，迭代顺序从最久未访问开始
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+
+    /**
+     * @param maxSize 最大总大小（估算的字节数）
+     */
+    public MemoryCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 读取条目
+     * @param key 缓存键
+     * @return 数据，不存在或已过期时返回null
+     */
+    public synchronized Object get(String key) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            map.remove(key);
+            size -= entry.weight;
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * 写入条目，超过总大小时淘汰最久未访问的条目
+     * 单个条目超过总大小时不缓存
+     * @param key 缓存键
+     * @param value 数据
+     * @param weight 估算的字节数
+     * @param expiresAt 过期时间（毫秒）
+     */
+    public synchronized void put(String key, Object value, int weight, long expiresAt) {
+        Entry previous = map.remove(key);
+        if (previous != null) {
+            size -= previous.weight;
+        }
+        if (value == null || weight > maxSize || System.currentTimeMillis() >= expiresAt) {
+            return;
+        }
+        map.put(key, new Entry(value, weight, expiresAt));
+        size += weight;
+        trimToSize();
+    }
+
+    /**
+     * 删除条目
+     * @param key 缓存键
+     */
+    public synchronized void remove(String key) {
+        Entry previous = map.remove(key);
+        if (previous != null) {
+            size -= previous.weight;
+        }
+    }
+
+    /**
+     * 删除所有条目，不计入淘汰次数
+     */
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    /**
+     * 获取统计数据
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hitCount, missCount, evictionCount, expiredCount, map.size(), size, maxSize);
+    }
+
+    /**
+     * 先清理已过期的条目，仍然超出时从最久未访问的开始淘汰
+     */
+    private void trimToSize() {
+        if (size <= maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (now >= entry.expiresAt) {
+                iterator.remove();
+                size -= entry.weight;
+                expiredCount++;
+            }
+        }
+        iterator = map.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            size -= entry.weight;
+            evictionCount++;
+        }
+    }
+}
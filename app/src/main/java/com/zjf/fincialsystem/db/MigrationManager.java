@@ -0,0 +1,240 @@
+package com.zjf.fincialsystem.db;
+
+import android.content.ContentValues;
+
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import net.sqlcipher.Cursor;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 迁移管理器
+ * 数据库版本升级分两类：轻量步骤（加列、建索引）直接在onUpgrade中按版本号同步执行；
+ * 需要改写大量已有数据的步骤实现为{@link BackgroundMigration}，onUpgrade中调用{@link #register}登记，
+ * 数据库打开后由{@link #resumePending()}在数据库线程分批执行，进度保存在migration_state表中
+ */
+public class MigrationManager {
+
+    private static final String TAG = "MigrationManager";
+
+    public static final String TABLE_MIGRATION_STATE = "migration_state";
+
+    // 每批回填的行数，每批一个短事务，批次之间界面查询可以插队执行
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String CREATE_TABLE_MIGRATION_STATE =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_MIGRATION_STATE + " (" +
+                    "name TEXT PRIMARY KEY," +
+                    "last_id INTEGER NOT NULL DEFAULT 0," +  // 已回填到的主键
+                    "target_id INTEGER NOT NULL DEFAULT 0," +  // 登记时的最大主键，回填到此为止
+                    "processed INTEGER NOT NULL DEFAULT 0," +
+                    "completed INTEGER NOT NULL DEFAULT 0," +
+                    "updated_at INTEGER" +
+                    ")";
+
+    // 已知的后台迁移，进度表中的名称据此找到实现
+    private static final BackgroundMigration[] MIGRATIONS = {
+            DateColumnsMigration.LOGIN_HISTORY,
+            DateColumnsMigration.NOTIFICATIONS,
+            AmountCentsMigration.TRANSACTIONS,
+            AmountCentsMigration.BUDGETS,
+            new DailyTotalsMigration(),
+            new TransactionSearchMigration()
+    };
+
+    /**
+     * 迁移进度监听
+     */
+    public interface Listener {
+        /**
+         * 一批执行完成，在数据库线程回调
+         * @param name 迁移名称
+         * @param lastId 已回填到的主键
+         * @param targetId 回填范围的上界
+         * @param completed 是否已全部完成
+         */
+        void onProgress(String name, long lastId, long targetId, boolean completed);
+    }
+
+    private final SQLiteDatabase database;
+    private final ExecutorService executor;
+    private final Set<String> pending = Collections.synchronizedSet(new HashSet<>());
+    private volatile Listener listener;
+
+    /**
+     * @param database 写连接
+     * @param executor 数据库线程
+     */
+    public MigrationManager(SQLiteDatabase database, ExecutorService executor) {
+        this.database = database;
+        this.executor = executor;
+        pending.addAll(queryPendingNames());
+    }
+
+    /**
+     * 登记后台迁移，在onUpgrade中调用
+     * 执行迁移的轻量准备并记录回填范围；表中没有需要回填的数据时直接完成
+     * @param db 数据库
+     * @param migration 迁移
+     */
+    public static void register(SQLiteDatabase db, BackgroundMigration migration) {
+        db.execSQL(CREATE_TABLE_MIGRATION_STATE);
+        migration.prepare(db);
+
+        long targetId = migration.queryTargetId(db);
+        ContentValues values = new ContentValues();
+        values.put("name", migration.getName());
+        values.put("last_id", 0);
+        values.put("target_id", targetId);
+        values.put("processed", 0);
+        values.put("completed", targetId <= 0 ? 1 : 0);
+        values.put("updated_at", System.currentTimeMillis());
+        db.insertWithOnConflict(TABLE_MIGRATION_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        if (targetId <= 0) {
+            migration.complete(db);
+        }
+        LogUtils.i(TAG, "登记后台迁移：" + migration.getName() + "，回填到id " + targetId);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 迁移是否已完成，未登记的迁移视为已完成
+     * @param name 迁移名称
+     * @return 是否完成
+     */
+    public boolean isCompleted(String name) {
+        return !pending.contains(name);
+    }
+
+    /**
+     * 继续执行未完成的迁移，在数据库打开后调用
+     */
+    public void resumePending() {
+        for (String name : new ArrayList<>(pending)) {
+            BackgroundMigration migration = findMigration(name);
+            if (migration == null) {
+                LogUtils.e(TAG, "未知的后台迁移：" + name);
+                continue;
+            }
+            executor.execute(() -> runChunk(migration));
+        }
+    }
+
+    /**
+     * 执行一批回填，与进度在同一事务中提交；未完成时把下一批重新排到数据库线程队尾
+     * 失败时停止，下次打开数据库时从已提交的进度继续
+     */
+    private void runChunk(final BackgroundMigration migration) {
+        if (!database.isOpen()) {
+            return;
+        }
+        String name = migration.getName();
+        long lastId;
+        long targetId;
+        boolean completed;
+
+        database.beginTransaction();
+        try {
+            long[] state = queryState(name);
+            if (state == null) {
+                pending.remove(name);
+                database.setTransactionSuccessful();
+                return;
+            }
+            lastId = state[0];
+            targetId = state[1];
+
+            long chunkEnd = migration.nextChunkEnd(database, lastId, targetId, CHUNK_SIZE);
+            completed = chunkEnd < 0;
+            ContentValues values = new ContentValues();
+            if (completed) {
+                migration.complete(database);
+                lastId = targetId;
+                values.put("last_id", targetId);
+                values.put("completed", 1);
+            } else {
+                int processed = migration.migrateRange(database, lastId, chunkEnd);
+                lastId = chunkEnd;
+                values.put("last_id", chunkEnd);
+                database.execSQL("UPDATE " + TABLE_MIGRATION_STATE + " SET processed = processed + ? WHERE name = ?",
+                        new Object[]{processed, name});
+            }
+            values.put("updated_at", System.currentTimeMillis());
+            database.update(TABLE_MIGRATION_STATE, values, "name = ?", new String[]{name});
+            database.setTransactionSuccessful();
+        } catch (Exception e) {
+            LogUtils.e(TAG, "后台迁移失败：" + name + "，" + e.getMessage(), e);
+            return;
+        } finally {
+            database.endTransaction();
+        }
+
+        if (completed) {
+            pending.remove(name);
+            LogUtils.i(TAG, "后台迁移完成：" + name);
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onProgress(name, lastId, targetId, completed);
+        }
+        if (!completed) {
+            executor.execute(() -> runChunk(migration));
+        }
+    }
+
+    /**
+     * 查询迁移进度
+     * @return {last_id, target_id}，已完成或不存在时返回null
+     */
+    private long[] queryState(String name) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT last_id, target_id FROM " + TABLE_MIGRATION_STATE +
+                    " WHERE name = ? AND completed = 0", new String[]{name});
+            return cursor.moveToFirst() ? new long[]{cursor.getLong(0), cursor.getLong(1)} : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private List<String> queryPendingNames() {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT name FROM " + TABLE_MIGRATION_STATE + " WHERE completed = 0", null);
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } catch (Exception e) {
+            // 从未登记过迁移的数据库没有进度表
+            LogUtils.d(TAG, "没有待执行的后台迁移");
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return names;
+    }
+
+    private static BackgroundMigration findMigration(String name) {
+        for (BackgroundMigration migration : MIGRATIONS) {
+            if (migration.getName().equals(name)) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,95 @@
+package com.zjf.fincialsystem.db;
+
+import com.zjf.fincialsystem.db.dao.BaseDao;
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 只读连接池
+ * 数据库为WAL模式时，读连接与唯一的写连接互不阻塞；
+ * 连接在首次使用时才打开（每次打开都要派生密钥），之后按轮询分配给查询
+ */
+public class ReaderPool {
+
+    private static final String TAG = "ReaderPool";
+
+    private final String path;
+    private final String key;
+    private final SQLiteDatabase[] readers;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param path 数据库文件路径
+     * @param key 数据库密钥
+     * @param size 读连接个数
+     */
+    public ReaderPool(String path, String key, int size) {
+        this.path = path;
+        this.key = key;
+        this.readers = new SQLiteDatabase[size];
+    }
+
+    /**
+     * 获取一个读连接
+     * @return 读连接，连接池已关闭或打开失败时返回null，由调用方回退到写连接
+     */
+    public SQLiteDatabase acquire() {
+        if (closed) {
+            return null;
+        }
+        int slot = (next.getAndIncrement() & Integer.MAX_VALUE) % readers.length;
+        SQLiteDatabase reader = readers[slot];
+        if (reader != null && reader.isOpen()) {
+            return reader;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            reader = readers[slot];
+            if (reader == null || !reader.isOpen()) {
+                try {
+                    reader = SQLiteDatabase.openDatabase(path, key, null,
+                            SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+                    readers[slot] = reader;
+                    LogUtils.d(TAG, "打开读连接：" + slot);
+                } catch (Exception e) {
+                    LogUtils.e(TAG, "打开读连接失败：" + e.getMessage(), e);
+                    return null;
+                }
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * 关闭所有读连接
+     */
+    public synchronized void close() {
+        closed = true;
+        for (int i = 0; i < readers.length; i++) {
+            SQLiteDatabase reader = readers[i];
+            readers[i] = null;
+            if (reader == null) {
+                continue;
+            }
+            BaseDao.releaseStatements(reader);
+            try {
+                if (reader.isOpen()) {
+                    reader.close();
+                }
+            } catch (Exception e) {
+                LogUtils.e(TAG, "关闭读连接失败：" + e.getMessage(), e);
+            }
+        }
+    }
+
+    public int getSize() {
+        return readers.length;
+    }
+}
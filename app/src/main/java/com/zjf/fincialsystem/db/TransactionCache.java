@@ -0,0 +1,282 @@
+package com.zjf.fincialsystem.db;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.zjf.fincialsystem.model.Transaction;
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 交易记录缓存
+ * 内存中按id索引，磁盘上为快照加追加写的变更记录：单条新增、修改、删除只追加一条记录；
+ * 网络刷新时与缓存逐条比较，只记录新增、updatedAt变化和已不存在的交易，写入量与变更量成正比。
+ * 变更记录累计超过快照大小时合并为新快照。首次访问时才从磁盘加载。
+ * 最后一次网络刷新的时间随合并记录保存，单条增删改和合并快照不改变它，缓存新鲜度按此时间计算
+ */
+class TransactionCache {
+    private static final String TAG = "TransactionCache";
+
+    // 变更记录小于此大小时不合并快照
+    private static final long MIN_COMPACT_SIZE = 32 * 1024;
+
+    // 与本地交易列表一致：日期倒序，同一时间按id倒序，无日期的排在最后
+    private static final Comparator<Transaction> ORDER = (a, b) -> {
+        long dateA = a.getDate() != null ? a.getDate().getTime() : Long.MIN_VALUE;
+        long dateB = b.getDate() != null ? b.getDate().getTime() : Long.MIN_VALUE;
+        if (dateA != dateB) {
+            return dateA > dateB ? -1 : 1;
+        }
+        return Long.compare(b.getId(), a.getId());
+    };
+
+    /**
+     * 快照
+     */
+    private static class Snapshot {
+        List<Transaction> transactions;
+        // 旧版本的快照没有此字段，为null
+        Long refreshedAt;
+    }
+
+    /**
+     * 变更记录
+     */
+    private static class Delta {
+        List<Transaction> put;
+        List<Long> delete;
+        // 网络刷新的时间，只有merge写入的记录有此字段，本地增删改为null
+        Long refreshedAt;
+    }
+
+    private final CacheFileStore store;
+    private final Gson gson;
+    private final String key;
+
+    private Map<Long, Transaction> transactions;
+    // 排序后的列表，有变更时重建
+    private List<Transaction> sorted;
+    private long snapshotSize;
+    private long journalSize;
+    // 最后一次网络刷新的时间，没有刷新过为0
+    private long refreshedAt;
+
+    TransactionCache(CacheFileStore store, Gson gson, String key) {
+        this.store = store;
+        this.gson = gson;
+        this.key = key;
+    }
+
+    /**
+     * @return 所有交易记录，按日期倒序
+     */
+    synchronized List<Transaction> getAll() {
+        ensureLoaded();
+        if (sorted == null) {
+            sorted = new ArrayList<>(transactions.values());
+            Collections.sort(sorted, ORDER);
+        }
+        return new ArrayList<>(sorted);
+    }
+
+    /**
+     * @param id 交易记录ID
+     * @return 交易记录，不存在时返回null
+     */
+    synchronized Transaction get(long id) {
+        ensureLoaded();
+        return transactions.get(id);
+    }
+
+    /**
+     * @return 最后一次网络刷新（merge）的时间，没有时返回0
+     */
+    synchronized long getRefreshedAt() {
+        ensureLoaded();
+        return refreshedAt;
+    }
+
+    /**
+     * 新增或更新一条交易
+     * @param transaction 交易记录
+     */
+    synchronized void put(Transaction transaction) {
+        ensureLoaded();
+        Delta delta = new Delta();
+        delta.put = Collections.singletonList(transaction);
+        apply(delta);
+        writeDelta(delta);
+    }
+
+    /**
+     * 删除一条交易
+     * @param id 交易记录ID
+     */
+    synchronized void remove(long id) {
+        ensureLoaded();
+        if (!transactions.containsKey(id)) {
+            return;
+        }
+        Delta delta = new Delta();
+        delta.delete = Collections.singletonList(id);
+        apply(delta);
+        writeDelta(delta);
+    }
+
+    /**
+     * 合并网络返回的完整列表：列表中没有的交易视为已删除，只记录有变化的交易，并记录刷新时间
+     * @param latest 网络返回的交易列表
+     * @return 变化的条数
+     */
+    synchronized int merge(List<Transaction> latest) {
+        ensureLoaded();
+        List<Transaction> changed = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (Transaction transaction : latest) {
+            seen.add(transaction.getId());
+            Transaction cached = transactions.get(transaction.getId());
+            if (cached == null || isChanged(cached, transaction)) {
+                changed.add(transaction);
+            }
+        }
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : transactions.keySet()) {
+            if (!seen.contains(id)) {
+                deleted.add(id);
+            }
+        }
+
+        Delta delta = new Delta();
+        delta.put = changed;
+        delta.delete = deleted;
+        delta.refreshedAt = System.currentTimeMillis();
+        apply(delta);
+
+        int changes = changed.size() + deleted.size();
+        if (changes > transactions.size() / 2) {
+            // 大部分都变了，直接写快照
+            writeSnapshot();
+        } else {
+            // 没有变化时也追加一条记录，保存刷新时间
+            writeDelta(delta);
+        }
+        LogUtils.d(TAG, "合并交易记录缓存：共" + latest.size() + "条，变化" + changed.size() + "条，删除" + deleted.size() + "条");
+        return changes;
+    }
+
+    /**
+     * 清空内存中的数据，磁盘文件由{@link CacheFileStore#clear()}删除
+     */
+    synchronized void clear() {
+        transactions = new HashMap<>();
+        sorted = null;
+        snapshotSize = 0;
+        journalSize = 0;
+        refreshedAt = 0;
+    }
+
+    /**
+     * 加载快照并按顺序重放变更记录
+     */
+    private void ensureLoaded() {
+        if (transactions != null) {
+            return;
+        }
+        transactions = new HashMap<>();
+        snapshotSize = 0;
+        journalSize = 0;
+        refreshedAt = 0;
+        try {
+            String json = store.get(key);
+            if (json != null) {
+                snapshotSize = json.length();
+                Snapshot snapshot;
+                if (json.startsWith("[")) {
+                    // 旧格式：交易记录数组
+                    Type type = new TypeToken<List<Transaction>>(){}.getType();
+                    snapshot = new Snapshot();
+                    snapshot.transactions = gson.fromJson(json, type);
+                } else {
+                    snapshot = gson.fromJson(json, Snapshot.class);
+                }
+                if (snapshot != null) {
+                    Delta initial = new Delta();
+                    initial.put = snapshot.transactions;
+                    // 旧版本的快照只在网络刷新时写入，没有刷新时间时按快照写入时间计算
+                    initial.refreshedAt = snapshot.refreshedAt != null ? snapshot.refreshedAt : store.getTimestamp(key);
+                    apply(initial);
+                }
+            }
+            for (String record : store.readJournal(key)) {
+                journalSize += record.length();
+                apply(gson.fromJson(record, Delta.class));
+            }
+            LogUtils.d(TAG, "加载交易记录缓存：" + transactions.size() + "条");
+        } catch (Exception e) {
+            LogUtils.e(TAG, "加载交易记录缓存失败", e);
+            transactions.clear();
+            refreshedAt = 0;
+        }
+        sorted = null;
+    }
+
+    private void apply(Delta delta) {
+        if (delta == null) {
+            return;
+        }
+        if (delta.put != null) {
+            for (Transaction transaction : delta.put) {
+                if (transaction == null) {
+                    continue;
+                }
+                transactions.put(transaction.getId(), transaction);
+            }
+        }
+        if (delta.delete != null) {
+            for (Long id : delta.delete) {
+                transactions.remove(id);
+            }
+        }
+        if (delta.refreshedAt != null) {
+            refreshedAt = Math.max(refreshedAt, delta.refreshedAt);
+        }
+        sorted = null;
+    }
+
+    /**
+     * 有updatedAt时按updatedAt比较，否则比较序列化结果
+     */
+    private boolean isChanged(Transaction cached, Transaction latest) {
+        if (cached.getUpdatedAt() > 0 && latest.getUpdatedAt() > 0) {
+            return cached.getUpdatedAt() != latest.getUpdatedAt();
+        }
+        return !gson.toJson(cached).equals(gson.toJson(latest));
+    }
+
+    private void writeDelta(Delta delta) {
+        String record = gson.toJson(delta);
+        store.append(key, record);
+        journalSize += record.length();
+        if (journalSize > Math.max(snapshotSize, MIN_COMPACT_SIZE)) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.transactions = new ArrayList<>(transactions.values());
+        snapshot.refreshedAt = refreshedAt;
+        String json = gson.toJson(snapshot);
+        store.put(key, json);
+        snapshotSize = json.length();
+        journalSize = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.zjf.fincialsystem.db;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+/**
+ * 为已有交易记录建立全文索引
+ * 回填期间更新、删除触发器只处理已回填的行（和登记后新增的行），未回填的行由回填读取其最新内容，
+ * 避免对未建立索引的行执行删除导致全文索引损坏；回填完成后换回无条件的触发器。
+ * 回填完成前搜索使用LIKE查询
+ */
+public class TransactionSearchMigration extends BackgroundMigration {
+
+    public static final String NAME = "transactions_fts";
+
+    private static final String FTS_TABLE = FinanceDatabaseHelper.TABLE_TRANSACTIONS_FTS;
+
+    // 行已建立索引：已回填，或是登记后新增的行
+    private static final String INDEXED_GUARD = backfilledGuard(NAME);
+
+    private static final String CREATE_GUARDED_TRIGGER_UPDATE =
+            "CREATE TRIGGER trg_transactions_fts_update AFTER UPDATE OF description, note ON " + FinanceDatabaseHelper.TABLE_TRANSACTIONS +
+                    INDEXED_GUARD + " BEGIN " + FinanceDatabaseHelper.FTS_REMOVE_OLD + FinanceDatabaseHelper.FTS_ADD_NEW + " END";
+
+    private static final String CREATE_GUARDED_TRIGGER_DELETE =
+            "CREATE TRIGGER trg_transactions_fts_delete AFTER DELETE ON " + FinanceDatabaseHelper.TABLE_TRANSACTIONS +
+                    INDEXED_GUARD + " BEGIN " + FinanceDatabaseHelper.FTS_REMOVE_OLD + " END";
+
+    private static final String SQL_BACKFILL = "INSERT INTO " + FTS_TABLE + " (rowid, description, note)" +
+            " SELECT id, description, note FROM " + FinanceDatabaseHelper.TABLE_TRANSACTIONS + " WHERE id > ? AND id <= ?";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected String getTable() {
+        return FinanceDatabaseHelper.TABLE_TRANSACTIONS;
+    }
+
+    @Override
+    public void prepare(SQLiteDatabase db) {
+        db.execSQL(FinanceDatabaseHelper.CREATE_TABLE_TRANSACTIONS_FTS);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_FTS_INSERT);
+        dropUpdateDeleteTriggers(db);
+        db.execSQL(CREATE_GUARDED_TRIGGER_UPDATE);
+        db.execSQL(CREATE_GUARDED_TRIGGER_DELETE);
+    }
+
+    @Override
+    public int migrateRange(SQLiteDatabase db, long afterId, long upToId) {
+        SQLiteStatement statement = db.compileStatement(SQL_BACKFILL);
+        try {
+            statement.bindLong(1, afterId);
+            statement.bindLong(2, upToId);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public void complete(SQLiteDatabase db) {
+        dropUpdateDeleteTriggers(db);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_FTS_UPDATE);
+        db.execSQL(FinanceDatabaseHelper.CREATE_TRIGGER_FTS_DELETE);
+    }
+
+    private static void dropUpdateDeleteTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS trg_transactions_fts_update");
+        db.execSQL("DROP TRIGGER IF EXISTS trg_transactions_fts_delete");
+    }
+}
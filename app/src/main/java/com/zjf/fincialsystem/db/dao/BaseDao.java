@@ -2,17 +2,70 @@ package com.zjf.fincialsystem.db.dao;
 
 import android.util.Log;
 
+import com.zjf.fincialsystem.db.ReaderPool;
+
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * 数据访问对象基类
  */
 public abstract class BaseDao {
     
+    // 批量写入时每个事务包含的最大行数，避免单个事务过大
+    protected static final int BATCH_CHUNK_SIZE = 500;
+    
+    // 版本4之前时间列保存的字符串格式
+    private static final String LEGACY_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    
+    // 解析旧格式时间的格式化器，SimpleDateFormat不是线程安全的，每个线程一个，不必每行新建
+    private static final ThreadLocal<SimpleDateFormat> LEGACY_DATE_PARSER = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(LEGACY_DATE_FORMAT, Locale.getDefault());
+        }
+    };
+    
+    // 按数据库缓存已编译的语句，键为SQL文本，所有DAO共享
+    private static final Map<SQLiteDatabase, Map<String, SQLiteStatement>> STATEMENT_CACHE = new WeakHashMap<>();
+    
+    // 写连接，所有写操作和事务都在这个连接上执行
     protected SQLiteDatabase database;
     
+    // 只读连接池，为null时读写共用写连接
+    private final ReaderPool readers;
+    
     public BaseDao(SQLiteDatabase database) {
+        this(database, null);
+    }
+    
+    public BaseDao(SQLiteDatabase database, ReaderPool readers) {
         this.database = database;
+        this.readers = readers;
+    }
+    
+    /**
+     * 获取执行查询的连接
+     * 当前线程在写连接上有未提交的事务时仍使用写连接，保证能读到自己的写入
+     * @return 读连接，不可用时返回写连接
+     */
+    protected SQLiteDatabase reader() {
+        if (readers == null || database.inTransaction()) {
+            return database;
+        }
+        SQLiteDatabase reader = readers.acquire();
+        return reader != null ? reader : database;
     }
     
     /**
@@ -71,6 +124,251 @@ public abstract class BaseDao {
         }
     }
     
+    /**
+     * 获取已编译的语句，首次使用时编译并缓存
+     * SQLiteStatement不是线程安全的，绑定参数和执行期间需要对语句加锁
+     * @param sql SQL语句
+     * @return 已编译的语句
+     */
+    protected SQLiteStatement getStatement(String sql) {
+        return getStatement(database, sql);
+    }
+    
+    /**
+     * 获取指定连接上的已编译语句，首次使用时编译并缓存
+     * @param database 连接
+     * @param sql SQL语句
+     * @return 已编译的语句
+     */
+    private static SQLiteStatement getStatement(SQLiteDatabase database, String sql) {
+        synchronized (STATEMENT_CACHE) {
+            Map<String, SQLiteStatement> statements = STATEMENT_CACHE.get(database);
+            if (statements == null) {
+                statements = new HashMap<>();
+                STATEMENT_CACHE.put(database, statements);
+            }
+            
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+    
+    /**
+     * 释放数据库的所有缓存语句，关闭数据库前调用
+     * @param database 数据库
+     */
+    public static void releaseStatements(SQLiteDatabase database) {
+        synchronized (STATEMENT_CACHE) {
+            Map<String, SQLiteStatement> statements = STATEMENT_CACHE.remove(database);
+            if (statements == null) {
+                return;
+            }
+            for (SQLiteStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (Exception e) {
+                    Log.e("BaseDao", "Close statement failed", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 使用缓存语句执行单值查询，在读连接上执行
+     * @param sql SQL语句（结果为单行单列整数）
+     * @param args 参数
+     * @return 查询结果
+     */
+    protected long simpleQueryForLong(String sql, Object... args) {
+        SQLiteStatement statement = getStatement(reader(), sql);
+        synchronized (statement) {
+            bindArgs(statement, args);
+            return statement.simpleQueryForLong();
+        }
+    }
+    
+    /**
+     * 使用缓存语句执行插入
+     * @param sql INSERT语句
+     * @param args 参数
+     * @return 插入行ID，失败返回-1
+     */
+    protected long executeInsert(String sql, Object... args) {
+        SQLiteStatement statement = getStatement(sql);
+        synchronized (statement) {
+            bindArgs(statement, args);
+            return statement.executeInsert();
+        }
+    }
+    
+    /**
+     * 使用缓存语句执行更新或删除
+     * @param sql UPDATE/DELETE语句
+     * @param args 参数
+     * @return 受影响的行数
+     */
+    protected int executeUpdateDelete(String sql, Object... args) {
+        SQLiteStatement statement = getStatement(sql);
+        synchronized (statement) {
+            bindArgs(statement, args);
+            return statement.executeUpdateDelete();
+        }
+    }
+    
+    /**
+     * 行参数转换接口，按SQL占位符顺序返回参数
+     * @param <T> 数据类型
+     */
+    protected interface RowArgs<T> {
+        Object[] toArgs(T item);
+    }
+    
+    /**
+     * 行ID获取接口，用于UPSERT：已存在的行走更新分支时executeInsert不会返回其行ID
+     * @param <T> 数据类型
+     */
+    protected interface RowId<T> {
+        long idOf(T item);
+    }
+    
+    /**
+     * 批量执行插入
+     * @see #executeBatchInsert(String, List, RowArgs, RowId)
+     */
+    protected <T> BatchResult executeBatchInsert(String sql, List<T> items, RowArgs<T> rowArgs) {
+        return executeBatchInsert(sql, items, rowArgs, null);
+    }
+    
+    /**
+     * 批量执行插入（或UPSERT）
+     * 每BATCH_CHUNK_SIZE行提交一个事务，整批复用同一条编译语句；
+     * 单行失败只记录错误，不影响同一批次的其他行。
+     * 语句由本次调用单独编译、不放入缓存：缓存语句先加语句锁再在执行时获取数据库锁，
+     * 这里若在事务（已持有数据库锁）中再加缓存语句的锁，加锁顺序相反，可能与其他线程死锁
+     * @param sql INSERT语句
+     * @param items 数据列表
+     * @param rowArgs 行参数转换
+     * @param rowId 已有行ID获取（UPSERT时使用），可为null
+     * @return 批量写入结果
+     */
+    protected <T> BatchResult executeBatchInsert(String sql, List<T> items, final RowArgs<T> rowArgs, final RowId<T> rowId) {
+        final BatchResult result = new BatchResult();
+        if (items == null || items.isEmpty()) {
+            return result;
+        }
+        
+        final SQLiteStatement statement = database.compileStatement(sql);
+        try {
+            for (int chunkStart = 0; chunkStart < items.size(); chunkStart += BATCH_CHUNK_SIZE) {
+                final int start = chunkStart;
+                final List<T> chunk = items.subList(start, Math.min(start + BATCH_CHUNK_SIZE, items.size()));
+                final List<Long> chunkRowIds = new ArrayList<>(chunk.size());
+                final Map<Integer, String> chunkFailures = new LinkedHashMap<>();
+                
+                boolean committed = executeTransaction(() -> {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        try {
+                            T item = chunk.get(i);
+                            bindArgs(statement, rowArgs.toArgs(item));
+                            long insertedId = statement.executeInsert();
+                            long existingId = rowId != null ? rowId.idOf(item) : 0;
+                            if (existingId > 0) {
+                                chunkRowIds.add(existingId);
+                            } else if (insertedId == -1) {
+                                chunkFailures.put(start + i, "insert returned -1");
+                            } else {
+                                chunkRowIds.add(insertedId);
+                            }
+                        } catch (Exception e) {
+                            // 单行失败（如约束冲突）只回滚该语句，事务继续
+                            chunkFailures.put(start + i, e.getMessage());
+                        }
+                    }
+                });
+                
+                if (committed) {
+                    for (Long rowId : chunkRowIds) {
+                        result.addSuccess(rowId);
+                    }
+                    for (Map.Entry<Integer, String> failure : chunkFailures.entrySet()) {
+                        result.addFailure(failure.getKey(), failure.getValue());
+                    }
+                } else {
+                    // 事务提交失败，本批次全部视为失败
+                    for (int i = 0; i < chunk.size(); i++) {
+                        result.addFailure(start + i, "transaction failed");
+                    }
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        
+        if (result.hasFailures()) {
+            Log.w("BaseDao", "Batch insert finished with failures: " + result);
+        }
+        return result;
+    }
+    
+    /**
+     * 重新绑定语句参数
+     * @param statement 语句
+     * @param args 参数，支持null、整数、布尔、浮点数和字符串
+     */
+    protected static void bindArgs(SQLiteStatement statement, Object... args) {
+        statement.clearBindings();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            int index = i + 1;
+            if (arg == null) {
+                statement.bindNull(index);
+            } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                statement.bindLong(index, ((Number) arg).longValue());
+            } else if (arg instanceof Boolean) {
+                statement.bindLong(index, (Boolean) arg ? 1 : 0);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                statement.bindDouble(index, ((Number) arg).doubleValue());
+            } else {
+                statement.bindString(index, arg.toString());
+            }
+        }
+    }
+    
+    /**
+     * 将日期转换为数据库存储的毫秒时间戳
+     * @param date 日期
+     * @return 毫秒时间戳，日期为空时返回null
+     */
+    protected static Long toMillis(Date date) {
+        return date != null ? date.getTime() : null;
+    }
+    
+    /**
+     * 从游标读取毫秒时间戳列
+     * @param cursor 游标
+     * @param columnIndex 列索引
+     * @return 日期对象，列为空时返回null
+     */
+    protected static Date readDate(net.sqlcipher.Cursor cursor, int columnIndex) {
+        if (columnIndex < 0 || cursor.isNull(columnIndex)) {
+            return null;
+        }
+        if (cursor.getType(columnIndex) == net.sqlcipher.Cursor.FIELD_TYPE_STRING) {
+            // 后台迁移（DateColumnsMigration）完成前，旧行的时间仍是本地时间字符串
+            try {
+                return LEGACY_DATE_PARSER.get().parse(cursor.getString(columnIndex));
+            } catch (ParseException e) {
+                Log.e("BaseDao", "Parse legacy date failed", e);
+                return null;
+            }
+        }
+        return new Date(cursor.getLong(columnIndex));
+    }
+    
     /**
      * 关闭游标
      * @param cursor 游标
@@ -0,0 +1,60 @@
+package com.zjf.fincialsystem.db.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量写入结果
+ * 记录每一行的写入结果，单行失败不影响其他行
+ */
+public class BatchResult {
+
+    private final List<Long> rowIds = new ArrayList<>();
+    private final Map<Integer, String> failures = new LinkedHashMap<>();
+
+    void addSuccess(long rowId) {
+        rowIds.add(rowId);
+    }
+
+    void addFailure(int index, String error) {
+        failures.put(index, error);
+    }
+
+    /**
+     * 获取写入成功的行ID（按输入顺序）
+     */
+    public List<Long> getRowIds() {
+        return Collections.unmodifiableList(rowIds);
+    }
+
+    /**
+     * 获取写入失败的行
+     * @return 输入列表中的下标 -> 错误信息
+     */
+    public Map<Integer, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public int getSuccessCount() {
+        return rowIds.size();
+    }
+
+    public int getFailureCount() {
+        return failures.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "successCount=" + rowIds.size() +
+                ", failureCount=" + failures.size() +
+                '}';
+    }
+}
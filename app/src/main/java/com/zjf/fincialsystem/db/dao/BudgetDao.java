@@ -4,13 +4,18 @@ import android.content.ContentValues;
 
 import com.blankj.utilcode.util.LogUtils;
 import com.zjf.fincialsystem.model.Budget;
-import com.zjf.fincialsystem.utils.DateUtils;
+import com.zjf.fincialsystem.model.Category;
+import com.zjf.fincialsystem.model.Money;
+import com.zjf.fincialsystem.model.Transaction;
+import com.zjf.fincialsystem.db.AmountCentsMigration;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
@@ -22,10 +27,110 @@ public class BudgetDao extends BaseDao {
     
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_BUDGETS;
     
+    // 查询读取视图，金额迁移完成前视图同时包含旧表中尚未复制的记录
+    private static final String VIEW_NAME = FinanceDatabaseHelper.VIEW_BUDGETS;
+    
+    // 年度预算按自然年统计，其他预算按自然月统计
+    // 参数依次为年度、月度边界的毫秒时间戳
+    private static final String PERIOD_DAY = FinanceDatabaseHelper.dayExpression(
+            "(CASE b.period WHEN '" + Budget.PERIOD_YEARLY + "' THEN ? ELSE ? END)");
+    
+    private static final String USAGE_COLUMNS = "SELECT b.id AS id, b.user_id AS user_id, b.category_id AS category_id," +
+            " b.amount_cents AS amount_cents, b.period AS period, b.start_date AS start_date, b.end_date AS end_date," +
+            " b.notify_percent AS notify_percent, b.notify_enabled AS notify_enabled," +
+            " c.name AS category_name, c.icon AS category_icon, c.type AS category_type,";
+    
+    private static final String USAGE_WHERE = " WHERE b.user_id = ? AND ((b.start_date IS NULL AND b.end_date IS NULL) OR" +
+            " (b.start_date <= ? AND (b.end_date IS NULL OR b.end_date >= ?)))";
+    
+    // 预算与按日汇总表、分类表连接，一条语句算出用户所有有效预算的已用金额
+    private static final String SQL_USAGE = USAGE_COLUMNS +
+            " IFNULL(SUM(d.sum_cents), 0) AS used_cents" +
+            " FROM " + VIEW_NAME + " b" +
+            " LEFT JOIN " + FinanceDatabaseHelper.TABLE_CATEGORIES + " c ON c.id = b.category_id" +
+            " LEFT JOIN " + FinanceDatabaseHelper.TABLE_DAILY_TOTALS + " d ON d.user_id = b.user_id" +
+            " AND d.day BETWEEN " + PERIOD_DAY + " AND " + PERIOD_DAY +
+            " AND d.type = " + Transaction.TYPE_EXPENSE + " AND d.category_id = b.category_id" +
+            USAGE_WHERE;
+    
+    // 汇总表尚未包含全部交易时直接连接交易记录，参数与SQL_USAGE一致
+    private static final String SQL_USAGE_FROM_TRANSACTIONS = USAGE_COLUMNS +
+            " IFNULL(SUM(t.amount_cents), 0) AS used_cents" +
+            " FROM " + VIEW_NAME + " b" +
+            " LEFT JOIN " + FinanceDatabaseHelper.TABLE_CATEGORIES + " c ON c.id = b.category_id" +
+            " LEFT JOIN " + FinanceDatabaseHelper.VIEW_TRANSACTIONS + " t ON t.user_id = b.user_id" +
+            " AND t.date IS NOT NULL AND " + FinanceDatabaseHelper.dayExpression("t.date") +
+            " BETWEEN " + PERIOD_DAY + " AND " + PERIOD_DAY +
+            " AND t.type = " + Transaction.TYPE_EXPENSE + " AND t.category_id = b.category_id" +
+            USAGE_WHERE;
+    
+    private static final String USAGE_ALL = " GROUP BY b.id ORDER BY b.category_id ASC";
+    
+    private static final String USAGE_BY_PERIOD = " AND b.period = ? GROUP BY b.id ORDER BY b.category_id ASC";
+    
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_NAME +
+            " (user_id, category_id, amount_cents, period, start_date, end_date, notify_percent, notify_enabled)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_UPSERT = "INSERT INTO " + TABLE_NAME +
+            " (id, user_id, category_id, amount_cents, period, start_date, end_date, notify_percent, notify_enabled)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)" +
+            " ON CONFLICT(id) DO UPDATE SET user_id = excluded.user_id, category_id = excluded.category_id," +
+            " amount_cents = excluded.amount_cents, period = excluded.period, start_date = excluded.start_date," +
+            " end_date = excluded.end_date, notify_percent = excluded.notify_percent, notify_enabled = excluded.notify_enabled";
+    
+    // 预算映射器，列顺序与map中的索引一致
+    private static final RowMapper<Budget> BUDGET_MAPPER = new RowMapper<Budget>(
+            "id", "user_id", "category_id", "amount_cents", "period",
+            "start_date", "end_date", "notify_percent", "notify_enabled") {
+        @Override
+        protected Budget map(Cursor cursor, int[] index) {
+            Budget budget = new Budget();
+            budget.setId(cursor.getLong(index[0]));
+            budget.setUserId(cursor.getLong(index[1]));
+            budget.setCategoryId(cursor.getLong(index[2]));
+            budget.setMoney(Money.ofCents(cursor.getLong(index[3])));
+            budget.setPeriod(cursor.getString(index[4]));
+            budget.setStartDate(readDate(cursor, index[5]));
+            budget.setEndDate(readDate(cursor, index[6]));
+            budget.setNotifyPercent(cursor.getInt(index[7]));
+            budget.setNotifyEnabled(cursor.getInt(index[8]) == 1);
+            return budget;
+        }
+    };
+    
+    // 预算使用情况映射器，前9列与BUDGET_MAPPER一致
+    private static final RowMapper<Budget> USAGE_MAPPER = new RowMapper<Budget>(
+            "id", "user_id", "category_id", "amount_cents", "period",
+            "start_date", "end_date", "notify_percent", "notify_enabled",
+            "category_name", "category_icon", "category_type", "used_cents") {
+        @Override
+        protected Budget map(Cursor cursor, int[] index) {
+            Budget budget = BUDGET_MAPPER.map(cursor, index);
+            if (!cursor.isNull(index[9])) {
+                Category category = new Category();
+                category.setId(budget.getCategoryId());
+                category.setName(cursor.getString(index[9]));
+                category.setIcon(cursor.getString(index[10]));
+                category.setType(cursor.getInt(index[11]));
+                budget.setCategory(category);
+            }
+            budget.setUsedMoney(Money.ofCents(cursor.getLong(index[12])));
+            return budget;
+        }
+    };
+    
+    // 按日汇总表是否已包含全部交易，升级后后台回填期间为false，已用金额直接按交易记录统计
+    private volatile boolean dailyTotalsReady = true;
+    
     public BudgetDao(SQLiteDatabase database) {
         super(database);
     }
     
+    public BudgetDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
+    }
+    
     /**
      * 插入预算
      * @param budget 预算对象
@@ -36,15 +141,15 @@ public class BudgetDao extends BaseDao {
             ContentValues values = new ContentValues();
             values.put("user_id", budget.getUserId());
             values.put("category_id", budget.getCategoryId());
-            values.put("amount", budget.getAmount());
+            values.put("amount_cents", budget.getAmountCents());
             values.put("period", budget.getPeriod());
             
             if (budget.getStartDate() != null) {
-                values.put("start_date", DateUtils.formatDateTime(budget.getStartDate()));
+                values.put("start_date", toMillis(budget.getStartDate()));
             }
             
             if (budget.getEndDate() != null) {
-                values.put("end_date", DateUtils.formatDateTime(budget.getEndDate()));
+                values.put("end_date", toMillis(budget.getEndDate()));
             }
             
             values.put("notify_percent", budget.getNotifyPercent());
@@ -57,6 +162,43 @@ public class BudgetDao extends BaseDao {
         }
     }
     
+    /**
+     * 批量插入预算
+     * @param budgets 预算列表
+     * @return 批量写入结果
+     */
+    public BatchResult insertAll(List<Budget> budgets) {
+        return executeBatchInsert(SQL_INSERT, budgets, budget -> new Object[]{
+                budget.getUserId(),
+                budget.getCategoryId(),
+                budget.getAmountCents(),
+                budget.getPeriod(),
+                toMillis(budget.getStartDate()),
+                toMillis(budget.getEndDate()),
+                budget.getNotifyPercent(),
+                budget.isNotifyEnabled()
+        });
+    }
+    
+    /**
+     * 批量插入或更新预算（按ID），用于同步服务器数据
+     * @param budgets 预算列表
+     * @return 批量写入结果
+     */
+    public BatchResult upsertAll(List<Budget> budgets) {
+        return executeBatchInsert(SQL_UPSERT, budgets, budget -> new Object[]{
+                budget.getId() > 0 ? budget.getId() : null,
+                budget.getUserId(),
+                budget.getCategoryId(),
+                budget.getAmountCents(),
+                budget.getPeriod(),
+                toMillis(budget.getStartDate()),
+                toMillis(budget.getEndDate()),
+                budget.getNotifyPercent(),
+                budget.isNotifyEnabled()
+        }, Budget::getId);
+    }
+    
     /**
      * 更新预算
      * @param budget 预算对象
@@ -67,17 +209,17 @@ public class BudgetDao extends BaseDao {
             ContentValues values = new ContentValues();
             values.put("user_id", budget.getUserId());
             values.put("category_id", budget.getCategoryId());
-            values.put("amount", budget.getAmount());
+            values.put("amount_cents", budget.getAmountCents());
             values.put("period", budget.getPeriod());
             
             if (budget.getStartDate() != null) {
-                values.put("start_date", DateUtils.formatDateTime(budget.getStartDate()));
+                values.put("start_date", toMillis(budget.getStartDate()));
             } else {
                 values.putNull("start_date");
             }
             
             if (budget.getEndDate() != null) {
-                values.put("end_date", DateUtils.formatDateTime(budget.getEndDate()));
+                values.put("end_date", toMillis(budget.getEndDate()));
             } else {
                 values.putNull("end_date");
             }
@@ -85,6 +227,8 @@ public class BudgetDao extends BaseDao {
             values.put("notify_percent", budget.getNotifyPercent());
             values.put("notify_enabled", budget.isNotifyEnabled() ? 1 : 0);
             
+            // 尚未从旧表复制的预算先复制到新表
+            AmountCentsMigration.BUDGETS.promote(database, budget.getId());
             int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(budget.getId())});
             return rowsAffected > 0;
         } catch (Exception e) {
@@ -100,7 +244,9 @@ public class BudgetDao extends BaseDao {
      */
     public boolean delete(long budgetId) {
         try {
-            int rowsAffected = database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(budgetId)});
+            // 先删除旧表中尚未复制的行，避免之后被复制回来
+            int rowsAffected = AmountCentsMigration.BUDGETS.deleteLegacy(database, budgetId);
+            rowsAffected += database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(budgetId)});
             return rowsAffected > 0;
         } catch (Exception e) {
             LogUtils.e("Delete budget error: " + e.getMessage());
@@ -116,11 +262,8 @@ public class BudgetDao extends BaseDao {
     public Budget queryById(long budgetId) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?", new String[]{String.valueOf(budgetId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToBudget(cursor);
-            }
-            return null;
+            cursor = reader().query(VIEW_NAME, BUDGET_MAPPER.getColumns(), "id = ?", new String[]{String.valueOf(budgetId)}, null, null, null);
+            return BUDGET_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query budget by id error: " + e.getMessage());
             return null;
@@ -138,13 +281,8 @@ public class BudgetDao extends BaseDao {
         List<Budget> budgets = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "category_id ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Budget budget = cursorToBudget(cursor);
-                    budgets.add(budget);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(VIEW_NAME, BUDGET_MAPPER.getColumns(), "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "category_id ASC");
+            BUDGET_MAPPER.mapAll(cursor, budgets);
             return budgets;
         } catch (Exception e) {
             LogUtils.e("Query budgets by user id error: " + e.getMessage());
@@ -163,12 +301,9 @@ public class BudgetDao extends BaseDao {
     public Budget queryByUserIdAndCategoryId(long userId, long categoryId) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND category_id = ?",
+            cursor = reader().query(VIEW_NAME, BUDGET_MAPPER.getColumns(), "user_id = ? AND category_id = ?",
                     new String[]{String.valueOf(userId), String.valueOf(categoryId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToBudget(cursor);
-            }
-            return null;
+            return BUDGET_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query budget by user id and category id error: " + e.getMessage());
             return null;
@@ -187,14 +322,9 @@ public class BudgetDao extends BaseDao {
         List<Budget> budgets = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND period = ?",
+            cursor = reader().query(VIEW_NAME, BUDGET_MAPPER.getColumns(), "user_id = ? AND period = ?",
                     new String[]{String.valueOf(userId), period}, null, null, "category_id ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Budget budget = cursorToBudget(cursor);
-                    budgets.add(budget);
-                } while (cursor.moveToNext());
-            }
+            BUDGET_MAPPER.mapAll(cursor, budgets);
             return budgets;
         } catch (Exception e) {
             LogUtils.e("Query budgets by user id and period error: " + e.getMessage());
@@ -215,20 +345,15 @@ public class BudgetDao extends BaseDao {
         List<Budget> budgets = new ArrayList<>();
         Cursor cursor = null;
         try {
-            String startDateStr = DateUtils.formatDateTime(startDate);
-            String endDateStr = DateUtils.formatDateTime(endDate);
+            String startMillis = String.valueOf(startDate.getTime());
+            String endMillis = String.valueOf(endDate.getTime());
             
-            cursor = database.query(TABLE_NAME, null,
+            cursor = reader().query(VIEW_NAME, BUDGET_MAPPER.getColumns(),
                     "user_id = ? AND ((start_date IS NULL AND end_date IS NULL) OR " +
                             "(start_date <= ? AND (end_date IS NULL OR end_date >= ?)))",
-                    new String[]{String.valueOf(userId), endDateStr, startDateStr}, null, null, "category_id ASC");
+                    new String[]{String.valueOf(userId), endMillis, startMillis}, null, null, "category_id ASC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Budget budget = cursorToBudget(cursor);
-                    budgets.add(budget);
-                } while (cursor.moveToNext());
-            }
+            BUDGET_MAPPER.mapAll(cursor, budgets);
             return budgets;
         } catch (Exception e) {
             LogUtils.e("Query budgets by date range error: " + e.getMessage());
@@ -249,31 +374,65 @@ public class BudgetDao extends BaseDao {
     }
     
     /**
-     * 将游标数据转换为预算对象
-     * @param cursor 游标
-     * @return 预算对象
+     * 设置按日汇总表是否可用，后台回填完成前已用金额直接按交易记录统计，避免只统计部分交易
+     * @param ready 是否可用
      */
-    private Budget cursorToBudget(Cursor cursor) {
-        Budget budget = new Budget();
-        budget.setId(cursor.getLong(cursor.getColumnIndex("id")));
-        budget.setUserId(cursor.getLong(cursor.getColumnIndex("user_id")));
-        budget.setCategoryId(cursor.getLong(cursor.getColumnIndex("category_id")));
-        budget.setAmount(cursor.getDouble(cursor.getColumnIndex("amount")));
-        budget.setPeriod(cursor.getString(cursor.getColumnIndex("period")));
-        
-        int startDateIndex = cursor.getColumnIndex("start_date");
-        if (!cursor.isNull(startDateIndex)) {
-            budget.setStartDate(DateUtils.parseDateTime(cursor.getString(startDateIndex)));
-        }
-        
-        int endDateIndex = cursor.getColumnIndex("end_date");
-        if (!cursor.isNull(endDateIndex)) {
-            budget.setEndDate(DateUtils.parseDateTime(cursor.getString(endDateIndex)));
+    public void setDailyTotalsReady(boolean ready) {
+        dailyTotalsReady = ready;
+    }
+    
+    /**
+     * 一次查询得到用户所有有效预算及其已用金额
+     * 预算表与按日汇总表连接，月度预算统计date所在自然月的支出，年度预算统计date所在自然年的支出，
+     * 查询次数与预算个数无关，返回的预算已填充分类和已用金额；汇总表回填完成前直接连接交易记录
+     * @param userId 用户ID
+     * @param period 预算周期，为null时返回所有周期的预算
+     * @param date 统计日期，决定统计的月份和年份
+     * @return 预算列表，出错时返回空列表
+     */
+    public List<Budget> queryUsage(long userId, String period, Date date) {
+        List<Budget> budgets = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            Calendar monthStart = Calendar.getInstance();
+            monthStart.setTime(date);
+            monthStart.set(Calendar.DAY_OF_MONTH, 1);
+            monthStart.set(Calendar.HOUR_OF_DAY, 0);
+            monthStart.set(Calendar.MINUTE, 0);
+            monthStart.set(Calendar.SECOND, 0);
+            monthStart.set(Calendar.MILLISECOND, 0);
+            Calendar monthEnd = (Calendar) monthStart.clone();
+            monthEnd.add(Calendar.MONTH, 1);
+            monthEnd.add(Calendar.MILLISECOND, -1);
+            
+            Calendar yearStart = (Calendar) monthStart.clone();
+            yearStart.set(Calendar.MONTH, Calendar.JANUARY);
+            Calendar yearEnd = (Calendar) yearStart.clone();
+            yearEnd.add(Calendar.YEAR, 1);
+            yearEnd.add(Calendar.MILLISECOND, -1);
+            
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(yearStart.getTimeInMillis()));
+            args.add(String.valueOf(monthStart.getTimeInMillis()));
+            args.add(String.valueOf(yearEnd.getTimeInMillis()));
+            args.add(String.valueOf(monthEnd.getTimeInMillis()));
+            args.add(String.valueOf(userId));
+            args.add(String.valueOf(monthEnd.getTimeInMillis()));
+            args.add(String.valueOf(monthStart.getTimeInMillis()));
+            if (period != null) {
+                args.add(period);
+            }
+            
+            String sql = (dailyTotalsReady ? SQL_USAGE : SQL_USAGE_FROM_TRANSACTIONS) +
+                    (period != null ? USAGE_BY_PERIOD : USAGE_ALL);
+            cursor = reader().rawQuery(sql, args.toArray(new String[0]));
+            USAGE_MAPPER.mapAll(cursor, budgets);
+            return budgets;
+        } catch (Exception e) {
+            LogUtils.e("Query budget usage error: " + e.getMessage());
+            return budgets;
+        } finally {
+            closeCursor(cursor);
         }
-        
-        budget.setNotifyPercent(cursor.getInt(cursor.getColumnIndex("notify_percent")));
-        budget.setNotifyEnabled(cursor.getInt(cursor.getColumnIndex("notify_enabled")) == 1);
-        
-        return budget;
     }
 } 
\ No newline at end of file
@@ -6,12 +6,16 @@ import android.util.Log;
 import com.blankj.utilcode.util.LogUtils;
 import com.zjf.fincialsystem.model.Category;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 分类DAO类
@@ -21,10 +25,53 @@ public class CategoryDao extends BaseDao {
     
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_CATEGORIES;
     
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_NAME +
+            " (name, type, icon, color, parent_id, user_id, is_default) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SQL_UPSERT = "INSERT INTO " + TABLE_NAME +
+            " (id, name, type, icon, color, parent_id, user_id, is_default) VALUES (?, ?, ?, ?, ?, ?, ?, ?)" +
+            " ON CONFLICT(id) DO UPDATE SET name = excluded.name, type = excluded.type, icon = excluded.icon," +
+            " color = excluded.color, parent_id = excluded.parent_id, user_id = excluded.user_id, is_default = excluded.is_default";
+    
+    // 分类映射器，列顺序与map中的索引一致
+    private static final RowMapper<Category> CATEGORY_MAPPER = new RowMapper<Category>(
+            "id", "name", "type", "icon", "color", "parent_id", "user_id", "is_default") {
+        @Override
+        protected Category map(Cursor cursor, int[] index) {
+            Category category = new Category();
+            category.setId(cursor.getLong(index[0]));
+            category.setName(cursor.getString(index[1]));
+            category.setType(cursor.getInt(index[2]));
+            category.setIcon(cursor.getString(index[3]));
+            category.setColor(cursor.getString(index[4]));
+            if (!cursor.isNull(index[5])) {
+                category.setParentId(cursor.getLong(index[5]));
+            }
+            if (!cursor.isNull(index[6])) {
+                category.setUserId(cursor.getLong(index[6]));
+            }
+            category.setDefault(cursor.getInt(index[7]) == 1);
+            return category;
+        }
+    };
+    
+    // 分类ID -> 分类的内存缓存，首次按ID查询时一次加载全部分类，分类有修改时失效
+    private volatile Map<Long, Category> categoryCache;
+    
+    // 缓存版本，每次失效时加一；加载期间版本变化说明读到的可能是写入前的数据，不缓存
+    private long cacheGeneration;
+    
+    // 保护categoryCache和cacheGeneration的一致性，只在赋值时持有，不在查询期间持有
+    private final Object cacheLock = new Object();
+    
     public CategoryDao(SQLiteDatabase database) {
         super(database);
     }
     
+    public CategoryDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
+    }
+    
     /**
      * 插入分类
      * @param category 分类对象
@@ -36,6 +83,7 @@ public class CategoryDao extends BaseDao {
             values.put("name", category.getName());
             values.put("type", category.getType());
             values.put("icon", category.getIcon());
+            values.put("color", category.getColor());
             
             if (category.getParentId() != null) {
                 values.put("parent_id", category.getParentId());
@@ -47,13 +95,55 @@ public class CategoryDao extends BaseDao {
             
             values.put("is_default", category.isDefault() ? 1 : 0);
             
-            return database.insert(TABLE_NAME, null, values);
+            long id = database.insert(TABLE_NAME, null, values);
+            invalidateCache();
+            return id;
         } catch (Exception e) {
             LogUtils.e("Insert category error: " + e.getMessage());
             return -1;
         }
     }
     
+    /**
+     * 批量插入分类
+     * @param categories 分类列表
+     * @return 批量写入结果
+     */
+    public BatchResult insertAll(List<Category> categories) {
+        BatchResult result = executeBatchInsert(SQL_INSERT, categories, category -> new Object[]{
+                category.getName(),
+                category.getType(),
+                category.getIcon(),
+                category.getColor(),
+                category.getParentId(),
+                category.getUserId() > 0 ? category.getUserId() : null,
+                category.isDefault()
+        });
+        // 写入提交后再失效，否则并发的查询可能重新加载到写入前的数据
+        invalidateCache();
+        return result;
+    }
+    
+    /**
+     * 批量插入或更新分类（按ID），用于同步服务器数据
+     * @param categories 分类列表
+     * @return 批量写入结果
+     */
+    public BatchResult upsertAll(List<Category> categories) {
+        BatchResult result = executeBatchInsert(SQL_UPSERT, categories, category -> new Object[]{
+                category.getId() > 0 ? category.getId() : null,
+                category.getName(),
+                category.getType(),
+                category.getIcon(),
+                category.getColor(),
+                category.getParentId(),
+                category.getUserId() > 0 ? category.getUserId() : null,
+                category.isDefault()
+        }, Category::getId);
+        invalidateCache();
+        return result;
+    }
+    
     /**
      * 更新分类
      * @param category 分类对象
@@ -65,6 +155,7 @@ public class CategoryDao extends BaseDao {
             values.put("name", category.getName());
             values.put("type", category.getType());
             values.put("icon", category.getIcon());
+            values.put("color", category.getColor());
             
             if (category.getParentId() != null) {
                 values.put("parent_id", category.getParentId());
@@ -81,6 +172,7 @@ public class CategoryDao extends BaseDao {
             values.put("is_default", category.isDefault() ? 1 : 0);
             
             int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(category.getId())});
+            invalidateCache();
             return rowsAffected > 0;
         } catch (Exception e) {
             LogUtils.e("Update category error: " + e.getMessage());
@@ -96,6 +188,7 @@ public class CategoryDao extends BaseDao {
     public boolean delete(long categoryId) {
         try {
             int rowsAffected = database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(categoryId)});
+            invalidateCache();
             return rowsAffected > 0;
         } catch (Exception e) {
             LogUtils.e("Delete category error: " + e.getMessage());
@@ -109,18 +202,54 @@ public class CategoryDao extends BaseDao {
      * @return 分类对象，不存在返回null
      */
     public Category queryById(long categoryId) {
-        Cursor cursor = null;
+        return getCategoryMap().get(categoryId);
+    }
+    
+    /**
+     * 获取分类ID -> 分类的映射
+     * 首次调用时一次查询加载全部分类，之后直接读内存，分类增删改后重新加载；
+     * 加载期间缓存失效或加载失败时，结果只返回给本次调用，不缓存；
+     * 返回的分类对象在调用方之间共享，不要修改
+     * @return 分类映射，不可修改
+     */
+    public Map<Long, Category> getCategoryMap() {
+        Map<Long, Category> cache = categoryCache;
+        if (cache != null) {
+            return cache;
+        }
+        long generation;
+        synchronized (cacheLock) {
+            if (categoryCache != null) {
+                return categoryCache;
+            }
+            generation = cacheGeneration;
+        }
+        
+        Map<Long, Category> loaded = new HashMap<>();
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?", new String[]{String.valueOf(categoryId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToCategory(cursor);
+            for (Category category : loadAll()) {
+                loaded.put(category.getId(), category);
             }
-            return null;
         } catch (Exception e) {
-            LogUtils.e("Query category by id error: " + e.getMessage());
-            return null;
-        } finally {
-            closeCursor(cursor);
+            LogUtils.e("Load category map error: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+        Map<Long, Category> result = Collections.unmodifiableMap(loaded);
+        synchronized (cacheLock) {
+            if (generation == cacheGeneration) {
+                categoryCache = result;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 使分类缓存失效，下次查询时重新加载；在写入提交后调用
+     */
+    public void invalidateCache() {
+        synchronized (cacheLock) {
+            cacheGeneration++;
+            categoryCache = null;
         }
     }
     
@@ -129,19 +258,23 @@ public class CategoryDao extends BaseDao {
      * @return 分类列表
      */
     public List<Category> queryAll() {
-        List<Category> categories = new ArrayList<>();
-        Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, null, null, null, null, "type ASC, name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
-            return categories;
+            return loadAll();
         } catch (Exception e) {
             LogUtils.e("Query all categories error: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 查询所有分类，失败时抛出异常
+     */
+    private List<Category> loadAll() {
+        List<Category> categories = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), null, null, null, null, "type ASC, name ASC");
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } finally {
             closeCursor(cursor);
@@ -157,13 +290,8 @@ public class CategoryDao extends BaseDao {
         List<Category> categories = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "type = ?", new String[]{type}, null, null, "name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), "type = ?", new String[]{type}, null, null, "name ASC");
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } catch (Exception e) {
             LogUtils.e("Query categories by type error: " + e.getMessage());
@@ -182,13 +310,8 @@ public class CategoryDao extends BaseDao {
         List<Category> categories = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "type ASC, name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "type ASC, name ASC");
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } catch (Exception e) {
             LogUtils.e("Query categories by user id error: " + e.getMessage());
@@ -207,13 +330,8 @@ public class CategoryDao extends BaseDao {
         List<Category> categories = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "is_default = 1 OR user_id = ?", new String[]{String.valueOf(userId)}, null, null, "type ASC, name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), "is_default = 1 OR user_id = ?", new String[]{String.valueOf(userId)}, null, null, "type ASC, name ASC");
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } catch (Exception e) {
             LogUtils.e("Query available categories error: " + e.getMessage());
@@ -233,14 +351,9 @@ public class CategoryDao extends BaseDao {
         List<Category> categories = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "(is_default = 1 OR user_id = ?) AND type = ?",
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), "(is_default = 1 OR user_id = ?) AND type = ?",
                     new String[]{String.valueOf(userId), type}, null, null, "name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } catch (Exception e) {
             LogUtils.e("Query available categories by type error: " + e.getMessage());
@@ -259,13 +372,8 @@ public class CategoryDao extends BaseDao {
         List<Category> categories = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "parent_id = ?", new String[]{String.valueOf(parentId)}, null, null, "name ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Category category = cursorToCategory(cursor);
-                    categories.add(category);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, CATEGORY_MAPPER.getColumns(), "parent_id = ?", new String[]{String.valueOf(parentId)}, null, null, "name ASC");
+            CATEGORY_MAPPER.mapAll(cursor, categories);
             return categories;
         } catch (Exception e) {
             LogUtils.e("Query categories by parent id error: " + e.getMessage());
@@ -274,31 +382,4 @@ public class CategoryDao extends BaseDao {
             closeCursor(cursor);
         }
     }
-    
-    /**
-     * 将游标数据转换为分类对象
-     * @param cursor 游标
-     * @return 分类对象
-     */
-    private Category cursorToCategory(Cursor cursor) {
-        Category category = new Category();
-        category.setId(cursor.getLong(cursor.getColumnIndex("id")));
-        category.setName(cursor.getString(cursor.getColumnIndex("name")));
-        category.setType(cursor.getInt(cursor.getColumnIndex("type")));
-        category.setIcon(cursor.getString(cursor.getColumnIndex("icon")));
-        
-        int parentIdIndex = cursor.getColumnIndex("parent_id");
-        if (!cursor.isNull(parentIdIndex)) {
-            category.setParentId(cursor.getLong(parentIdIndex));
-        }
-        
-        int userIdIndex = cursor.getColumnIndex("user_id");
-        if (!cursor.isNull(userIdIndex)) {
-            category.setUserId(cursor.getLong(userIdIndex));
-        }
-        
-        category.setDefault(cursor.getInt(cursor.getColumnIndex("is_default")) == 1);
-        
-        return category;
-    }
 } 
\ No newline at end of file
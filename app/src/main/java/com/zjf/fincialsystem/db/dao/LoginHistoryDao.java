@@ -3,25 +3,76 @@ package com.zjf.fincialsystem.db.dao;
 import android.util.Log;
 
 import com.zjf.fincialsystem.model.LoginHistory;
-import com.zjf.fincialsystem.utils.DateUtils;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 登录历史数据访问对象
  */
-public class LoginHistoryDao {
-    private SQLiteDatabase database;
+public class LoginHistoryDao extends BaseDao {
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_LOGIN_HISTORY;
 
+    private static final String SQL_FAILED_COUNT = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE user_id = ? AND success = 0";
+
+    /**
+     * 保留策略：每个用户最多保留的记录条数
+     */
+    public static final int RETENTION_MAX_ROWS = 200;
+
+    /**
+     * 保留策略：记录最多保留的天数
+     */
+    public static final int RETENTION_DAYS = 180;
+
+    /**
+     * 清理时每批删除的条数，每批是一个短事务，不会长时间占用写连接
+     */
+    public static final int PURGE_CHUNK_SIZE = 200;
+
+    private static final String SQL_USER_IDS = "SELECT DISTINCT user_id FROM " + TABLE_NAME + " WHERE user_id IS NOT NULL";
+
+    // 用户第N新的记录的登录时间，早于它的记录超出条数限制
+    private static final String SQL_NTH_LOGIN_TIME = "SELECT login_time FROM " + TABLE_NAME +
+            " WHERE user_id = ? ORDER BY login_time DESC LIMIT 1 OFFSET ?";
+
+    private static final String SQL_HAS_EXPIRED = "SELECT EXISTS(SELECT 1 FROM " + TABLE_NAME +
+            " WHERE user_id = ? AND login_time < ?)";
+
+    private static final String SQL_PURGE_CHUNK = "DELETE FROM " + TABLE_NAME + " WHERE id IN (SELECT id FROM " + TABLE_NAME +
+            " WHERE user_id = ? AND login_time < ? LIMIT ?)";
+
+    // 登录历史映射器，列顺序与map中的索引一致
+    private static final RowMapper<LoginHistory> LOGIN_HISTORY_MAPPER = new RowMapper<LoginHistory>(
+            "id", "user_id", "login_time", "ip_address", "device_model", "success") {
+        @Override
+        protected LoginHistory map(Cursor cursor, int[] index) {
+            LoginHistory loginHistory = new LoginHistory();
+            loginHistory.setId(cursor.getLong(index[0]));
+            loginHistory.setUserId(cursor.getLong(index[1]));
+            loginHistory.setLoginTime(readDate(cursor, index[2]));
+            loginHistory.setIpAddress(cursor.getString(index[3]));
+            loginHistory.setDeviceInfo(cursor.getString(index[4]));
+            loginHistory.setSuccess(cursor.getInt(index[5]) == 1);
+            return loginHistory;
+        }
+    };
+
     public LoginHistoryDao(SQLiteDatabase database) {
-        this.database = database;
+        super(database);
+    }
+    
+    public LoginHistoryDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
     }
 
     /**
@@ -34,9 +85,9 @@ public class LoginHistoryDao {
         try {
             android.content.ContentValues values = new android.content.ContentValues();
             values.put("user_id", loginHistory.getUserId());
-            values.put("login_time", DateUtils.formatDateTime(loginHistory.getLoginTime()));
+            values.put("login_time", toMillis(loginHistory.getLoginTime()));
             values.put("ip_address", loginHistory.getIpAddress());
-            values.put("device_info", loginHistory.getDeviceInfo());
+            values.put("device_model", loginHistory.getDeviceInfo());
             values.put("success", loginHistory.isSuccess() ? 1 : 0);
 
             return database.insert(TABLE_NAME, null, values);
@@ -54,10 +105,11 @@ public class LoginHistoryDao {
      */
     public List<LoginHistory> getLoginHistoryByUserId(long userId) {
         List<LoginHistory> loginHistoryList = new ArrayList<>();
+        Cursor cursor = null;
         try {
-            Cursor cursor = database.query(
+            cursor = reader().query(
                     TABLE_NAME,
-                    null,
+                    LOGIN_HISTORY_MAPPER.getColumns(),
                     "user_id = ?",
                     new String[]{String.valueOf(userId)},
                     null,
@@ -65,15 +117,11 @@ public class LoginHistoryDao {
                     "login_time DESC"
             );
 
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    LoginHistory loginHistory = cursorToLoginHistory(cursor);
-                    loginHistoryList.add(loginHistory);
-                } while (cursor.moveToNext());
-                cursor.close();
-            }
+            LOGIN_HISTORY_MAPPER.mapAll(cursor, loginHistoryList);
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            closeCursor(cursor);
         }
         return loginHistoryList;
     }
@@ -86,10 +134,11 @@ public class LoginHistoryDao {
      */
     public List<LoginHistory> getRecentLoginHistory(int limit) {
         List<LoginHistory> loginHistoryList = new ArrayList<>();
+        Cursor cursor = null;
         try {
-            Cursor cursor = database.query(
+            cursor = reader().query(
                     TABLE_NAME,
-                    null,
+                    LOGIN_HISTORY_MAPPER.getColumns(),
                     null,
                     null,
                     null,
@@ -98,15 +147,11 @@ public class LoginHistoryDao {
                     String.valueOf(limit)
             );
 
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    LoginHistory loginHistory = cursorToLoginHistory(cursor);
-                    loginHistoryList.add(loginHistory);
-                } while (cursor.moveToNext());
-                cursor.close();
-            }
+            LOGIN_HISTORY_MAPPER.mapAll(cursor, loginHistoryList);
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            closeCursor(cursor);
         }
         return loginHistoryList;
     }
@@ -141,12 +186,10 @@ public class LoginHistoryDao {
         Cursor cursor = null;
 
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?",
+            cursor = reader().query(TABLE_NAME, LOGIN_HISTORY_MAPPER.getColumns(), "id = ?",
                     new String[]{String.valueOf(loginHistoryId)}, null, null, null);
 
-            if (cursor != null && cursor.moveToFirst()) {
-                loginHistory = cursorToLoginHistory(cursor);
-            }
+            loginHistory = LOGIN_HISTORY_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             Log.e("LoginHistoryDao", "Query by ID failed", e);
         } finally {
@@ -169,12 +212,10 @@ public class LoginHistoryDao {
         Cursor cursor = null;
 
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND success = 1",
+            cursor = reader().query(TABLE_NAME, LOGIN_HISTORY_MAPPER.getColumns(), "user_id = ? AND success = 1",
                     new String[]{String.valueOf(userId)}, null, null, "login_time DESC", "1");
 
-            if (cursor != null && cursor.moveToFirst()) {
-                loginHistory = cursorToLoginHistory(cursor);
-            }
+            loginHistory = LOGIN_HISTORY_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             Log.e("LoginHistoryDao", "Query last success login failed", e);
         } finally {
@@ -193,41 +234,81 @@ public class LoginHistoryDao {
      * @return 失败次数
      */
     public int queryFailedCount(long userId) {
-        Cursor cursor = null;
-        int count = 0;
-
         try {
-            cursor = database.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME +
-                    " WHERE user_id = ? AND success = 0", new String[]{String.valueOf(userId)});
-
-            if (cursor != null && cursor.moveToFirst()) {
-                count = cursor.getInt(0);
-            }
+            return (int) simpleQueryForLong(SQL_FAILED_COUNT, userId);
         } catch (Exception e) {
             Log.e("LoginHistoryDao", "Query failed count failed", e);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+            return 0;
+        }
+    }
+
+    /**
+     * 计算每个用户需要清理的截止时间
+     * 早于保留天数的记录，以及超出保留条数的较旧记录都需要清理，取两者中较晚的时间作为截止时间；
+     * 没有需要清理的记录的用户不会出现在结果中
+     *
+     * @param nowMillis 当前时间
+     * @return 用户ID -> 截止时间（毫秒，早于此时间的记录需要删除）
+     */
+    public Map<Long, Long> queryPurgeCutoffs(long nowMillis) {
+        Map<Long, Long> cutoffs = new LinkedHashMap<>();
+        long ageCutoff = nowMillis - TimeUnit.DAYS.toMillis(RETENTION_DAYS);
+        for (long userId : queryUserIds()) {
+            long cutoff = ageCutoff;
+            Cursor cursor = null;
+            try {
+                cursor = reader().rawQuery(SQL_NTH_LOGIN_TIME,
+                        new String[]{String.valueOf(userId), String.valueOf(RETENTION_MAX_ROWS - 1)});
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    cutoff = Math.max(cutoff, cursor.getLong(0));
+                }
+                if (simpleQueryForLong(SQL_HAS_EXPIRED, userId, cutoff) == 1) {
+                    cutoffs.put(userId, cutoff);
+                }
+            } catch (Exception e) {
+                Log.e("LoginHistoryDao", "Query purge cutoff failed", e);
+            } finally {
+                closeCursor(cursor);
             }
         }
+        return cutoffs;
+    }
 
-        return count;
+    /**
+     * 删除一批早于截止时间的登录历史
+     *
+     * @param userId 用户ID
+     * @param cutoffMillis 截止时间，早于此时间的记录会被删除
+     * @param chunkSize 本批最多删除的条数
+     * @return 删除的行数，小于chunkSize表示该用户已清理完，失败返回-1
+     */
+    public int purgeChunk(long userId, long cutoffMillis, int chunkSize) {
+        try {
+            return executeUpdateDelete(SQL_PURGE_CHUNK, userId, cutoffMillis, chunkSize);
+        } catch (Exception e) {
+            Log.e("LoginHistoryDao", "Purge login history failed", e);
+            return -1;
+        }
     }
 
     /**
-     * 将游标数据转换为登录历史对象
+     * 查询有登录历史的用户
      *
-     * @param cursor 游标
-     * @return 登录历史对象
+     * @return 用户ID列表
      */
-    private LoginHistory cursorToLoginHistory(Cursor cursor) {
-        LoginHistory loginHistory = new LoginHistory();
-        loginHistory.setId(cursor.getLong(cursor.getColumnIndex("id")));
-        loginHistory.setUserId(cursor.getLong(cursor.getColumnIndex("user_id")));
-        loginHistory.setLoginTime(DateUtils.parseDateTime(cursor.getString(cursor.getColumnIndex("login_time"))));
-        loginHistory.setIpAddress(cursor.getString(cursor.getColumnIndex("ip_address")));
-        loginHistory.setDeviceInfo(cursor.getString(cursor.getColumnIndex("device_info")));
-        loginHistory.setSuccess(cursor.getInt(cursor.getColumnIndex("success")) == 1);
-        return loginHistory;
+    private List<Long> queryUserIds() {
+        List<Long> userIds = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = reader().rawQuery(SQL_USER_IDS, null);
+            while (cursor.moveToNext()) {
+                userIds.add(cursor.getLong(0));
+            }
+        } catch (Exception e) {
+            Log.e("LoginHistoryDao", "Query user ids failed", e);
+        } finally {
+            closeCursor(cursor);
+        }
+        return userIds;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
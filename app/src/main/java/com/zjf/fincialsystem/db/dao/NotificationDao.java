@@ -4,14 +4,17 @@ import android.content.ContentValues;
 
 import com.blankj.utilcode.util.LogUtils;
 import com.zjf.fincialsystem.model.Notification;
-import com.zjf.fincialsystem.utils.DateUtils;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 通知DAO类
@@ -21,10 +24,43 @@ public class NotificationDao extends BaseDao {
     
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_NOTIFICATIONS;
     
+    private static final String SQL_UNREAD_COUNT = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE user_id = ? AND is_read = 0";
+    
+    private static final String SQL_UNREAD_OWNER = "SELECT user_id FROM " + TABLE_NAME + " WHERE id = ? AND is_read = 0";
+    
+    private static final String SQL_MARK_AS_READ = "UPDATE " + TABLE_NAME + " SET is_read = 1 WHERE id = ? AND is_read = 0";
+    
+    // 分页排序，id作为同一时间戳内的次序，保证游标唯一
+    private static final String PAGE_ORDER_BY = "created_at DESC, id DESC";
+    
+    // 通知映射器，列顺序与map中的索引一致
+    private static final RowMapper<Notification> NOTIFICATION_MAPPER = new RowMapper<Notification>(
+            "id", "user_id", "title", "content", "type", "created_at", "is_read") {
+        @Override
+        protected Notification map(Cursor cursor, int[] index) {
+            Notification notification = new Notification();
+            notification.setId(cursor.getLong(index[0]));
+            notification.setUserId(cursor.getLong(index[1]));
+            notification.setTitle(cursor.getString(index[2]));
+            notification.setContent(cursor.getString(index[3]));
+            notification.setType(cursor.getString(index[4]));
+            notification.setCreatedAt(readDate(cursor, index[5]));
+            notification.setRead(cursor.getInt(index[6]) == 1);
+            return notification;
+        }
+    };
+    
+    // 用户ID -> 未读数量，首次查询时从数据库加载，之后由写操作在同一把锁内同步修改
+    private final Map<Long, Integer> unreadCounts = new HashMap<>();
+    
     public NotificationDao(SQLiteDatabase database) {
         super(database);
     }
     
+    public NotificationDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
+    }
+    
     /**
      * 插入通知
      * @param notification 通知对象
@@ -37,10 +73,16 @@ public class NotificationDao extends BaseDao {
             values.put("title", notification.getTitle());
             values.put("content", notification.getContent());
             values.put("type", notification.getType());
-            values.put("created_at", DateUtils.formatDateTime(notification.getCreatedAt()));
+            values.put("created_at", toMillis(notification.getCreatedAt()));
             values.put("is_read", notification.isRead() ? 1 : 0);
             
-            return database.insert(TABLE_NAME, null, values);
+            synchronized (unreadCounts) {
+                long id = database.insert(TABLE_NAME, null, values);
+                if (id != -1 && !notification.isRead()) {
+                    adjustUnreadCount(notification.getUserId(), 1);
+                }
+                return id;
+            }
         } catch (Exception e) {
             LogUtils.e("Insert notification error: " + e.getMessage());
             return -1;
@@ -59,11 +101,15 @@ public class NotificationDao extends BaseDao {
             values.put("title", notification.getTitle());
             values.put("content", notification.getContent());
             values.put("type", notification.getType());
-            values.put("created_at", DateUtils.formatDateTime(notification.getCreatedAt()));
+            values.put("created_at", toMillis(notification.getCreatedAt()));
             values.put("is_read", notification.isRead() ? 1 : 0);
             
-            int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(notification.getId())});
-            return rowsAffected > 0;
+            synchronized (unreadCounts) {
+                int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(notification.getId())});
+                // 可能修改了已读状态或所属用户，重新统计
+                unreadCounts.clear();
+                return rowsAffected > 0;
+            }
         } catch (Exception e) {
             LogUtils.e("Update notification error: " + e.getMessage());
             return false;
@@ -77,8 +123,14 @@ public class NotificationDao extends BaseDao {
      */
     public boolean delete(long notificationId) {
         try {
-            int rowsAffected = database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(notificationId)});
-            return rowsAffected > 0;
+            synchronized (unreadCounts) {
+                Long unreadOwner = queryUnreadOwner(notificationId);
+                int rowsAffected = database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(notificationId)});
+                if (rowsAffected > 0 && unreadOwner != null) {
+                    adjustUnreadCount(unreadOwner, -1);
+                }
+                return rowsAffected > 0;
+            }
         } catch (Exception e) {
             LogUtils.e("Delete notification error: " + e.getMessage());
             return false;
@@ -92,8 +144,11 @@ public class NotificationDao extends BaseDao {
      */
     public boolean deleteByUserId(long userId) {
         try {
-            int rowsAffected = database.delete(TABLE_NAME, "user_id = ?", new String[]{String.valueOf(userId)});
-            return rowsAffected > 0;
+            synchronized (unreadCounts) {
+                int rowsAffected = database.delete(TABLE_NAME, "user_id = ?", new String[]{String.valueOf(userId)});
+                unreadCounts.put(userId, 0);
+                return rowsAffected > 0;
+            }
         } catch (Exception e) {
             LogUtils.e("Delete notifications by user id error: " + e.getMessage());
             return false;
@@ -108,11 +163,8 @@ public class NotificationDao extends BaseDao {
     public Notification queryById(long notificationId) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?", new String[]{String.valueOf(notificationId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToNotification(cursor);
-            }
-            return null;
+            cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(), "id = ?", new String[]{String.valueOf(notificationId)}, null, null, null);
+            return NOTIFICATION_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query notification by id error: " + e.getMessage());
             return null;
@@ -130,13 +182,8 @@ public class NotificationDao extends BaseDao {
         List<Notification> notifications = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "created_at DESC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Notification notification = cursorToNotification(cursor);
-                    notifications.add(notification);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(), "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "created_at DESC");
+            NOTIFICATION_MAPPER.mapAll(cursor, notifications);
             return notifications;
         } catch (Exception e) {
             LogUtils.e("Query notifications by user id error: " + e.getMessage());
@@ -155,13 +202,8 @@ public class NotificationDao extends BaseDao {
         List<Notification> notifications = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND is_read = 0", new String[]{String.valueOf(userId)}, null, null, "created_at DESC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Notification notification = cursorToNotification(cursor);
-                    notifications.add(notification);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(), "user_id = ? AND is_read = 0", new String[]{String.valueOf(userId)}, null, null, "created_at DESC");
+            NOTIFICATION_MAPPER.mapAll(cursor, notifications);
             return notifications;
         } catch (Exception e) {
             LogUtils.e("Query unread notifications by user id error: " + e.getMessage());
@@ -181,13 +223,8 @@ public class NotificationDao extends BaseDao {
         List<Notification> notifications = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "created_at DESC", String.valueOf(limit));
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Notification notification = cursorToNotification(cursor);
-                    notifications.add(notification);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(), "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "created_at DESC", String.valueOf(limit));
+            NOTIFICATION_MAPPER.mapAll(cursor, notifications);
             return notifications;
         } catch (Exception e) {
             LogUtils.e("Query recent notifications by user id error: " + e.getMessage());
@@ -197,23 +234,95 @@ public class NotificationDao extends BaseDao {
         }
     }
     
+    /**
+     * 按键集分页查询用户的通知，按(created_at DESC, id DESC)排序
+     * 以上一页最后一条通知的(created_at, id)作为游标向后查找，翻页代价与页码无关
+     * @param userId 用户ID
+     * @param beforeCreatedAt 上一页最后一条通知的时间，为null时查询第一页
+     * @param beforeId 上一页最后一条通知的ID
+     * @param limit 每页条数
+     * @return 通知列表，条数小于limit表示已无更多数据
+     */
+    public List<Notification> queryPage(long userId, Date beforeCreatedAt, long beforeId, int limit) {
+        List<Notification> notifications = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            if (beforeCreatedAt == null) {
+                cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(), "user_id = ?",
+                        new String[]{String.valueOf(userId)}, null, null, PAGE_ORDER_BY, String.valueOf(limit));
+            } else {
+                String beforeMillis = String.valueOf(beforeCreatedAt.getTime());
+                cursor = reader().query(TABLE_NAME, NOTIFICATION_MAPPER.getColumns(),
+                        "user_id = ? AND created_at <= ? AND (created_at < ? OR id < ?)",
+                        new String[]{String.valueOf(userId), beforeMillis, beforeMillis, String.valueOf(beforeId)},
+                        null, null, PAGE_ORDER_BY, String.valueOf(limit));
+            }
+            NOTIFICATION_MAPPER.mapAll(cursor, notifications);
+            return notifications;
+        } catch (Exception e) {
+            LogUtils.e("Query notification page error: " + e.getMessage());
+            return notifications;
+        } finally {
+            closeCursor(cursor);
+        }
+    }
+    
     /**
      * 查询用户的未读通知数量
+     * 首次查询后由内存计数直接返回，插入、标记已读、删除时同步更新
      * @param userId 用户ID
      * @return 未读通知数量
      */
     public int queryUnreadCount(long userId) {
+        synchronized (unreadCounts) {
+            Integer cached = unreadCounts.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                int count = (int) simpleQueryForLong(SQL_UNREAD_COUNT, userId);
+                unreadCounts.put(userId, count);
+                return count;
+            } catch (Exception e) {
+                LogUtils.e("Query unread count error: " + e.getMessage());
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * 清除未读数量缓存，下次查询时重新统计
+     * 在外部事务中写入通知后事务回滚时需要调用
+     */
+    public void invalidateUnreadCount() {
+        synchronized (unreadCounts) {
+            unreadCounts.clear();
+        }
+    }
+    
+    /**
+     * 调整已加载的未读数量，未加载的用户等首次查询时再统计
+     * 调用方需持有unreadCounts锁
+     * @param userId 用户ID
+     * @param delta 变化量
+     */
+    private void adjustUnreadCount(long userId, int delta) {
+        Integer cached = unreadCounts.get(userId);
+        if (cached != null) {
+            unreadCounts.put(userId, Math.max(0, cached + delta));
+        }
+    }
+    
+    /**
+     * 查询未读通知的所属用户
+     * @param notificationId 通知ID
+     * @return 用户ID，通知不存在或已读时返回null
+     */
+    private Long queryUnreadOwner(long notificationId) {
         Cursor cursor = null;
         try {
-            cursor = database.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE user_id = ? AND is_read = 0",
-                    new String[]{String.valueOf(userId)});
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getInt(0);
-            }
-            return 0;
-        } catch (Exception e) {
-            LogUtils.e("Query unread count error: " + e.getMessage());
-            return 0;
+            cursor = reader().rawQuery(SQL_UNREAD_OWNER, new String[]{String.valueOf(notificationId)});
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
         } finally {
             closeCursor(cursor);
         }
@@ -226,11 +335,18 @@ public class NotificationDao extends BaseDao {
      */
     public boolean markAsRead(long notificationId) {
         try {
-            ContentValues values = new ContentValues();
-            values.put("is_read", 1);
-            
-            int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(notificationId)});
-            return rowsAffected > 0;
+            synchronized (unreadCounts) {
+                Long unreadOwner = queryUnreadOwner(notificationId);
+                if (unreadOwner == null) {
+                    // 不存在或已是已读
+                    return queryById(notificationId) != null;
+                }
+                int rowsAffected = executeUpdateDelete(SQL_MARK_AS_READ, notificationId);
+                if (rowsAffected > 0) {
+                    adjustUnreadCount(unreadOwner, -rowsAffected);
+                }
+                return true;
+            }
         } catch (Exception e) {
             LogUtils.e("Mark notification as read error: " + e.getMessage());
             return false;
@@ -247,28 +363,14 @@ public class NotificationDao extends BaseDao {
             ContentValues values = new ContentValues();
             values.put("is_read", 1);
             
-            int rowsAffected = database.update(TABLE_NAME, values, "user_id = ? AND is_read = 0", new String[]{String.valueOf(userId)});
-            return rowsAffected > 0;
+            synchronized (unreadCounts) {
+                int rowsAffected = database.update(TABLE_NAME, values, "user_id = ? AND is_read = 0", new String[]{String.valueOf(userId)});
+                unreadCounts.put(userId, 0);
+                return rowsAffected > 0;
+            }
         } catch (Exception e) {
             LogUtils.e("Mark all notifications as read error: " + e.getMessage());
             return false;
         }
     }
-    
-    /**
-     * 将游标数据转换为通知对象
-     * @param cursor 游标
-     * @return 通知对象
-     */
-    private Notification cursorToNotification(Cursor cursor) {
-        Notification notification = new Notification();
-        notification.setId(cursor.getLong(cursor.getColumnIndex("id")));
-        notification.setUserId(cursor.getLong(cursor.getColumnIndex("user_id")));
-        notification.setTitle(cursor.getString(cursor.getColumnIndex("title")));
-        notification.setContent(cursor.getString(cursor.getColumnIndex("content")));
-        notification.setType(cursor.getString(cursor.getColumnIndex("type")));
-        notification.setCreatedAt(DateUtils.parseDateTime(cursor.getString(cursor.getColumnIndex("created_at"))));
-        notification.setRead(cursor.getInt(cursor.getColumnIndex("is_read")) == 1);
-        return notification;
-    }
 } 
\ No newline at end of file
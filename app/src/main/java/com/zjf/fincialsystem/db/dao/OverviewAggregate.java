@@ -0,0 +1,137 @@
+package com.zjf.fincialsystem.db.dao;
+
+import com.zjf.fincialsystem.model.Money;
+import com.zjf.fincialsystem.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 收支概览聚合结果
+ * 由一次 GROUP BY type, category_id 查询得到收入、支出、转账的合计、笔数以及支出分类明细
+ */
+public class OverviewAggregate {
+
+    private long incomeCents;
+    private long expenseCents;
+    private long transferCents;
+    private int incomeCount;
+    private int expenseCount;
+    private int transferCount;
+    // 分类ID -> 支出金额（分），无分类的记录使用0
+    private final Map<Long, Long> expenseByCategory = new HashMap<>();
+
+    /**
+     * 累加一个分组的结果
+     * @param type 交易类型
+     * @param categoryId 分类ID
+     * @param count 笔数
+     * @param sumCents 金额合计（分）
+     */
+    void add(int type, long categoryId, int count, long sumCents) {
+        switch (type) {
+            case Transaction.TYPE_INCOME:
+                incomeCents += sumCents;
+                incomeCount += count;
+                break;
+            case Transaction.TYPE_EXPENSE:
+                expenseCents += sumCents;
+                expenseCount += count;
+                Long current = expenseByCategory.get(categoryId);
+                expenseByCategory.put(categoryId, (current != null ? current : 0L) + sumCents);
+                break;
+            case Transaction.TYPE_TRANSFER:
+                transferCents += sumCents;
+                transferCount += count;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public Money getIncome() {
+        return Money.ofCents(incomeCents);
+    }
+
+    public Money getExpense() {
+        return Money.ofCents(expenseCents);
+    }
+
+    public Money getTransfer() {
+        return Money.ofCents(transferCents);
+    }
+
+    /**
+     * 结余 = 收入 - 支出
+     */
+    public Money getBalance() {
+        return Money.ofCents(incomeCents - expenseCents);
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getExpenseCount() {
+        return expenseCount;
+    }
+
+    public int getTransferCount() {
+        return transferCount;
+    }
+
+    public int getTotalCount() {
+        return incomeCount + expenseCount + transferCount;
+    }
+
+    /**
+     * 获取支出分类明细，按金额从高到低排序
+     * @return 分类ID -> 支出金额
+     */
+    public Map<Long, Money> getExpenseByCategory() {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(expenseByCategory.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        Map<Long, Money> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Long> entry : entries) {
+            result.put(entry.getKey(), Money.ofCents(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * 转换为与概览接口相同结构的数据
+     * @return 概览数据（totalIncome、totalExpense、totalBalance等）
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("totalIncome", getIncome());
+        data.put("totalExpense", getExpense());
+        data.put("totalBalance", getBalance());
+        data.put("totalTransfer", getTransfer());
+        data.put("incomeCount", incomeCount);
+        data.put("expenseCount", expenseCount);
+        data.put("transferCount", transferCount);
+
+        Map<String, Object> categories = new LinkedHashMap<>();
+        for (Map.Entry<Long, Money> entry : getExpenseByCategory().entrySet()) {
+            categories.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        data.put("expenseByCategory", categories);
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "OverviewAggregate{" +
+                "income=" + getIncome() +
+                ", expense=" + getExpense() +
+                ", transfer=" + getTransfer() +
+                ", count=" + getTotalCount() +
+                '}';
+    }
+}
@@ -0,0 +1,103 @@
+package com.zjf.fincialsystem.db.dao;
+
+import android.text.TextUtils;
+
+import net.sqlcipher.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标行映射器
+ * 声明查询的列（显式投影，替代SELECT *），每个游标只解析一次列索引，
+ * 之后逐行按索引读取，避免每行每列都调用getColumnIndex做字符串查找
+ * @param <T> 数据类型
+ */
+public abstract class RowMapper<T> {
+
+    private final String[] columns;
+    private final String columnList;
+
+    /**
+     * @param columns 查询的列，map方法中的索引数组与此顺序一致
+     */
+    protected RowMapper(String... columns) {
+        this.columns = columns;
+        this.columnList = TextUtils.join(", ", columns);
+    }
+
+    /**
+     * 获取投影列，用于SQLiteDatabase.query，调用方不能修改返回的数组
+     * @return 列名数组
+     */
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * 获取逗号分隔的列名，用于拼接rawQuery的SELECT子句
+     * @return 列名列表
+     */
+    public String getColumnList() {
+        return columnList;
+    }
+
+    /**
+     * 将当前行映射为对象
+     * @param cursor 已定位到当前行的游标
+     * @param index 列索引，与构造时声明的列顺序一致，游标中不存在的列为-1
+     * @return 数据对象
+     */
+    protected abstract T map(Cursor cursor, int[] index);
+
+    /**
+     * 解析列索引，每个游标只需要调用一次
+     * @param cursor 游标
+     * @return 列索引数组
+     */
+    public int[] resolve(Cursor cursor) {
+        int[] index = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            index[i] = cursor.getColumnIndex(columns[i]);
+        }
+        return index;
+    }
+
+    /**
+     * 映射游标的第一行
+     * @param cursor 游标，可为null
+     * @return 数据对象，没有数据时返回null
+     */
+    public T mapFirst(Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return null;
+        }
+        return map(cursor, resolve(cursor));
+    }
+
+    /**
+     * 映射游标的所有行
+     * @param cursor 游标，可为null
+     * @return 数据列表
+     */
+    public List<T> mapAll(Cursor cursor) {
+        List<T> result = new ArrayList<>(cursor != null ? Math.max(cursor.getCount(), 0) : 0);
+        mapAll(cursor, result);
+        return result;
+    }
+
+    /**
+     * 映射游标的所有行并追加到列表，映射中途出错时已映射的行仍保留在列表中
+     * @param cursor 游标，可为null
+     * @param result 结果列表
+     */
+    public void mapAll(Cursor cursor, List<T> result) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return;
+        }
+        int[] index = resolve(cursor);
+        do {
+            result.add(map(cursor, index));
+        } while (cursor.moveToNext());
+    }
+}
@@ -1,13 +1,15 @@
 package com.zjf.fincialsystem.db.dao;
 
-import android.content.ContentValues;
 import android.util.Log;
 
 import com.blankj.utilcode.util.LogUtils;
 import com.zjf.fincialsystem.model.Category;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.model.Transaction;
 import com.zjf.fincialsystem.utils.DateUtils;
+import com.zjf.fincialsystem.db.AmountCentsMigration;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
@@ -25,10 +27,135 @@ public class TransactionDao extends BaseDao {
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_TRANSACTIONS;
     private static final String TAG = "TransactionDao";
     
+    // 查询读取视图，金额迁移完成前视图同时包含旧表中尚未复制的记录
+    private static final String VIEW_NAME = FinanceDatabaseHelper.VIEW_TRANSACTIONS;
+    
+    // 按日汇总表，由交易记录表的触发器维护
+    private static final String DAILY_TOTALS_TABLE = FinanceDatabaseHelper.TABLE_DAILY_TOTALS;
+    
+    // 参数（毫秒时间戳）对应的本地日期，与汇总表的day列比较
+    private static final String DAY_PARAM = FinanceDatabaseHelper.dayExpression("?");
+    
+    // 热点语句，通过BaseDao缓存编译结果
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_NAME +
+            " (user_id, amount_cents, type, category_id, date, description, note, image_path, created_at, updated_at)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    // 按服务器ID写入或更新，本地主键只由自增分配，不与服务器ID混用
+    private static final String SQL_UPSERT = "INSERT INTO " + TABLE_NAME +
+            " (remote_id, user_id, amount_cents, type, category_id, date, description, note, image_path, created_at, updated_at)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" +
+            " ON CONFLICT(remote_id) DO UPDATE SET user_id = excluded.user_id, amount_cents = excluded.amount_cents," +
+            " type = excluded.type, category_id = excluded.category_id, date = excluded.date," +
+            " description = excluded.description, note = excluded.note, image_path = excluded.image_path," +
+            " updated_at = excluded.updated_at";
+    
+    private static final String SQL_UPDATE = "UPDATE " + TABLE_NAME +
+            " SET user_id = ?, amount_cents = ?, type = ?, category_id = ?, date = ?, description = ?, note = ?, image_path = ?," +
+            " updated_at = ? WHERE id = ?";
+    
+    private static final String SQL_OVERVIEW = "SELECT type, category_id, SUM(count), SUM(sum_cents) FROM " + DAILY_TOTALS_TABLE +
+            " WHERE user_id = ? AND day BETWEEN " + DAY_PARAM + " AND " + DAY_PARAM + " GROUP BY type, category_id";
+    
+    private static final String SQL_DAILY_TOTALS_BY_TYPE = "SELECT day, SUM(sum_cents) FROM " + DAILY_TOTALS_TABLE +
+            " WHERE user_id = ? AND type = ? AND day BETWEEN " + DAY_PARAM + " AND " + DAY_PARAM +
+            " GROUP BY day ORDER BY day ASC";
+    
+    // 汇总表尚未包含全部交易时，直接按交易记录分组统计，结果列与上面两条语句一致
+    private static final String DAY_COLUMN = FinanceDatabaseHelper.dayExpression("date");
+    
+    private static final String SQL_OVERVIEW_FROM_TRANSACTIONS = "SELECT type, category_id, COUNT(*), SUM(amount_cents) FROM " + VIEW_NAME +
+            " WHERE user_id = ? AND date IS NOT NULL AND " + DAY_COLUMN + " BETWEEN " + DAY_PARAM + " AND " + DAY_PARAM +
+            " GROUP BY type, category_id";
+    
+    private static final String SQL_DAILY_TOTALS_FROM_TRANSACTIONS = "SELECT " + DAY_COLUMN + ", SUM(amount_cents) FROM " + VIEW_NAME +
+            " WHERE user_id = ? AND type = ? AND date IS NOT NULL AND " + DAY_COLUMN + " BETWEEN " + DAY_PARAM + " AND " + DAY_PARAM +
+            " GROUP BY 1 ORDER BY 1 ASC";
+    
+    // 分页排序，id作为同一时间戳内的次序，保证游标唯一
+    private static final String PAGE_ORDER_BY = "t.date DESC, t.id DESC";
+    
+    // 全文索引表，由交易记录表的触发器维护
+    private static final String FTS_TABLE = FinanceDatabaseHelper.TABLE_TRANSACTIONS_FTS;
+    
+    // trigram分词能匹配的最短关键词长度，更短的关键词只能用LIKE过滤
+    private static final int FTS_MIN_TERM_LENGTH = 3;
+    
+    private static final String SQL_SUM_BY_TYPE_AND_DATE_RANGE = "SELECT COALESCE(SUM(amount_cents), 0) FROM " + VIEW_NAME +
+            " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ?";
+    
+    // 交易记录映射器，列顺序与map中的索引一致
+    private static final RowMapper<Transaction> TRANSACTION_MAPPER = new RowMapper<Transaction>(
+            "id", "user_id", "category_id", "type", "amount_cents", "date",
+            "description", "note", "image_path", "created_at", "updated_at", "remote_id") {
+        @Override
+        protected Transaction map(Cursor cursor, int[] index) {
+            Transaction transaction = new Transaction();
+            transaction.setId(cursor.getLong(index[0]));
+            transaction.setUserId(cursor.getLong(index[1]));
+            transaction.setCategoryId(cursor.getLong(index[2]));
+            transaction.setType(cursor.getInt(index[3]));
+            transaction.setMoney(Money.ofCents(cursor.getLong(index[4])));
+            transaction.setDate(readDate(cursor, index[5]));
+            transaction.setDescription(cursor.getString(index[6]));
+            transaction.setNote(cursor.getString(index[7]));
+            transaction.setImagePath(cursor.getString(index[8]));
+            transaction.setCreatedAt(cursor.getLong(index[9]));
+            transaction.setUpdatedAt(cursor.getLong(index[10]));
+            transaction.setRemoteId(cursor.getLong(index[11]));
+            return transaction;
+        }
+    };
+    
+    // 带分类信息的交易记录映射器，前12列与TRANSACTION_MAPPER一致，分类列来自LEFT JOIN
+    private static final RowMapper<Transaction> DETAIL_MAPPER = new RowMapper<Transaction>(
+            "id", "user_id", "category_id", "type", "amount_cents", "date",
+            "description", "note", "image_path", "created_at", "updated_at", "remote_id",
+            "category_name", "category_icon", "category_color", "category_type") {
+        @Override
+        protected Transaction map(Cursor cursor, int[] index) {
+            Transaction transaction = TRANSACTION_MAPPER.map(cursor, index);
+            if (!cursor.isNull(index[12])) {
+                Category category = new Category();
+                category.setId(transaction.getCategoryId());
+                category.setName(cursor.getString(index[12]));
+                category.setIcon(cursor.getString(index[13]));
+                category.setColor(cursor.getString(index[14]));
+                category.setType(cursor.getInt(index[15]));
+                transaction.setCategory(category);
+            }
+            return transaction;
+        }
+    };
+    
+    // DETAIL_MAPPER的投影，交易记录表别名t，分类表别名c
+    private static final String DETAIL_PROJECTION = "t.id AS id, t.user_id AS user_id, t.category_id AS category_id," +
+            " t.type AS type, t.amount_cents AS amount_cents, t.date AS date, t.description AS description," +
+            " t.note AS note, t.image_path AS image_path, t.created_at AS created_at, t.updated_at AS updated_at," +
+            " t.remote_id AS remote_id," +
+            " c.name AS category_name, c.icon AS category_icon, c.color AS category_color, c.type AS category_type";
+    
+    private static final String CATEGORY_JOIN = " LEFT JOIN " + FinanceDatabaseHelper.TABLE_CATEGORIES +
+            " c ON c.id = t.category_id";
+    
+    // 查询交易记录并一次带出分类，避免逐行按分类ID查询
+    private static final String SQL_SELECT_DETAIL = "SELECT " + DETAIL_PROJECTION +
+            " FROM " + VIEW_NAME + " t" + CATEGORY_JOIN;
+    
+    // 全文索引是否已包含全部交易，升级后后台回填期间为false，搜索使用LIKE查询
+    private volatile boolean searchIndexReady = true;
+    
+    // 按日汇总表是否已包含全部交易，升级后后台回填期间为false，统计直接读取交易记录
+    private volatile boolean dailyTotalsReady = true;
+    
     public TransactionDao(SQLiteDatabase database) {
         super(database);
     }
     
+    public TransactionDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
+    }
+    
     /**
      * 插入交易记录
      * @param transaction 交易记录对象
@@ -36,41 +163,11 @@ public class TransactionDao extends BaseDao {
      */
     public long insert(Transaction transaction) {
         try {
-            LogUtils.d(TAG, "开始插入交易记录: " + transaction.toString());
-            
-            // 检查数据库连接
-            if (database == null) {
-                LogUtils.e(TAG, "数据库连接为空");
-                return -1;
-            }
-            
-            if (!database.isOpen()) {
-                LogUtils.e(TAG, "数据库连接已关闭");
-                return -1;
-            }
-            
-            ContentValues values = new ContentValues();
-            values.put("user_id", transaction.getUserId());
-            values.put("amount", transaction.getAmount());
-            values.put("type", transaction.getType());
-            values.put("category_id", transaction.getCategoryId());
-            values.put("date", DateUtils.formatDateTime(transaction.getDate()));
-            values.put("description", transaction.getDescription());
-            values.put("note", transaction.getNote());
-            values.put("image_path", transaction.getImagePath());
-            values.put("created_at", transaction.getCreatedAt());
-            values.put("updated_at", transaction.getUpdatedAt());
-            
-            LogUtils.d(TAG, "准备插入数据，ContentValues: " + values.toString());
-            
-            long result = database.insert(TABLE_NAME, null, values);
-            
-            if (result > 0) {
-                LogUtils.d(TAG, "交易记录插入成功，ID: " + result);
-            } else {
+            // 连接为空或已关闭时executeInsert抛出异常，由下面统一处理
+            long result = executeInsert(SQL_INSERT, insertArgs(transaction));
+            if (result <= 0) {
                 LogUtils.e(TAG, "交易记录插入失败，返回值: " + result);
             }
-            
             return result;
         } catch (Exception e) {
             LogUtils.e(TAG, "插入交易记录出错: " + e.getMessage(), e);
@@ -79,22 +176,74 @@ public class TransactionDao extends BaseDao {
     }
     
     /**
-     * 更新交易记录
+     * 批量插入交易记录
+     * 在事务中复用同一条编译语句，大批量数据自动分批提交；单条失败不影响其他记录
+     * @param transactions 交易记录列表
+     * @return 批量写入结果
+     */
+    public BatchResult insertAll(List<Transaction> transactions) {
+        BatchResult result = executeBatchInsert(SQL_INSERT, transactions, TransactionDao::insertArgs);
+        LogUtils.d(TAG, "批量插入交易记录: " + result);
+        return result;
+    }
+    
+    /**
+     * 批量插入或更新交易记录（按服务器ID），用于同步服务器数据
+     * 服务器返回的ID写入remote_id列，已同步过的记录更新，否则插入并分配本地ID
+     * @param transactions 服务器返回的交易记录列表
+     * @return 批量写入结果，行ID为服务器ID（更新分支拿不到本地ID）
+     */
+    public BatchResult upsertAll(List<Transaction> transactions) {
+        BatchResult result = executeBatchInsert(SQL_UPSERT, transactions, transaction -> {
+            Object[] args = insertArgs(transaction);
+            Object[] upsertArgs = new Object[args.length + 1];
+            upsertArgs[0] = transaction.getId() > 0 ? transaction.getId() : null;
+            System.arraycopy(args, 0, upsertArgs, 1, args.length);
+            return upsertArgs;
+        }, Transaction::getId);
+        LogUtils.d(TAG, "批量同步交易记录: " + result);
+        return result;
+    }
+    
+    /**
+     * 插入语句参数，顺序与SQL_INSERT一致
+     */
+    private static Object[] insertArgs(Transaction transaction) {
+        return new Object[]{
+                transaction.getUserId(),
+                transaction.getAmountCents(),
+                transaction.getType(),
+                transaction.getCategoryId(),
+                toMillis(transaction.getDate()),
+                transaction.getDescription(),
+                transaction.getNote(),
+                transaction.getImagePath(),
+                transaction.getCreatedAt(),
+                transaction.getUpdatedAt()
+        };
+    }
+    
+    /**
+     * 更新交易记录，updatedAt设为当前时间
      * @param transaction 交易记录对象
      * @return 是否成功
      */
     public boolean update(Transaction transaction) {
         try {
-            ContentValues values = new ContentValues();
-            values.put("user_id", transaction.getUserId());
-            values.put("amount", transaction.getAmount());
-            values.put("type", transaction.getType());
-            values.put("category_id", transaction.getCategoryId());
-            values.put("date", DateUtils.formatDateTime(transaction.getDate()));
-            values.put("note", transaction.getNote());
-            values.put("image_path", transaction.getImagePath());
-            
-            int rowsAffected = database.update(TABLE_NAME, values, "id = ?", new String[]{String.valueOf(transaction.getId())});
+            // 尚未从旧表复制的记录先复制到新表
+            AmountCentsMigration.TRANSACTIONS.promote(database, transaction.getId());
+            transaction.setUpdatedAt(System.currentTimeMillis());
+            int rowsAffected = executeUpdateDelete(SQL_UPDATE,
+                    transaction.getUserId(),
+                    transaction.getAmountCents(),
+                    transaction.getType(),
+                    transaction.getCategoryId(),
+                    toMillis(transaction.getDate()),
+                    transaction.getDescription(),
+                    transaction.getNote(),
+                    transaction.getImagePath(),
+                    transaction.getUpdatedAt(),
+                    transaction.getId());
             return rowsAffected > 0;
         } catch (Exception e) {
             LogUtils.e("Update transaction error: " + e.getMessage());
@@ -109,7 +258,9 @@ public class TransactionDao extends BaseDao {
      */
     public boolean delete(long transactionId) {
         try {
-            int rowsAffected = database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(transactionId)});
+            // 先删除旧表中尚未复制的行，避免之后被复制回来
+            int rowsAffected = AmountCentsMigration.TRANSACTIONS.deleteLegacy(database, transactionId);
+            rowsAffected += database.delete(TABLE_NAME, "id = ?", new String[]{String.valueOf(transactionId)});
             return rowsAffected > 0;
         } catch (Exception e) {
             LogUtils.e("Delete transaction error: " + e.getMessage());
@@ -118,18 +269,30 @@ public class TransactionDao extends BaseDao {
     }
     
     /**
-     * 根据ID查询交易记录
+     * 按服务器ID删除已同步的本地交易记录
+     * @param remoteId 服务器ID
+     * @return 是否成功
+     */
+    public boolean deleteByRemoteId(long remoteId) {
+        try {
+            int rowsAffected = database.delete(TABLE_NAME, "remote_id = ?", new String[]{String.valueOf(remoteId)});
+            return rowsAffected > 0;
+        } catch (Exception e) {
+            LogUtils.e("Delete transaction by remote id error: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 根据ID查询交易记录，包含分类信息
      * @param transactionId 交易记录ID
      * @return 交易记录对象，不存在返回null
      */
     public Transaction queryById(long transactionId) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?", new String[]{String.valueOf(transactionId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToTransaction(cursor);
-            }
-            return null;
+            cursor = reader().rawQuery(SQL_SELECT_DETAIL + " WHERE t.id = ?", new String[]{String.valueOf(transactionId)});
+            return DETAIL_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query transaction by id error: " + e.getMessage());
             return null;
@@ -139,7 +302,7 @@ public class TransactionDao extends BaseDao {
     }
     
     /**
-     * 查询用户的所有交易记录
+     * 查询用户的所有交易记录，包含分类信息
      * @param userId 用户ID
      * @return 交易记录列表
      */
@@ -147,13 +310,9 @@ public class TransactionDao extends BaseDao {
         List<Transaction> transactions = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ?", new String[]{String.valueOf(userId)}, null, null, "date DESC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Transaction transaction = cursorToTransaction(cursor);
-                    transactions.add(transaction);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().rawQuery(SQL_SELECT_DETAIL + " WHERE t.user_id = ? ORDER BY t.date DESC",
+                    new String[]{String.valueOf(userId)});
+            DETAIL_MAPPER.mapAll(cursor, transactions);
             return transactions;
         } catch (Exception e) {
             LogUtils.e("Query transactions by user id error: " + e.getMessage());
@@ -163,6 +322,150 @@ public class TransactionDao extends BaseDao {
         }
     }
     
+    /**
+     * 按键集分页查询用户的交易记录，按(date DESC, id DESC)排序，包含分类信息
+     * 以上一页最后一条记录的(date, id)作为游标向后查找，由(user_id, date)索引直接定位，
+     * 翻页代价与页码无关，也不会因为新插入的记录导致重复或遗漏
+     * @param userId 用户ID
+     * @param beforeDate 上一页最后一条记录的日期，为null时查询第一页
+     * @param beforeId 上一页最后一条记录的ID
+     * @param limit 每页条数
+     * @return 交易记录列表，条数小于limit表示已无更多数据
+     */
+    public List<Transaction> queryPage(long userId, Date beforeDate, long beforeId, int limit) {
+        List<Transaction> transactions = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            if (beforeDate == null) {
+                cursor = reader().rawQuery(SQL_SELECT_DETAIL + " WHERE t.user_id = ?" +
+                        " ORDER BY " + PAGE_ORDER_BY + " LIMIT " + limit,
+                        new String[]{String.valueOf(userId)});
+            } else {
+                // date <= ? 用于索引范围扫描，OR条件处理同一时间戳的多条记录
+                String beforeMillis = String.valueOf(beforeDate.getTime());
+                cursor = reader().rawQuery(SQL_SELECT_DETAIL + " WHERE t.user_id = ? AND t.date <= ? AND (t.date < ? OR t.id < ?)" +
+                        " ORDER BY " + PAGE_ORDER_BY + " LIMIT " + limit,
+                        new String[]{String.valueOf(userId), beforeMillis, beforeMillis, String.valueOf(beforeId)});
+            }
+            
+            DETAIL_MAPPER.mapAll(cursor, transactions);
+            return transactions;
+        } catch (Exception e) {
+            LogUtils.e("Query transaction page error: " + e.getMessage());
+            return transactions;
+        } finally {
+            closeCursor(cursor);
+        }
+    }
+    
+    /**
+     * 搜索交易记录的描述和备注
+     * 关键词按空白拆分，全部命中才返回（AND）。不少于3个字符的关键词走全文索引（子串匹配，包含前缀匹配），
+     * 结果按相关度排序、相关度相同按日期倒序；只有短关键词时按日期倒序在(user_id, date)索引上过滤，
+     * 取满limit条即停止。全文索引不可用或尚未建立完成时退回到LIKE查询
+     * @param userId 用户ID
+     * @param query 搜索文本
+     * @param limit 最多返回条数
+     * @return 交易记录列表，出错时返回空列表
+     */
+    public List<Transaction> search(long userId, String query, int limit) {
+        List<Transaction> transactions = new ArrayList<>();
+        if (query == null || query.trim().isEmpty()) {
+            return transactions;
+        }
+        String[] terms = query.trim().split("\\s+");
+        
+        Cursor cursor = null;
+        if (searchIndexReady) {
+            try {
+                List<String> args = new ArrayList<>();
+                cursor = reader().rawQuery(buildSearchSql(userId, terms, limit, true, args), args.toArray(new String[0]));
+                DETAIL_MAPPER.mapAll(cursor, transactions);
+                return transactions;
+            } catch (Exception e) {
+                LogUtils.e(TAG, "全文搜索失败，改用LIKE查询：" + e.getMessage(), e);
+            } finally {
+                closeCursor(cursor);
+            }
+            
+            transactions.clear();
+            cursor = null;
+        }
+        try {
+            List<String> args = new ArrayList<>();
+            cursor = reader().rawQuery(buildSearchSql(userId, terms, limit, false, args), args.toArray(new String[0]));
+            DETAIL_MAPPER.mapAll(cursor, transactions);
+            return transactions;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "搜索交易记录失败：" + e.getMessage(), e);
+            return transactions;
+        } finally {
+            closeCursor(cursor);
+        }
+    }
+    
+    /**
+     * 设置全文索引是否可用，后台回填完成前搜索只使用LIKE查询，避免只返回部分结果
+     * @param ready 是否可用
+     */
+    public void setSearchIndexReady(boolean ready) {
+        searchIndexReady = ready;
+    }
+    
+    /**
+     * 设置按日汇总表是否可用，后台回填完成前概览和每日合计直接按交易记录统计，避免只统计部分交易
+     * @param ready 是否可用
+     */
+    public void setDailyTotalsReady(boolean ready) {
+        dailyTotalsReady = ready;
+    }
+    
+    /**
+     * 生成搜索语句
+     * @param userId 用户ID
+     * @param terms 关键词
+     * @param limit 最多返回条数
+     * @param useFts 是否使用全文索引
+     * @param args 输出参数，按占位符顺序追加
+     * @return SQL语句
+     */
+    private String buildSearchSql(long userId, String[] terms, int limit, boolean useFts, List<String> args) {
+        StringBuilder match = new StringBuilder();
+        StringBuilder like = new StringBuilder();
+        List<String> likeArgs = new ArrayList<>();
+        for (String term : terms) {
+            if (useFts && term.codePointCount(0, term.length()) >= FTS_MIN_TERM_LENGTH) {
+                // 双引号包裹为短语，避免关键词中的运算符被FTS5解析
+                if (match.length() > 0) {
+                    match.append(" AND ");
+                }
+                match.append('"').append(term.replace("\"", "\"\"")).append('"');
+            } else {
+                String pattern = "%" + term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+                like.append(" AND (t.description LIKE ? ESCAPE '\\' OR t.note LIKE ? ESCAPE '\\')");
+                likeArgs.add(pattern);
+                likeArgs.add(pattern);
+            }
+        }
+        
+        StringBuilder sql = new StringBuilder("SELECT ").append(DETAIL_PROJECTION);
+        if (match.length() > 0) {
+            sql.append(" FROM ").append(FTS_TABLE).append(" f JOIN ").append(VIEW_NAME).append(" t ON t.id = f.rowid")
+                    .append(CATEGORY_JOIN)
+                    .append(" WHERE ").append(FTS_TABLE).append(" MATCH ? AND t.user_id = ?").append(like)
+                    .append(" ORDER BY f.rank, ").append(PAGE_ORDER_BY);
+            args.add(match.toString());
+        } else {
+            sql.append(" FROM ").append(VIEW_NAME).append(" t").append(CATEGORY_JOIN)
+                    .append(" WHERE t.user_id = ?").append(like)
+                    .append(" ORDER BY ").append(PAGE_ORDER_BY);
+        }
+        sql.append(" LIMIT ").append(limit);
+        args.add(String.valueOf(userId));
+        args.addAll(likeArgs);
+        return sql.toString();
+    }
+    
     /**
      * 查询用户在指定日期范围内的交易记录
      * @param userId 用户ID
@@ -174,18 +477,13 @@ public class TransactionDao extends BaseDao {
         List<Transaction> transactions = new ArrayList<>();
         Cursor cursor = null;
         try {
-            String startDateStr = DateUtils.formatDateTime(startDate);
-            String endDateStr = DateUtils.formatDateTime(endDate);
+            String startMillis = String.valueOf(startDate.getTime());
+            String endMillis = String.valueOf(endDate.getTime());
             
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), startDateStr, endDateStr}, null, null, "date DESC");
+            cursor = reader().query(VIEW_NAME, TRANSACTION_MAPPER.getColumns(), "user_id = ? AND date BETWEEN ? AND ?",
+                    new String[]{String.valueOf(userId), startMillis, endMillis}, null, null, "date DESC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Transaction transaction = cursorToTransaction(cursor);
-                    transactions.add(transaction);
-                } while (cursor.moveToNext());
-            }
+            TRANSACTION_MAPPER.mapAll(cursor, transactions);
             return transactions;
         } catch (Exception e) {
             LogUtils.e("Query transactions by date range error: " + e.getMessage());
@@ -195,6 +493,105 @@ public class TransactionDao extends BaseDao {
         }
     }
     
+    /**
+     * 交易记录访问器，逐行接收完整的交易记录对象
+     */
+    public interface TransactionVisitor {
+        void visit(Transaction transaction);
+    }
+    
+    /**
+     * 金额访问器，逐行接收基本类型字段，不创建交易记录对象
+     */
+    public interface AmountVisitor {
+        /**
+         * @param dateMillis 日期（毫秒时间戳），无日期时为0
+         * @param amountCents 金额（分）
+         * @param type 交易类型
+         * @param categoryId 分类ID，无分类时为0
+         */
+        void visit(long dateMillis, long amountCents, int type, long categoryId);
+    }
+    
+    /**
+     * 按日期升序遍历用户在指定日期范围内的交易记录
+     * 逐行映射后交给访问器，不生成完整列表，内存占用与记录条数无关，适合导出、统计等只需要遍历一次的场景
+     * @param userId 用户ID
+     * @param startDate 开始日期，为null表示不限
+     * @param endDate 结束日期，为null表示不限
+     * @param visitor 访问器，在调用线程上执行
+     * @return 遍历的记录条数，出错时返回已遍历的条数
+     */
+    public int forEach(long userId, Date startDate, Date endDate, TransactionVisitor visitor) {
+        int count = 0;
+        Cursor cursor = null;
+        try {
+            cursor = queryRange(TRANSACTION_MAPPER.getColumns(), userId, startDate, endDate);
+            int[] index = TRANSACTION_MAPPER.resolve(cursor);
+            while (cursor.moveToNext()) {
+                visitor.visit(TRANSACTION_MAPPER.map(cursor, index));
+                count++;
+            }
+            return count;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "遍历交易记录失败：" + e.getMessage(), e);
+            return count;
+        } finally {
+            closeCursor(cursor);
+        }
+    }
+    
+    /**
+     * 按日期升序遍历用户在指定日期范围内交易记录的日期、金额、类型和分类
+     * 只查询这四列并以基本类型传给访问器，不创建任何对象，用于图表数据准备和本地统计
+     * @param userId 用户ID
+     * @param startDate 开始日期，为null表示不限
+     * @param endDate 结束日期，为null表示不限
+     * @param visitor 访问器，在调用线程上执行
+     * @return 遍历的记录条数，出错时返回已遍历的条数
+     */
+    public int forEachAmount(long userId, Date startDate, Date endDate, AmountVisitor visitor) {
+        int count = 0;
+        Cursor cursor = null;
+        try {
+            cursor = queryRange(new String[]{"date", "amount_cents", "type", "category_id"}, userId, startDate, endDate);
+            while (cursor.moveToNext()) {
+                visitor.visit(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2), cursor.getLong(3));
+                count++;
+            }
+            return count;
+        } catch (Exception e) {
+            LogUtils.e(TAG, "遍历交易金额失败：" + e.getMessage(), e);
+            return count;
+        } finally {
+            closeCursor(cursor);
+        }
+    }
+    
+    /**
+     * 按日期升序查询用户在日期范围内的记录，使用(user_id, date)索引
+     * @param columns 查询的列
+     * @param userId 用户ID
+     * @param startDate 开始日期，为null表示不限
+     * @param endDate 结束日期，为null表示不限
+     * @return 游标
+     */
+    private Cursor queryRange(String[] columns, long userId, Date startDate, Date endDate) {
+        StringBuilder selection = new StringBuilder("user_id = ?");
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(userId));
+        if (startDate != null) {
+            selection.append(" AND date >= ?");
+            args.add(String.valueOf(startDate.getTime()));
+        }
+        if (endDate != null) {
+            selection.append(" AND date <= ?");
+            args.add(String.valueOf(endDate.getTime()));
+        }
+        return reader().query(VIEW_NAME, columns, selection.toString(), args.toArray(new String[0]),
+                null, null, "date ASC, id ASC");
+    }
+    
     /**
      * 查询用户在指定月份的交易记录
      * @param userId 用户ID
@@ -229,15 +626,10 @@ public class TransactionDao extends BaseDao {
         List<Transaction> transactions = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND category_id = ?",
+            cursor = reader().query(VIEW_NAME, TRANSACTION_MAPPER.getColumns(), "user_id = ? AND category_id = ?",
                     new String[]{String.valueOf(userId), String.valueOf(categoryId)}, null, null, "date DESC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Transaction transaction = cursorToTransaction(cursor);
-                    transactions.add(transaction);
-                } while (cursor.moveToNext());
-            }
+            TRANSACTION_MAPPER.mapAll(cursor, transactions);
             return transactions;
         } catch (Exception e) {
             LogUtils.e("Query transactions by category error: " + e.getMessage());
@@ -257,15 +649,10 @@ public class TransactionDao extends BaseDao {
         List<Transaction> transactions = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "user_id = ? AND type = ?",
+            cursor = reader().query(VIEW_NAME, TRANSACTION_MAPPER.getColumns(), "user_id = ? AND type = ?",
                     new String[]{String.valueOf(userId), String.valueOf(type)}, null, null, "date DESC");
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Transaction transaction = cursorToTransaction(cursor);
-                    transactions.add(transaction);
-                } while (cursor.moveToNext());
-            }
+            TRANSACTION_MAPPER.mapAll(cursor, transactions);
             return transactions;
         } catch (Exception e) {
             LogUtils.e("Query transactions by type error: " + e.getMessage());
@@ -280,27 +667,15 @@ public class TransactionDao extends BaseDao {
      * @param userId 用户ID
      * @param startDate 开始日期
      * @param endDate 结束日期
-     * @return 收入总额
+     * @return 收入总额（分）
      */
-    public double sumIncomeByDateRange(long userId, Date startDate, Date endDate) {
-        Cursor cursor = null;
+    public long sumIncomeByDateRange(long userId, Date startDate, Date endDate) {
         try {
-            String startDateStr = DateUtils.formatDateTime(startDate);
-            String endDateStr = DateUtils.formatDateTime(endDate);
-            
-            cursor = database.rawQuery("SELECT SUM(amount) FROM " + TABLE_NAME +
-                    " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_INCOME), startDateStr, endDateStr});
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getDouble(0);
-            }
-            return 0;
+            return simpleQueryForLong(SQL_SUM_BY_TYPE_AND_DATE_RANGE,
+                    userId, Transaction.TYPE_INCOME, startDate.getTime(), endDate.getTime());
         } catch (Exception e) {
             LogUtils.e("Sum income by date range error: " + e.getMessage());
             return 0;
-        } finally {
-            closeCursor(cursor);
         }
     }
     
@@ -309,27 +684,15 @@ public class TransactionDao extends BaseDao {
      * @param userId 用户ID
      * @param startDate 开始日期
      * @param endDate 结束日期
-     * @return 支出总额
+     * @return 支出总额（分）
      */
-    public double sumExpenseByDateRange(long userId, Date startDate, Date endDate) {
-        Cursor cursor = null;
+    public long sumExpenseByDateRange(long userId, Date startDate, Date endDate) {
         try {
-            String startDateStr = DateUtils.formatDateTime(startDate);
-            String endDateStr = DateUtils.formatDateTime(endDate);
-            
-            cursor = database.rawQuery("SELECT SUM(amount) FROM " + TABLE_NAME +
-                    " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_EXPENSE), startDateStr, endDateStr});
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getDouble(0);
-            }
-            return 0;
+            return simpleQueryForLong(SQL_SUM_BY_TYPE_AND_DATE_RANGE,
+                    userId, Transaction.TYPE_EXPENSE, startDate.getTime(), endDate.getTime());
         } catch (Exception e) {
             LogUtils.e("Sum expense by date range error: " + e.getMessage());
             return 0;
-        } finally {
-            closeCursor(cursor);
         }
     }
     
@@ -339,20 +702,20 @@ public class TransactionDao extends BaseDao {
      * @param categoryId 分类ID
      * @param startDate 开始日期
      * @param endDate 结束日期
-     * @return 分类支出总额
+     * @return 分类支出总额（分）
      */
-    public double sumExpenseByCategoryAndDateRange(long userId, long categoryId, Date startDate, Date endDate) {
+    public long sumExpenseByCategoryAndDateRange(long userId, long categoryId, Date startDate, Date endDate) {
         Cursor cursor = null;
         try {
-            String startDateStr = DateUtils.formatDateTime(startDate);
-            String endDateStr = DateUtils.formatDateTime(endDate);
+            String startMillis = String.valueOf(startDate.getTime());
+            String endMillis = String.valueOf(endDate.getTime());
             
-            cursor = database.rawQuery("SELECT SUM(amount) FROM " + TABLE_NAME +
+            cursor = reader().rawQuery("SELECT SUM(amount_cents) FROM " + VIEW_NAME +
                     " WHERE user_id = ? AND type = ? AND category_id = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_EXPENSE), String.valueOf(categoryId), startDateStr, endDateStr});
+                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_EXPENSE), String.valueOf(categoryId), startMillis, endMillis});
             
             if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getDouble(0);
+                return cursor.getLong(0);
             }
             return 0;
         } catch (Exception e) {
@@ -364,117 +727,99 @@ public class TransactionDao extends BaseDao {
     }
     
     /**
-     * 查询收入总额
-     *
+     * 一次查询统计用户在指定日期范围内的收支概览
+     * 读取按日汇总表并按(type, category_id)分组，同时得到收入、支出、转账的合计和笔数以及支出分类明细，
+     * 代价与范围内的天数相关，与交易笔数无关；汇总表回填完成前直接按交易记录分组
      * @param userId 用户ID
-     * @param startDate 开始日期
-     * @param endDate 结束日期
-     * @return 收入总额
+     * @param startDate 开始日期（按整天统计）
+     * @param endDate 结束日期（按整天统计）
+     * @return 概览聚合结果，出错时返回空结果
      */
-    public double queryIncomeSum(long userId, Date startDate, Date endDate) {
-        String startDateStr = DateUtils.formatDate(startDate);
-        String endDateStr = DateUtils.formatDate(endDate);
+    public OverviewAggregate queryOverview(long userId, Date startDate, Date endDate) {
+        OverviewAggregate aggregate = new OverviewAggregate();
         Cursor cursor = null;
         try {
-            cursor = database.rawQuery("SELECT SUM(amount) FROM " + TABLE_NAME +
-                    " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_INCOME), startDateStr, endDateStr});
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getDouble(0);
+            cursor = reader().rawQuery(dailyTotalsReady ? SQL_OVERVIEW : SQL_OVERVIEW_FROM_TRANSACTIONS, new String[]{
+                    String.valueOf(userId), String.valueOf(startDate.getTime()), String.valueOf(endDate.getTime())});
+            while (cursor.moveToNext()) {
+                long categoryId = cursor.isNull(1) ? 0 : cursor.getLong(1);
+                aggregate.add(cursor.getInt(0), categoryId, cursor.getInt(2), cursor.getLong(3));
             }
+            return aggregate;
         } catch (Exception e) {
-            LogUtils.e("查询收入总额失败：" + e.getMessage());
+            LogUtils.e(TAG, "查询收支概览失败：" + e.getMessage(), e);
+            return aggregate;
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            closeCursor(cursor);
         }
-        return 0;
     }
-
+    
     /**
-     * 查询支出总额
+     * 查询每日支出
      *
      * @param userId 用户ID
      * @param startDate 开始日期
      * @param endDate 结束日期
-     * @return 支出总额
+     * @return 每日支出列表（日期，金额Money）
      */
-    public double queryExpenseSum(long userId, Date startDate, Date endDate) {
-        String startDateStr = DateUtils.formatDate(startDate);
-        String endDateStr = DateUtils.formatDate(endDate);
-        Cursor cursor = null;
-        try {
-            cursor = database.rawQuery("SELECT SUM(amount) FROM " + TABLE_NAME +
-                    " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ?",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_EXPENSE), startDateStr, endDateStr});
-            
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getDouble(0);
-            }
-        } catch (Exception e) {
-            LogUtils.e("查询支出总额失败：" + e.getMessage());
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-        }
-        return 0;
+    public List<Object[]> queryDailyExpense(long userId, Date startDate, Date endDate) {
+        return queryDailyTotals(userId, Transaction.TYPE_EXPENSE, startDate, endDate);
     }
     
     /**
-     * 查询每日支出
+     * 从按日汇总表查询指定类型的每日合计，汇总表回填完成前直接按交易记录分组
      *
      * @param userId 用户ID
-     * @param startDate 开始日期
-     * @param endDate 结束日期
-     * @return 每日支出列表（日期，金额）
+     * @param type 交易类型
+     * @param startDate 开始日期（按整天统计）
+     * @param endDate 结束日期（按整天统计）
+     * @return 每日合计列表（日期，金额Money），按日期升序，没有交易的日期不返回
      */
-    public List<Object[]> queryDailyExpense(long userId, Date startDate, Date endDate) {
-        String startDateStr = DateUtils.formatDate(startDate);
-        String endDateStr = DateUtils.formatDate(endDate);
+    public List<Object[]> queryDailyTotals(long userId, int type, Date startDate, Date endDate) {
+        String startMillis = String.valueOf(startDate.getTime());
+        String endMillis = String.valueOf(endDate.getTime());
         Cursor cursor = null;
         List<Object[]> result = new ArrayList<>();
-        
+
         try {
-            LogUtils.d(TAG, "查询每日支出 - userId: " + userId + ", 开始日期: " + startDateStr + ", 结束日期: " + endDateStr);
-            
-            cursor = database.rawQuery(
-                    "SELECT date, SUM(amount) FROM " + TABLE_NAME +
-                            " WHERE user_id = ? AND type = ? AND date BETWEEN ? AND ? " +
-                            "GROUP BY date ORDER BY date ASC",
-                    new String[]{String.valueOf(userId), String.valueOf(Transaction.TYPE_EXPENSE), startDateStr, endDateStr});
+            LogUtils.d(TAG, "查询每日合计 - userId: " + userId + ", 类型: " + type + ", 开始时间: " + startMillis + ", 结束时间: " + endMillis);
+
+            cursor = reader().rawQuery(dailyTotalsReady ? SQL_DAILY_TOTALS_BY_TYPE : SQL_DAILY_TOTALS_FROM_TRANSACTIONS,
+                    new String[]{String.valueOf(userId), String.valueOf(type), startMillis, endMillis});
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    String dateStr = cursor.getString(0);
-                    double amount = cursor.getDouble(1);
-                    Date date = DateUtils.parseDate(dateStr);
-                    
-                    LogUtils.d(TAG, "每日支出数据 - 日期: " + dateStr + ", 金额: " + amount);
-                    
-                    // 确保date非空
-                    if (date != null) {
-                        Object[] item = new Object[]{date, amount};
-                        result.add(item);
-                    } else {
-                        LogUtils.e(TAG, "解析日期失败: " + dateStr);
-                    }
-                } while (cursor.moveToNext());
+            while (cursor.moveToNext()) {
+                String dateStr = cursor.getString(0);
+                Date date = DateUtils.parseDate(dateStr);
+                
+                // 确保date非空
+                if (date != null) {
+                    result.add(new Object[]{date, Money.ofCents(cursor.getLong(1))});
+                } else {
+                    LogUtils.e(TAG, "解析日期失败: " + dateStr);
+                }
             }
             
             LogUtils.d(TAG, "查询结果: 共 " + result.size() + " 条数据");
         } catch (Exception e) {
-            LogUtils.e(TAG, "查询每日支出失败：" + e.getMessage(), e);
+            LogUtils.e(TAG, "查询每日合计失败：" + e.getMessage(), e);
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            closeCursor(cursor);
         }
         return result;
     }
     
+    /**
+     * 根据交易记录重新生成按日汇总表
+     * 汇总表平时由触发器维护；在数据修复或系统时区变化（本地日期归属改变）后调用
+     *
+     * @return 是否成功
+     */
+    public boolean rebuildDailyTotals() {
+        boolean success = executeTransaction(() -> FinanceDatabaseHelper.rebuildDailyTotals(database));
+        LogUtils.d(TAG, "重建按日汇总表: " + (success ? "成功" : "失败"));
+        return success;
+    }
+    
     /**
      * 查询用户最近的交易记录
      *
@@ -487,23 +832,12 @@ public class TransactionDao extends BaseDao {
         List<Transaction> transactions = new ArrayList<>();
         
         try {
-            cursor = database.query(
-                    TABLE_NAME,
-                    null,
-                    "user_id = ?",
-                    new String[]{String.valueOf(userId)},
-                    null,
-                    null,
-                    "date DESC",
-                    String.valueOf(limit)
+            cursor = reader().rawQuery(
+                    SQL_SELECT_DETAIL + " WHERE t.user_id = ? ORDER BY t.date DESC LIMIT " + limit,
+                    new String[]{String.valueOf(userId)}
             );
             
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    Transaction transaction = cursorToTransaction(cursor);
-                    transactions.add(transaction);
-                } while (cursor.moveToNext());
-            }
+            DETAIL_MAPPER.mapAll(cursor, transactions);
         } catch (Exception e) {
             LogUtils.e("查询最近交易记录失败：" + e.getMessage());
         } finally {
@@ -515,30 +849,29 @@ public class TransactionDao extends BaseDao {
     }
     
     /**
-     * 将游标转换为交易对象
-     *
-     * @param cursor 游标
-     * @return 交易对象
-     */
-    private Transaction cursorToTransaction(Cursor cursor) {
-        Transaction transaction = new Transaction();
-        transaction.setId(cursor.getLong(cursor.getColumnIndex("id")));
-        transaction.setUserId(cursor.getLong(cursor.getColumnIndex("user_id")));
-        transaction.setCategoryId(cursor.getLong(cursor.getColumnIndex("category_id")));
-        transaction.setType(cursor.getInt(cursor.getColumnIndex("type")));
-        transaction.setAmount(cursor.getDouble(cursor.getColumnIndex("amount")));
-        
-        String dateStr = cursor.getString(cursor.getColumnIndex("date"));
-        if (dateStr != null) {
-            transaction.setDate(DateUtils.parseDate(dateStr));
-        }
-        
-        transaction.setDescription(cursor.getString(cursor.getColumnIndex("description")));
-        transaction.setNote(cursor.getString(cursor.getColumnIndex("note")));
-        transaction.setImagePath(cursor.getString(cursor.getColumnIndex("image_path")));
-        transaction.setCreatedAt(cursor.getLong(cursor.getColumnIndex("created_at")));
-        transaction.setUpdatedAt(cursor.getLong(cursor.getColumnIndex("updated_at")));
-        
-        return transaction;
+     * 交易记录映射器，供映射性能测试使用
+     * @return 交易记录映射器
+     */
+    static RowMapper<Transaction> getTransactionMapper() {
+        return TRANSACTION_MAPPER;
+    }
+    
+    /**
+     * 热点查询的语句结构，供查询计划测试（EXPLAIN QUERY PLAN）检查是否命中索引
+     * @return {查询名称, SQL}数组
+     */
+    static String[][] getHotQueries() {
+        return new String[][]{
+                {"queryByUserId", SQL_SELECT_DETAIL + " WHERE t.user_id = ? ORDER BY t.date DESC"},
+                {"queryPage", SQL_SELECT_DETAIL + " WHERE t.user_id = ? AND t.date <= ? AND (t.date < ? OR t.id < ?) ORDER BY " + PAGE_ORDER_BY + " LIMIT 20"},
+                {"queryByDateRange", "SELECT " + TRANSACTION_MAPPER.getColumnList() + " FROM " + VIEW_NAME + " WHERE user_id = ? AND date BETWEEN ? AND ? ORDER BY date DESC"},
+                {"queryByCategory", "SELECT " + TRANSACTION_MAPPER.getColumnList() + " FROM " + VIEW_NAME + " WHERE user_id = ? AND category_id = ? ORDER BY date DESC"},
+                {"queryByType", "SELECT " + TRANSACTION_MAPPER.getColumnList() + " FROM " + VIEW_NAME + " WHERE user_id = ? AND type = ? ORDER BY date DESC"},
+                {"sumByTypeAndDateRange", SQL_SUM_BY_TYPE_AND_DATE_RANGE},
+                {"sumExpenseByCategoryAndDateRange", "SELECT SUM(amount_cents) FROM " + VIEW_NAME + " WHERE user_id = ? AND type = ? AND category_id = ? AND date BETWEEN ? AND ?"},
+                {"queryOverview", SQL_OVERVIEW},
+                {"queryDailyTotals", SQL_DAILY_TOTALS_BY_TYPE},
+                {"queryRecentByUserId", SQL_SELECT_DETAIL + " WHERE t.user_id = ? ORDER BY t.date DESC LIMIT 10"}
+        };
     }
 } 
\ No newline at end of file
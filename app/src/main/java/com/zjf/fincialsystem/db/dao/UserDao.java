@@ -6,6 +6,7 @@ import com.blankj.utilcode.util.LogUtils;
 import com.zjf.fincialsystem.model.User;
 import com.zjf.fincialsystem.utils.DateUtils;
 import com.zjf.fincialsystem.db.FinanceDatabaseHelper;
+import com.zjf.fincialsystem.db.ReaderPool;
 
 import net.sqlcipher.Cursor;
 import net.sqlcipher.database.SQLiteDatabase;
@@ -23,10 +24,40 @@ public class UserDao extends BaseDao {
     
     private static final String TABLE_NAME = FinanceDatabaseHelper.TABLE_USERS;
     
+    // 用户映射器，列顺序与map中的索引一致
+    private static final RowMapper<User> USER_MAPPER = new RowMapper<User>(
+            "id", "username", "phone", "email", "password", "role", "created_at", "updated_at",
+            "last_login_time", "failed_attempts", "locked_until") {
+        @Override
+        protected User map(Cursor cursor, int[] index) {
+            User user = new User();
+            user.setId(cursor.getLong(index[0]));
+            user.setUsername(cursor.getString(index[1]));
+            user.setPhone(cursor.getString(index[2]));
+            user.setEmail(cursor.getString(index[3]));
+            user.setPassword(cursor.getString(index[4]));
+            user.setRole(cursor.getString(index[5]));
+            user.setCreatedAt(cursor.getLong(index[6]));
+            user.setUpdatedAt(cursor.getLong(index[7]));
+            if (!cursor.isNull(index[8])) {
+                user.setLastLoginTime(DateUtils.parseDateTime(cursor.getString(index[8])));
+            }
+            user.setFailedAttempts(cursor.getInt(index[9]));
+            if (!cursor.isNull(index[10])) {
+                user.setLockedUntil(DateUtils.parseDateTime(cursor.getString(index[10])));
+            }
+            return user;
+        }
+    };
+    
     public UserDao(SQLiteDatabase database) {
         super(database);
     }
     
+    public UserDao(SQLiteDatabase database, ReaderPool readers) {
+        super(database, readers);
+    }
+    
     /**
      * 插入用户
      * @param user 用户对象
@@ -134,11 +165,8 @@ public class UserDao extends BaseDao {
     public User queryById(long userId) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "id = ?", new String[]{String.valueOf(userId)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToUser(cursor);
-            }
-            return null;
+            cursor = reader().query(TABLE_NAME, USER_MAPPER.getColumns(), "id = ?", new String[]{String.valueOf(userId)}, null, null, null);
+            return USER_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query user by id error: " + e.getMessage());
             return null;
@@ -155,11 +183,8 @@ public class UserDao extends BaseDao {
     public User queryByUsername(String username) {
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "username = ?", new String[]{username}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursorToUser(cursor);
-            }
-            return null;
+            cursor = reader().query(TABLE_NAME, USER_MAPPER.getColumns(), "username = ?", new String[]{username}, null, null, null);
+            return USER_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query user by username error: " + e.getMessage());
             return null;
@@ -177,10 +202,8 @@ public class UserDao extends BaseDao {
         User user = null;
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "phone = ?", new String[]{phone}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                user = cursorToUser(cursor);
-            }
+            cursor = reader().query(TABLE_NAME, USER_MAPPER.getColumns(), "phone = ?", new String[]{phone}, null, null, null);
+            user = USER_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query user by phone error: " + e.getMessage());
         } finally {
@@ -200,10 +223,8 @@ public class UserDao extends BaseDao {
         User user = null;
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, "email = ?", new String[]{email}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                user = cursorToUser(cursor);
-            }
+            cursor = reader().query(TABLE_NAME, USER_MAPPER.getColumns(), "email = ?", new String[]{email}, null, null, null);
+            user = USER_MAPPER.mapFirst(cursor);
         } catch (Exception e) {
             LogUtils.e("Query user by email error: " + e.getMessage());
         } finally {
@@ -222,13 +243,8 @@ public class UserDao extends BaseDao {
         List<User> users = new ArrayList<>();
         Cursor cursor = null;
         try {
-            cursor = database.query(TABLE_NAME, null, null, null, null, null, "id ASC");
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    User user = cursorToUser(cursor);
-                    users.add(user);
-                } while (cursor.moveToNext());
-            }
+            cursor = reader().query(TABLE_NAME, USER_MAPPER.getColumns(), null, null, null, null, "id ASC");
+            USER_MAPPER.mapAll(cursor, users);
             return users;
         } catch (Exception e) {
             LogUtils.e("Query all users error: " + e.getMessage());
@@ -307,70 +323,4 @@ public class UserDao extends BaseDao {
             return false;
         }
     }
-    
-    /**
-     * 将游标数据转换为用户对象
-     * @param cursor 游标
-     * @return 用户对象
-     */
-    private User cursorToUser(Cursor cursor) {
-        User user = new User();
-        
-        int idIndex = cursor.getColumnIndex("id");
-        if (idIndex != -1) {
-            user.setId(cursor.getLong(idIndex));
-        }
-        
-        int usernameIndex = cursor.getColumnIndex("username");
-        if (usernameIndex != -1) {
-            user.setUsername(cursor.getString(usernameIndex));
-        }
-        
-        int phoneIndex = cursor.getColumnIndex("phone");
-        if (phoneIndex != -1) {
-            user.setPhone(cursor.getString(phoneIndex));
-        }
-        
-        int emailIndex = cursor.getColumnIndex("email");
-        if (emailIndex != -1) {
-            user.setEmail(cursor.getString(emailIndex));
-        }
-        
-        int passwordIndex = cursor.getColumnIndex("password");
-        if (passwordIndex != -1) {
-            user.setPassword(cursor.getString(passwordIndex));
-        }
-        
-        int roleIndex = cursor.getColumnIndex("role");
-        if (roleIndex != -1) {
-            user.setRole(cursor.getString(roleIndex));
-        }
-        
-        int createdAtIndex = cursor.getColumnIndex("created_at");
-        if (createdAtIndex != -1) {
-            user.setCreatedAt(cursor.getLong(createdAtIndex));
-        }
-        
-        int updatedAtIndex = cursor.getColumnIndex("updated_at");
-        if (updatedAtIndex != -1) {
-            user.setUpdatedAt(cursor.getLong(updatedAtIndex));
-        }
-        
-        int lastLoginTimeIndex = cursor.getColumnIndex("last_login_time");
-        if (lastLoginTimeIndex != -1 && !cursor.isNull(lastLoginTimeIndex)) {
-            user.setLastLoginTime(DateUtils.parseDateTime(cursor.getString(lastLoginTimeIndex)));
-        }
-        
-        int failedAttemptsIndex = cursor.getColumnIndex("failed_attempts");
-        if (failedAttemptsIndex != -1) {
-            user.setFailedAttempts(cursor.getInt(failedAttemptsIndex));
-        }
-        
-        int lockedUntilIndex = cursor.getColumnIndex("locked_until");
-        if (lockedUntilIndex != -1 && !cursor.isNull(lockedUntilIndex)) {
-            user.setLockedUntil(DateUtils.parseDateTime(cursor.getString(lockedUntilIndex)));
-        }
-        
-        return user;
-    }
 } 
\ No newline at end of file
@@ -16,7 +16,7 @@ public class Budget implements Serializable {
     private long id;
     private long userId;
     private long categoryId;
-    private double amount;
+    private Money amount = Money.ZERO; // 预算金额（分）
     private String period;
     private Date startDate;
     private Date endDate;
@@ -25,8 +25,8 @@ public class Budget implements Serializable {
     
     // 非数据库字段，用于UI显示
     private Category category;
-    private double usedAmount;
-    private double remainingAmount;
+    private Money usedAmount = Money.ZERO;
+    private Money remainingAmount = Money.ZERO;
     private double usedPercent;
     
     public Budget() {
@@ -36,7 +36,7 @@ public class Budget implements Serializable {
     public Budget(long userId, long categoryId, double amount, String period) {
         this.userId = userId;
         this.categoryId = categoryId;
-        this.amount = amount;
+        this.amount = Money.of(amount);
         this.period = period;
         this.notifyPercent = 80;
         this.notifyEnabled = true;
@@ -66,12 +66,27 @@ public class Budget implements Serializable {
         this.categoryId = categoryId;
     }
     
+    /**
+     * 获取预算金额（元），仅用于界面显示
+     */
     public double getAmount() {
-        return amount;
+        return amount.toDouble();
     }
     
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amount = Money.of(amount);
+    }
+    
+    public Money getMoney() {
+        return amount;
+    }
+    
+    public void setMoney(Money amount) {
+        this.amount = amount != null ? amount : Money.ZERO;
+    }
+    
+    public long getAmountCents() {
+        return amount.getCents();
     }
     
     public String getPeriod() {
@@ -123,16 +138,24 @@ public class Budget implements Serializable {
     }
     
     public double getUsedAmount() {
-        return usedAmount;
+        return usedAmount.toDouble();
     }
     
     public void setUsedAmount(double usedAmount) {
-        this.usedAmount = usedAmount;
+        setUsedMoney(Money.of(usedAmount));
+    }
+    
+    public Money getUsedMoney() {
+        return usedAmount;
+    }
+    
+    public void setUsedMoney(Money usedAmount) {
+        this.usedAmount = usedAmount != null ? usedAmount : Money.ZERO;
         calculateRemainingAndPercent();
     }
     
     public double getRemainingAmount() {
-        return remainingAmount;
+        return remainingAmount.toDouble();
     }
     
     public double getUsedPercent() {
@@ -143,8 +166,10 @@ public class Budget implements Serializable {
      * 计算剩余金额和使用百分比
      */
     private void calculateRemainingAndPercent() {
-        this.remainingAmount = this.amount - this.usedAmount;
-        this.usedPercent = (this.usedAmount / this.amount) * 100;
+        this.remainingAmount = this.amount.minus(this.usedAmount);
+        this.usedPercent = this.amount.isPositive()
+                ? this.usedAmount.getCents() * 100.0 / this.amount.getCents()
+                : 0;
     }
     
     /**
@@ -165,7 +190,7 @@ public class Budget implements Serializable {
      * 判断是否超出预算
      */
     public boolean isOverBudget() {
-        return usedAmount > amount;
+        return usedAmount.compareTo(amount) > 0;
     }
     
     /**
@@ -187,9 +212,9 @@ public class Budget implements Serializable {
      * @return 使用百分比
      */
     public int getUsedPercentage() {
-        if (amount <= 0) {
+        if (!amount.isPositive()) {
             return 0;
         }
-        return (int) (usedAmount * 100 / amount);
+        return (int) (usedAmount.getCents() * 100 / amount.getCents());
     }
 } 
\ No newline at end of file
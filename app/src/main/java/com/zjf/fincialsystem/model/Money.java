@@ -0,0 +1,114 @@
+package com.zjf.fincialsystem.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 金额模型类
+ * 以"分"为单位的定点数表示，避免double累加产生的精度误差
+ */
+public final class Money implements Serializable, Comparable<Money> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * 根据分创建金额
+     * @param cents 金额（分）
+     * @return 金额对象
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * 根据元创建金额，按四舍五入保留两位小数
+     * @param amount 金额（元）
+     * @return 金额对象
+     */
+    public static Money of(double amount) {
+        return ofCents(toCents(amount));
+    }
+
+    /**
+     * 根据十进制数创建金额，按四舍五入保留两位小数
+     * @param amount 金额（元）
+     * @return 金额对象
+     */
+    public static Money of(BigDecimal amount) {
+        return ofCents(amount.setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact());
+    }
+
+    /**
+     * 将元转换为分
+     * @param amount 金额（元）
+     * @return 金额（分）
+     */
+    public static long toCents(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    /**
+     * 转换为元，仅用于界面显示和图表
+     */
+    public double toDouble() {
+        return cents / 100.0;
+    }
+
+    /**
+     * 转换为十进制数（元）
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public Money plus(Money other) {
+        return ofCents(cents + other.cents);
+    }
+
+    public Money minus(Money other) {
+        return ofCents(cents - other.cents);
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        return cents == ((Money) o).cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
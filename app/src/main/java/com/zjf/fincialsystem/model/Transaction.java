@@ -16,10 +16,11 @@ public class Transaction implements Serializable {
     public static final int TYPE_TRANSFER = 3; // 转账
     
     private long id;
+    private long remoteId; // 本地数据库中对应的服务器ID，未同步为0
     private long userId;
     private long categoryId;
     private int type;
-    private double amount;
+    private Money amount = Money.ZERO; // 金额（分）
     private Date date;
     private String description;
     private String note; // 备注
@@ -39,7 +40,7 @@ public class Transaction implements Serializable {
         this.userId = userId;
         this.categoryId = categoryId;
         this.type = type;
-        this.amount = amount;
+        this.amount = Money.of(amount);
         this.date = date;
         this.description = description;
         this.createdAt = System.currentTimeMillis();
@@ -54,6 +55,14 @@ public class Transaction implements Serializable {
         this.id = id;
     }
     
+    public long getRemoteId() {
+        return remoteId;
+    }
+    
+    public void setRemoteId(long remoteId) {
+        this.remoteId = remoteId;
+    }
+    
     public long getUserId() {
         return userId;
     }
@@ -78,12 +87,27 @@ public class Transaction implements Serializable {
         this.type = type;
     }
     
+    /**
+     * 获取金额（元），仅用于界面显示
+     */
     public double getAmount() {
-        return amount;
+        return amount.toDouble();
     }
     
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amount = Money.of(amount);
+    }
+    
+    public Money getMoney() {
+        return amount;
+    }
+    
+    public void setMoney(Money amount) {
+        this.amount = amount != null ? amount : Money.ZERO;
+    }
+    
+    public long getAmountCents() {
+        return amount.getCents();
     }
     
     public Date getDate() {
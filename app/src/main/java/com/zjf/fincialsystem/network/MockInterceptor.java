@@ -5,7 +5,6 @@ import android.text.TextUtils;
 
 import com.blankj.utilcode.util.LogUtils;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.zjf.fincialsystem.db.DatabaseManager;
 import com.zjf.fincialsystem.model.Budget;
 import com.zjf.fincialsystem.model.Category;
@@ -48,10 +47,8 @@ public class MockInterceptor implements Interceptor {
 
     private static final String TAG = "MockInterceptor";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    private final Gson gson = new GsonBuilder()
-            .setDateFormat("MMM d, yyyy HH:mm:ss")
-            .setLenient()
-            .create();
+    // 与NetworkManager使用同一配置，金额按十进制数收发
+    private final Gson gson = NetworkManager.createGson();
 
     @Override
     public Response intercept(Chain chain) throws IOException {
@@ -0,0 +1,42 @@
+package com.zjf.fincialsystem.network;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.zjf.fincialsystem.model.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * 金额Gson适配器
+ * 接口和缓存中的金额仍使用"元"为单位的十进制数，内存中使用{@link Money}（分）
+ */
+public class MoneyTypeAdapter extends TypeAdapter<Money> {
+
+    @Override
+    public void write(JsonWriter out, Money value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(value.toBigDecimal());
+    }
+
+    @Override
+    public Money read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        // 数字和字符串都按十进制解析，不经过double
+        String text = in.nextString().replace(",", "").trim();
+        if (text.isEmpty()) {
+            return Money.ZERO;
+        }
+        return Money.of(new BigDecimal(text));
+    }
+}
@@ -4,6 +4,7 @@ import com.blankj.utilcode.util.LogUtils;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.zjf.fincialsystem.BuildConfig;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.network.api.BudgetApiService;
 import com.zjf.fincialsystem.network.api.CategoryApiService;
 import com.zjf.fincialsystem.network.api.StatisticsApiService;
@@ -40,11 +41,7 @@ public class NetworkManager {
     private StatisticsApiService statisticsApiService;
     
     private NetworkManager() {
-        // 创建日期格式适配器，支持"Mar 9, 2025 21:47:00"格式
-        Gson gson = new GsonBuilder()
-                .setDateFormat("MMM d, yyyy HH:mm:ss")
-                .setLenient() // 增加宽松解析
-                .create();
+        Gson gson = createGson();
         
         // 创建OkHttpClient
         okHttpClient = createOkHttpClient();
@@ -57,6 +54,18 @@ public class NetworkManager {
                 .build();
     }
     
+    /**
+     * 创建接口数据使用的Gson，模拟拦截器也使用同一配置，保证两端格式一致
+     */
+    static Gson createGson() {
+        // 创建日期格式适配器，支持"Mar 9, 2025 21:47:00"格式
+        return new GsonBuilder()
+                .setDateFormat("MMM d, yyyy HH:mm:ss")
+                .registerTypeAdapter(Money.class, new MoneyTypeAdapter()) // 金额按十进制数收发
+                .setLenient() // 增加宽松解析
+                .create();
+    }
+    
     /**
      * 获取单例实例
      */
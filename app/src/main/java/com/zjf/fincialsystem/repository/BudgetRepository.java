@@ -1,8 +1,12 @@
 package com.zjf.fincialsystem.repository;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.zjf.fincialsystem.db.DataCacheManager;
+import com.zjf.fincialsystem.db.DatabaseManager;
+import com.zjf.fincialsystem.db.dao.BudgetDao;
 import com.zjf.fincialsystem.model.Budget;
 import com.zjf.fincialsystem.network.ApiResponse;
 import com.zjf.fincialsystem.network.NetworkManager;
@@ -10,8 +14,10 @@ import com.zjf.fincialsystem.network.api.BudgetApiService;
 import com.zjf.fincialsystem.network.model.AddBudgetRequest;
 import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.NetworkUtils;
+import com.zjf.fincialsystem.utils.TokenManager;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import retrofit2.Call;
@@ -25,6 +31,10 @@ import retrofit2.Response;
 public class BudgetRepository {
     private static final String TAG = "BudgetRepository";
     
+    private static final String CACHE_KEY_BUDGETS = "budgets";
+    
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    
     private final Context context;
     private final BudgetApiService apiService;
     private final DataCacheManager cacheManager;
@@ -37,12 +47,32 @@ public class BudgetRepository {
     
     /**
      * 获取预算列表
+     * 缓存未过期时直接返回；已过期但仍可用时先返回缓存，再从网络刷新，成功后以isCacheData(false)再回调一次
      * @param period 预算周期（月度/年度）
      * @param callback 回调
      */
     public void getBudgets(String period, final RepositoryCallback<List<Budget>> callback) {
+        // 先检查缓存
+        DataCacheManager.Freshness freshness = cacheManager.getFreshness(CACHE_KEY_BUDGETS);
+        List<Budget> cached = freshness != DataCacheManager.Freshness.EXPIRED
+                ? filterByPeriod(cacheManager.getBudgets(), period) : null;
+        boolean hasCache = cached != null && !cached.isEmpty();
+        if (hasCache && freshness == DataCacheManager.Freshness.FRESH) {
+            callback.onSuccess(cached);
+            callback.isCacheData(true);
+            return;
+        }
+        
         // 检查网络状态
         if (NetworkUtils.isNetworkAvailable(context)) {
+            // 先返回过期缓存，网络请求失败时界面保留这份数据
+            final boolean revalidating = hasCache && cacheManager.isStaleWhileRevalidate();
+            if (revalidating) {
+                LogUtils.d(TAG, "先使用过期的预算缓存，后台刷新");
+                callback.onSuccess(cached);
+                callback.isCacheData(true);
+            }
+            
             // 有网络连接，从网络获取数据
             apiService.getBudgets(period).enqueue(new Callback<ApiResponse<List<Budget>>>() {
                 @Override
@@ -57,10 +87,11 @@ public class BudgetRepository {
                             
                             // 返回数据
                             callback.onSuccess(budgets);
-                        } else {
+                            callback.isCacheData(false);
+                        } else if (!revalidating) {
                             callback.onError(apiResponse.getMessage());
                         }
-                    } else {
+                    } else if (!revalidating) {
                         callback.onError("网络请求失败");
                     }
                 }
@@ -68,23 +99,15 @@ public class BudgetRepository {
                 @Override
                 public void onFailure(Call<ApiResponse<List<Budget>>> call, Throwable t) {
                     LogUtils.e(TAG, "获取预算列表失败", t);
+                    if (revalidating) {
+                        return;
+                    }
                     
                     // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("budgets")) {
+                    if (cacheManager.isCacheUsable(CACHE_KEY_BUDGETS)) {
                         List<Budget> cachedBudgets = cacheManager.getBudgets();
                         if (cachedBudgets != null && !cachedBudgets.isEmpty()) {
-                            // 过滤预算周期
-                            if (period != null && !period.isEmpty()) {
-                                List<Budget> filteredBudgets = new ArrayList<>();
-                                for (Budget budget : cachedBudgets) {
-                                    if (budget.getPeriod().equals(period)) {
-                                        filteredBudgets.add(budget);
-                                    }
-                                }
-                                callback.onSuccess(filteredBudgets);
-                            } else {
-                                callback.onSuccess(cachedBudgets);
-                            }
+                            callback.onSuccess(filterByPeriod(cachedBudgets, period));
                             
                             // 标记为从缓存获取
                             callback.isCacheData(true);
@@ -97,34 +120,64 @@ public class BudgetRepository {
                 }
             });
         } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("budgets")) {
-                List<Budget> cachedBudgets = cacheManager.getBudgets();
-                if (cachedBudgets != null && !cachedBudgets.isEmpty()) {
-                    // 过滤预算周期
-                    if (period != null && !period.isEmpty()) {
-                        List<Budget> filteredBudgets = new ArrayList<>();
-                        for (Budget budget : cachedBudgets) {
-                            if (budget.getPeriod().equals(period)) {
-                                filteredBudgets.add(budget);
-                            }
-                        }
-                        callback.onSuccess(filteredBudgets);
-                    } else {
-                        callback.onSuccess(cachedBudgets);
-                    }
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
-                }
+            // 无网络连接，使用过期缓存
+            if (hasCache) {
+                callback.onSuccess(cached);
+                
+                // 标记为从缓存获取
+                callback.isCacheData(true);
             } else {
                 callback.onError("无网络连接且无缓存数据");
             }
         }
     }
     
+    /**
+     * 按预算周期过滤
+     * @param budgets 预算列表
+     * @param period 预算周期，为空时不过滤
+     * @return 过滤后的预算列表
+     */
+    private List<Budget> filterByPeriod(List<Budget> budgets, String period) {
+        if (period == null || period.isEmpty()) {
+            return budgets;
+        }
+        List<Budget> filteredBudgets = new ArrayList<>();
+        for (Budget budget : budgets) {
+            if (period.equals(budget.getPeriod())) {
+                filteredBudgets.add(budget);
+            }
+        }
+        return filteredBudgets;
+    }
+    
+    /**
+     * 获取预算及其使用情况
+     * 在数据库线程用一次连接查询算出所有预算的已用金额，本地没有预算时回退到{@link #getBudgets}
+     * @param period 预算周期（月度/年度）
+     * @param date 统计日期，月度预算统计其所在月份，年度预算统计其所在年份
+     * @param callback 回调，本地数据在主线程回调
+     */
+    public void getBudgetUsage(final String period, final Date date, final RepositoryCallback<List<Budget>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            BudgetDao budgetDao = DatabaseManager.getInstance().getBudgetDao();
+            final List<Budget> budgets = budgetDao != null
+                    ? budgetDao.queryUsage(userId, period, date)
+                    : new ArrayList<>();
+            
+            MAIN_HANDLER.post(() -> {
+                if (budgets.isEmpty()) {
+                    LogUtils.d(TAG, "本地没有预算数据，从网络获取");
+                    getBudgets(period, callback);
+                } else {
+                    callback.onSuccess(budgets);
+                }
+            });
+        });
+    }
+    
     /**
      * 获取当前预算
      * @param callback 回调
@@ -156,7 +209,7 @@ public class BudgetRepository {
                     LogUtils.e(TAG, "获取当前预算失败", t);
                     
                     // 网络请求失败，尝试从缓存获取月度预算
-                    if (cacheManager.isCacheValid("budgets")) {
+                    if (cacheManager.isCacheUsable(CACHE_KEY_BUDGETS)) {
                         List<Budget> cachedBudgets = cacheManager.getBudgets();
                         if (cachedBudgets != null && !cachedBudgets.isEmpty()) {
                             // 过滤月度预算
@@ -185,7 +238,7 @@ public class BudgetRepository {
             });
         } else {
             // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("budgets")) {
+            if (cacheManager.isCacheUsable(CACHE_KEY_BUDGETS)) {
                 List<Budget> cachedBudgets = cacheManager.getBudgets();
                 if (cachedBudgets != null && !cachedBudgets.isEmpty()) {
                     // 过滤月度预算
@@ -25,6 +25,8 @@ import retrofit2.Response;
 public class CategoryRepository {
     private static final String TAG = "CategoryRepository";
     
+    private static final String CACHE_KEY_CATEGORIES = "categories";
+    
     private final Context context;
     private final CategoryApiService apiService;
     private final DataCacheManager cacheManager;
@@ -37,13 +39,33 @@ public class CategoryRepository {
     
     /**
      * 获取分类列表
+     * 缓存未过期时直接返回；已过期但仍可用时先返回缓存，再从网络刷新，成功后以isCacheData(false)再回调一次
      * @param type 分类类型：0-支出，1-收入，null-全部
      * @param callback 回调
      */
     public void getCategories(Integer type, final RepositoryCallback<List<Category>> callback) {
         try {
+            // 先检查缓存
+            DataCacheManager.Freshness freshness = cacheManager.getFreshness(CACHE_KEY_CATEGORIES);
+            List<Category> cached = freshness != DataCacheManager.Freshness.EXPIRED
+                    ? filterByType(cacheManager.getCategories(), type) : null;
+            boolean hasCache = cached != null && !cached.isEmpty();
+            if (hasCache && freshness == DataCacheManager.Freshness.FRESH) {
+                callback.onSuccess(cached);
+                callback.isCacheData(true);
+                return;
+            }
+            
             // 检查网络状态
             if (NetworkUtils.isNetworkAvailable(context)) {
+                // 先返回过期缓存，网络请求失败时界面保留这份数据
+                final boolean revalidating = hasCache && cacheManager.isStaleWhileRevalidate();
+                if (revalidating) {
+                    LogUtils.d(TAG, "先使用过期的分类缓存，后台刷新");
+                    callback.onSuccess(cached);
+                    callback.isCacheData(true);
+                }
+                
                 // 有网络连接，从网络获取数据
                 Call<ApiResponse<List<Category>>> call;
                 if (type != null) {
@@ -66,10 +88,11 @@ public class CategoryRepository {
                                 
                                 // 返回数据
                                 callback.onSuccess(categories);
-                            } else {
+                                callback.isCacheData(false);
+                            } else if (!revalidating) {
                                 callback.onError(apiResponse.getMessage());
                             }
-                        } else {
+                        } else if (!revalidating) {
                             callback.onError("网络请求失败");
                         }
                     }
@@ -77,23 +100,15 @@ public class CategoryRepository {
                     @Override
                     public void onFailure(Call<ApiResponse<List<Category>>> call, Throwable t) {
                         LogUtils.e(TAG, "获取分类列表失败", t);
+                        if (revalidating) {
+                            return;
+                        }
                         
                         // 网络请求失败，尝试从缓存获取
-                        if (cacheManager.isCacheValid("categories")) {
+                        if (cacheManager.isCacheUsable(CACHE_KEY_CATEGORIES)) {
                             List<Category> cachedCategories = cacheManager.getCategories();
                             if (cachedCategories != null && !cachedCategories.isEmpty()) {
-                                // 过滤分类类型
-                                if (type != null) {
-                                    List<Category> filteredCategories = new ArrayList<>();
-                                    for (Category category : cachedCategories) {
-                                        if (category.getType() == type) {
-                                            filteredCategories.add(category);
-                                        }
-                                    }
-                                    callback.onSuccess(filteredCategories);
-                                } else {
-                                    callback.onSuccess(cachedCategories);
-                                }
+                                callback.onSuccess(filterByType(cachedCategories, type));
                                 
                                 // 标记为从缓存获取
                                 callback.isCacheData(true);
@@ -106,28 +121,12 @@ public class CategoryRepository {
                     }
                 });
             } else {
-                // 无网络连接，从缓存获取数据
-                if (cacheManager.isCacheValid("categories")) {
-                    List<Category> cachedCategories = cacheManager.getCategories();
-                    if (cachedCategories != null && !cachedCategories.isEmpty()) {
-                        // 过滤分类类型
-                        if (type != null) {
-                            List<Category> filteredCategories = new ArrayList<>();
-                            for (Category category : cachedCategories) {
-                                if (category.getType() == type) {
-                                    filteredCategories.add(category);
-                                }
-                            }
-                            callback.onSuccess(filteredCategories);
-                        } else {
-                            callback.onSuccess(cachedCategories);
-                        }
-                        
-                        // 标记为从缓存获取
-                        callback.isCacheData(true);
-                    } else {
-                        callback.onError("无网络连接且无缓存数据");
-                    }
+                // 无网络连接，使用过期缓存
+                if (hasCache) {
+                    callback.onSuccess(cached);
+                    
+                    // 标记为从缓存获取
+                    callback.isCacheData(true);
                 } else {
                     callback.onError("无网络连接且无缓存数据");
                 }
@@ -138,6 +137,25 @@ public class CategoryRepository {
         }
     }
     
+    /**
+     * 按分类类型过滤
+     * @param categories 分类列表
+     * @param type 分类类型，为null时不过滤
+     * @return 过滤后的分类列表
+     */
+    private List<Category> filterByType(List<Category> categories, Integer type) {
+        if (type == null) {
+            return categories;
+        }
+        List<Category> filteredCategories = new ArrayList<>();
+        for (Category category : categories) {
+            if (category.getType() == type) {
+                filteredCategories.add(category);
+            }
+        }
+        return filteredCategories;
+    }
+    
     /**
      * 添加分类
      * @param request 添加分类请求参数
@@ -0,0 +1,136 @@
+package com.zjf.fincialsystem.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.zjf.fincialsystem.db.DatabaseManager;
+import com.zjf.fincialsystem.db.dao.NotificationDao;
+import com.zjf.fincialsystem.model.Notification;
+import com.zjf.fincialsystem.utils.LogUtils;
+import com.zjf.fincialsystem.utils.TokenManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 通知数据仓库
+ * 通知只保存在本地数据库，所有查询和修改都在数据库后台线程执行，结果回到主线程
+ */
+public class NotificationRepository {
+    private static final String TAG = "NotificationRepository";
+
+    /**
+     * 通知列表每页条数
+     */
+    public static final int PAGE_SIZE = 20;
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * 分页获取当前用户的通知（按时间倒序）
+     * 使用键集分页：传入上一页的最后一条通知，查询其之后的一页
+     * @param lastNotification 上一页的最后一条通知，为null时获取第一页
+     * @param callback 回调，在主线程执行；返回条数小于PAGE_SIZE表示已无更多数据
+     */
+    public void getNotificationPage(final Notification lastNotification, final RepositoryCallback<List<Notification>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            NotificationDao notificationDao = DatabaseManager.getInstance().getNotificationDao();
+            if (notificationDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+
+            final List<Notification> page;
+            if (lastNotification == null) {
+                page = notificationDao.queryPage(userId, null, 0, PAGE_SIZE);
+            } else if (lastNotification.getCreatedAt() == null) {
+                page = new ArrayList<>();
+            } else {
+                page = notificationDao.queryPage(userId, lastNotification.getCreatedAt(), lastNotification.getId(), PAGE_SIZE);
+            }
+            LogUtils.d(TAG, "加载通知分页，条数: " + page.size());
+            MAIN_HANDLER.post(() -> callback.onSuccess(page));
+        });
+    }
+
+    /**
+     * 获取当前用户的未读通知数量
+     * @param callback 回调，在主线程执行
+     */
+    public void getUnreadCount(final RepositoryCallback<Integer> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            NotificationDao notificationDao = DatabaseManager.getInstance().getNotificationDao();
+            if (notificationDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+
+            final int count = notificationDao.queryUnreadCount(userId);
+            MAIN_HANDLER.post(() -> callback.onSuccess(count));
+        });
+    }
+
+    /**
+     * 标记通知为已读
+     * @param notificationId 通知ID
+     * @param callback 回调，在主线程执行
+     */
+    public void markAsRead(final long notificationId, final RepositoryCallback<Boolean> callback) {
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            NotificationDao notificationDao = DatabaseManager.getInstance().getNotificationDao();
+            if (notificationDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+
+            final boolean success = notificationDao.markAsRead(notificationId);
+            MAIN_HANDLER.post(() -> callback.onSuccess(success));
+        });
+    }
+
+    /**
+     * 清空当前用户的通知
+     * @param callback 回调，在主线程执行
+     */
+    public void clearAll(final RepositoryCallback<Boolean> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            NotificationDao notificationDao = DatabaseManager.getInstance().getNotificationDao();
+            if (notificationDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+
+            final boolean success = notificationDao.deleteByUserId(userId);
+            MAIN_HANDLER.post(() -> callback.onSuccess(success));
+        });
+    }
+
+    /**
+     * 在数据库后台线程执行通知写入任务，如生成测试通知
+     * @param task 任务
+     */
+    public void runInBackground(final NotificationTask task) {
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            NotificationDao notificationDao = DatabaseManager.getInstance().getNotificationDao();
+            if (notificationDao == null) {
+                LogUtils.e(TAG, "数据库未初始化");
+                return;
+            }
+            try {
+                task.run(notificationDao);
+            } catch (Exception e) {
+                LogUtils.e(TAG, "执行通知任务失败: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 通知数据库任务
+     */
+    public interface NotificationTask {
+        void run(NotificationDao notificationDao);
+    }
+}
@@ -0,0 +1,143 @@
+package com.zjf.fincialsystem.repository;
+
+import com.zjf.fincialsystem.utils.LogUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * 请求合并
+ * 相同键的请求进行中时，后来的调用不再发起网络请求，而是加入等待列表，与第一个调用共用同一个Call；
+ * 请求完成后响应先处理一次（如写入缓存），再依次分发给所有等待的回调，每个回调保留自己的失败回退逻辑
+ */
+public class SingleFlight {
+    private static final String TAG = "SingleFlight";
+
+    private static final SingleFlight INSTANCE = new SingleFlight();
+
+    // 进行中的请求及其等待的回调
+    private final Map<String, List<Callback<?>>> inFlight = new HashMap<>();
+
+    // 调用次数、实际发起的请求数、被合并的调用数
+    private long requestCount;
+    private long networkCount;
+    private long coalescedCount;
+
+    private SingleFlight() {
+    }
+
+    public static SingleFlight getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 发起或加入请求
+     * @param key 请求键，相同键的请求返回相同的数据
+     * @param callFactory 创建请求，只有第一个调用会执行
+     * @param sharedHandler 响应的共享处理（如写入缓存），在分发前执行一次，可为null
+     * @param callback 回调
+     * @throws RuntimeException 创建请求失败时抛给本次调用，不回调callback，也没有其他调用在等待这个请求
+     */
+    public <R> void enqueue(final String key, Supplier<Call<R>> callFactory,
+                            final Consumer<Response<R>> sharedHandler, Callback<R> callback) {
+        Call<R> call;
+        synchronized (this) {
+            requestCount++;
+            List<Callback<?>> waiters = inFlight.get(key);
+            if (waiters != null) {
+                waiters.add(callback);
+                coalescedCount++;
+                LogUtils.d(TAG, "合并请求：" + key + "，等待回调数: " + waiters.size());
+                return;
+            }
+            // 在登记之前创建请求，创建失败时其他调用还不能加入
+            try {
+                call = callFactory.get();
+            } catch (RuntimeException e) {
+                LogUtils.e(TAG, "创建请求失败：" + key, e);
+                throw e;
+            }
+            waiters = new ArrayList<>();
+            waiters.add(callback);
+            inFlight.put(key, waiters);
+            networkCount++;
+        }
+
+        call.enqueue(new Callback<R>() {
+            @Override
+            public void onResponse(Call<R> call, Response<R> response) {
+                List<Callback<R>> waiters = finish(key);
+                if (sharedHandler != null) {
+                    try {
+                        sharedHandler.accept(response);
+                    } catch (Exception e) {
+                        LogUtils.e(TAG, "处理响应失败：" + key, e);
+                    }
+                }
+                for (Callback<R> waiter : waiters) {
+                    waiter.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<R> call, Throwable t) {
+                List<Callback<R>> waiters = finish(key);
+                for (Callback<R> waiter : waiters) {
+                    waiter.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return 调用次数
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return 实际发起的网络请求数
+     */
+    public synchronized long getNetworkCount() {
+        return networkCount;
+    }
+
+    /**
+     * @return 被合并、没有发起网络请求的调用数
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "调用=" + requestCount + ", 网络请求=" + networkCount + ", 合并=" + coalescedCount;
+    }
+
+    /**
+     * 请求结束，取出等待的回调，之后相同键的调用会发起新的请求
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <R> List<Callback<R>> finish(String key) {
+        List<Callback<?>> waiters = inFlight.remove(key);
+        List<Callback<R>> result = new ArrayList<>();
+        if (waiters != null) {
+            for (Callback<?> waiter : waiters) {
+                result.add((Callback<R>) waiter);
+            }
+            if (waiters.size() > 1) {
+                LogUtils.d(TAG, "请求完成：" + key + "，分发给" + waiters.size() + "个回调；" + this);
+            }
+        }
+        return result;
+    }
+}
@@ -1,17 +1,32 @@
 package com.zjf.fincialsystem.repository;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.zjf.fincialsystem.db.DataCacheManager;
+import com.zjf.fincialsystem.db.DatabaseManager;
+import com.zjf.fincialsystem.db.dao.BudgetDao;
+import com.zjf.fincialsystem.db.dao.OverviewAggregate;
+import com.zjf.fincialsystem.db.dao.TransactionDao;
+import com.zjf.fincialsystem.model.Budget;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.network.ApiResponse;
 import com.zjf.fincialsystem.network.NetworkManager;
 import com.zjf.fincialsystem.network.api.StatisticsApiService;
 import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.NetworkUtils;
+import com.zjf.fincialsystem.utils.NumberUtils;
 import com.zjf.fincialsystem.utils.TokenManager;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -24,6 +39,8 @@ import retrofit2.Response;
 public class StatisticsRepository {
     private static final String TAG = "StatisticsRepository";
     
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    
     private final Context context;
     private final StatisticsApiService apiService;
     private final DataCacheManager cacheManager;
@@ -51,17 +68,30 @@ public class StatisticsRepository {
         return defaultValue;
     }
     
+    /**
+     * 获取金额类型属性的安全方法
+     * @param data 数据Map
+     * @param key 键名
+     * @return 金额，不存在时返回0
+     */
+    public Money getMoneyValue(Map<String, Object> data, String key) {
+        return NumberUtils.toMoney(data.get(key));
+    }
+    
     /**
      * 获取概览统计
+     * 缓存未过期时直接返回；已过期但仍可用时先返回缓存，再从网络刷新，成功后以isCacheData(false)再回调一次
      * @param period 统计周期：daily, weekly, monthly, yearly
      * @param callback 回调
      */
     public void getOverview(String period, final RepositoryCallback<Map<String, Object>> callback) {
         // 先检查缓存
         String cacheKey = "overview_" + period;
-        Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
+        DataCacheManager.Freshness freshness = cacheManager.getFreshness(cacheKey);
+        Map<String, Object> cachedData = freshness != DataCacheManager.Freshness.EXPIRED
+                ? cacheManager.getStatistics(cacheKey) : null;
         
-        if (cachedData != null && cacheManager.isCacheValid(cacheKey)) {
+        if (cachedData != null && freshness == DataCacheManager.Freshness.FRESH) {
             LogUtils.d(TAG, "使用缓存数据：" + cacheKey);
             if (callback != null) {
                 callback.onSuccess(cachedData);
@@ -70,6 +100,21 @@ public class StatisticsRepository {
             return;
         }
         
+        // 无网络时使用过期缓存，没有缓存再使用本地数据库统计
+        if (!NetworkUtils.isNetworkAvailable(context)) {
+            if (cachedData != null) {
+                LogUtils.d(TAG, "无网络连接，使用过期缓存数据：" + cacheKey);
+                if (callback != null) {
+                    callback.onSuccess(cachedData);
+                    callback.isCacheData(true);
+                }
+            } else {
+                LogUtils.d(TAG, "无网络连接，使用本地数据统计概览");
+                getLocalOverview(period, callback);
+            }
+            return;
+        }
+        
         // 确保我们有网络服务
         if (NetworkManager.getInstance().getStatisticsApiService() == null) {
             LogUtils.e(TAG, "网络服务未初始化，尝试重新初始化");
@@ -85,72 +130,88 @@ public class StatisticsRepository {
             return;
         }
         
+        // 先返回过期缓存，网络请求失败时界面保留这份数据
+        final boolean revalidating = cachedData != null && cacheManager.isStaleWhileRevalidate();
+        if (revalidating) {
+            LogUtils.d(TAG, "先使用过期缓存数据，后台刷新：" + cacheKey);
+            if (callback != null) {
+                callback.onSuccess(cachedData);
+                callback.isCacheData(true);
+            }
+        }
+        
         try {
-            // 从API获取数据
-            Call<ApiResponse<Map<String, Object>>> call = NetworkManager.getInstance()
-                    .getStatisticsApiService()
-                    .getOverview(period);
-                
-            call.enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
-                @Override
-                public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
-                    if (response.isSuccessful() && response.body() != null && response.body().getCode() == 200) {
-                        Map<String, Object> data = response.body().getData();
+            // 从API获取数据，相同周期的并发请求合并为一个
+            SingleFlight.getInstance().enqueue(cacheKey,
+                    () -> NetworkManager.getInstance().getStatisticsApiService().getOverview(period),
+                    response -> {
+                        // 保存到缓存，合并的请求只写一次
+                        if (isOverviewSuccess(response) && response.body().getData() != null) {
+                            cacheManager.saveStatistics(cacheKey, response.body().getData());
+                        }
+                    },
+                    new Callback<ApiResponse<Map<String, Object>>>() {
+                        @Override
+                        public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
+                            if (isOverviewSuccess(response)) {
+                                Map<String, Object> data = response.body().getData();
                         
-                        if (data != null) {
-                            // 保存到缓存
-                            cacheManager.saveStatistics(cacheKey, data);
-                            
-                            LogUtils.d(TAG, "成功获取概览数据：" + data);
+                                if (data != null) {
+                                    LogUtils.d(TAG, "成功获取概览数据：" + data);
                             
-                            if (callback != null) {
-                                callback.onSuccess(data);
-                                callback.isCacheData(false);
-                            }
-                        } else {
-                            LogUtils.e(TAG, "API返回的数据为空");
-                            if (callback != null) {
-                                callback.onError("获取数据失败，服务器返回空数据");
-                            }
-                        }
-                    } else {
-                        String errorMessage = "获取概览数据失败：";
-                        if (response.body() != null) {
-                            errorMessage += response.body().getMessage();
-                        } else {
-                            errorMessage += "网络请求失败，状态码: " + response.code();
-                        }
+                                    if (callback != null) {
+                                        callback.onSuccess(data);
+                                        callback.isCacheData(false);
+                                    }
+                                } else {
+                                    LogUtils.e(TAG, "API返回的数据为空");
+                                    if (callback != null && !revalidating) {
+                                        callback.onError("获取数据失败，服务器返回空数据");
+                                    }
+                                }
+                            } else {
+                                String errorMessage = "获取概览数据失败：";
+                                if (response.body() != null) {
+                                    errorMessage += response.body().getMessage();
+                                } else {
+                                    errorMessage += "网络请求失败，状态码: " + response.code();
+                                }
                         
-                        LogUtils.e(TAG, errorMessage);
-                        if (callback != null) {
-                            callback.onError(errorMessage);
+                                LogUtils.e(TAG, errorMessage);
+                                if (callback != null && !revalidating) {
+                                    callback.onError(errorMessage);
+                                }
+                            }
                         }
-                    }
-                }
                 
-                @Override
-                public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
-                    String errorMessage = "网络请求失败：" + t.getMessage();
-                    LogUtils.e(TAG, errorMessage, t);
+                        @Override
+                        public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
+                            String errorMessage = "网络请求失败：" + t.getMessage();
+                            LogUtils.e(TAG, errorMessage, t);
+                            if (revalidating) {
+                                return;
+                            }
                     
-                    // 如果有缓存数据，即使过期也返回
-                    Map<String, Object> expiredData = cacheManager.getStatistics(cacheKey);
-                    if (expiredData != null) {
-                        LogUtils.w(TAG, "使用过期的缓存数据");
-                        if (callback != null) {
-                            callback.onSuccess(expiredData);
-                            callback.isCacheData(true);
-                        }
-                    } else {
-                        if (callback != null) {
-                            callback.onError(errorMessage);
+                            // 如果有缓存数据，即使过期也返回
+                            Map<String, Object> expiredData = cacheManager.getStatistics(cacheKey);
+                            if (expiredData != null) {
+                                LogUtils.w(TAG, "使用过期的缓存数据");
+                                if (callback != null) {
+                                    callback.onSuccess(expiredData);
+                                    callback.isCacheData(true);
+                                }
+                            } else {
+                                // 没有缓存时使用本地数据库统计
+                                getLocalOverview(period, callback);
+                            }
                         }
-                    }
-                }
-            });
+                    });
         } catch (Exception e) {
             String errorMessage = "请求概览数据时发生错误：" + e.getMessage();
             LogUtils.e(TAG, errorMessage, e);
+            if (revalidating) {
+                return;
+            }
             
             // 如果有缓存数据，即使过期也返回
             Map<String, Object> expiredData = cacheManager.getStatistics(cacheKey);
@@ -161,11 +222,79 @@ public class StatisticsRepository {
                     callback.isCacheData(true);
                 }
             } else {
+                getLocalOverview(period, callback);
+            }
+        }
+    }
+    
+    private static boolean isOverviewSuccess(Response<ApiResponse<Map<String, Object>>> response) {
+        return response.isSuccessful() && response.body() != null && response.body().getCode() == 200;
+    }
+    
+    /**
+     * 从本地数据库统计概览，不发起网络请求
+     * 一次聚合查询得到收入、支出、转账合计和支出分类明细，返回结构与概览接口一致
+     * @param period 统计周期：daily, weekly, monthly, yearly
+     * @param callback 回调，在主线程执行
+     */
+    public void getLocalOverview(final String period, final RepositoryCallback<Map<String, Object>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        final Date[] range = getPeriodRange(period);
+        
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+            if (transactionDao == null) {
+                LogUtils.e(TAG, "TransactionDao未初始化，无法统计本地概览");
                 if (callback != null) {
-                    callback.onError(errorMessage);
+                    MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
                 }
+                return;
             }
+            
+            OverviewAggregate aggregate = transactionDao.queryOverview(userId, range[0], range[1]);
+            LogUtils.d(TAG, "本地概览统计：" + aggregate);
+            
+            final Map<String, Object> data = aggregate.toMap();
+            data.put("periodType", period);
+            if (callback != null) {
+                MAIN_HANDLER.post(() -> {
+                    callback.onSuccess(data);
+                    callback.isCacheData(true);
+                });
+            }
+        });
+    }
+    
+    /**
+     * 计算统计周期对应的日期范围（包含当前时间所在的整个周期）
+     * @param period 统计周期：daily, weekly, monthly, yearly，其他值按月统计
+     * @return [开始时间, 结束时间]
+     */
+    private Date[] getPeriodRange(String period) {
+        Calendar start = Calendar.getInstance();
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        
+        Calendar end = (Calendar) start.clone();
+        if ("daily".equals(period)) {
+            end.add(Calendar.DAY_OF_MONTH, 1);
+        } else if ("weekly".equals(period)) {
+            start.set(Calendar.DAY_OF_WEEK, start.getFirstDayOfWeek());
+            end = (Calendar) start.clone();
+            end.add(Calendar.WEEK_OF_YEAR, 1);
+        } else if ("yearly".equals(period)) {
+            start.set(Calendar.DAY_OF_YEAR, 1);
+            end = (Calendar) start.clone();
+            end.add(Calendar.YEAR, 1);
+        } else {
+            start.set(Calendar.DAY_OF_MONTH, 1);
+            end = (Calendar) start.clone();
+            end.add(Calendar.MONTH, 1);
         }
+        end.add(Calendar.MILLISECOND, -1);
+        return new Date[]{start.getTime(), end.getTime()};
     }
     
     /**
@@ -175,68 +304,8 @@ public class StatisticsRepository {
      * @param callback 回调
      */
     public void getIncomeByCategory(long startDate, long endDate, final RepositoryCallback<Map<String, Object>> callback) {
-        final String cacheKey = "income_category_" + startDate + "_" + endDate;
-        
-        // 检查网络状态
-        if (NetworkUtils.isNetworkAvailable(context)) {
-            // 有网络连接，从网络获取数据
-            apiService.getIncomeByCategory(startDate, endDate).enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
-                @Override
-                public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        ApiResponse<Map<String, Object>> apiResponse = response.body();
-                        if (apiResponse.isSuccess()) {
-                            Map<String, Object> data = apiResponse.getData();
-                            
-                            // 保存到缓存
-                            cacheManager.saveStatistics(cacheKey, data);
-                            
-                            // 返回数据
-                            callback.onSuccess(data);
-                        } else {
-                            callback.onError(apiResponse.getMessage());
-                        }
-                    } else {
-                        callback.onError("网络请求失败");
-                    }
-                }
-
-                @Override
-                public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
-                    LogUtils.e(TAG, "获取收入分类统计失败", t);
-                    
-                    // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                        Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                        if (cachedData != null && !cachedData.isEmpty()) {
-                            callback.onSuccess(cachedData);
-                            
-                            // 标记为从缓存获取
-                            callback.isCacheData(true);
-                        } else {
-                            callback.onError("获取收入分类统计失败: " + t.getMessage());
-                        }
-                    } else {
-                        callback.onError("获取收入分类统计失败: " + t.getMessage());
-                    }
-                }
-            });
-        } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                if (cachedData != null && !cachedData.isEmpty()) {
-                    callback.onSuccess(cachedData);
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
-                }
-            } else {
-                callback.onError("无网络连接且无缓存数据");
-            }
-        }
+        loadStatistics("income_category_" + startDate + "_" + endDate, "收入分类统计",
+                () -> apiService.getIncomeByCategory(startDate, endDate), callback::onError, callback);
     }
     
     /**
@@ -246,68 +315,8 @@ public class StatisticsRepository {
      * @param callback 回调
      */
     public void getExpenseByCategory(long startDate, long endDate, final RepositoryCallback<Map<String, Object>> callback) {
-        final String cacheKey = "expense_category_" + startDate + "_" + endDate;
-        
-        // 检查网络状态
-        if (NetworkUtils.isNetworkAvailable(context)) {
-            // 有网络连接，从网络获取数据
-            apiService.getExpenseByCategory(startDate, endDate).enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
-                @Override
-                public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        ApiResponse<Map<String, Object>> apiResponse = response.body();
-                        if (apiResponse.isSuccess()) {
-                            Map<String, Object> data = apiResponse.getData();
-                            
-                            // 保存到缓存
-                            cacheManager.saveStatistics(cacheKey, data);
-                            
-                            // 返回数据
-                            callback.onSuccess(data);
-                        } else {
-                            callback.onError(apiResponse.getMessage());
-                        }
-                    } else {
-                        callback.onError("网络请求失败");
-                    }
-                }
-
-                @Override
-                public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
-                    LogUtils.e(TAG, "获取支出分类统计失败", t);
-                    
-                    // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                        Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                        if (cachedData != null && !cachedData.isEmpty()) {
-                            callback.onSuccess(cachedData);
-                            
-                            // 标记为从缓存获取
-                            callback.isCacheData(true);
-                        } else {
-                            callback.onError("获取支出分类统计失败: " + t.getMessage());
-                        }
-                    } else {
-                        callback.onError("获取支出分类统计失败: " + t.getMessage());
-                    }
-                }
-            });
-        } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                if (cachedData != null && !cachedData.isEmpty()) {
-                    callback.onSuccess(cachedData);
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
-                }
-            } else {
-                callback.onError("无网络连接且无缓存数据");
-            }
-        }
+        loadStatistics("expense_category_" + startDate + "_" + endDate, "支出分类统计",
+                () -> apiService.getExpenseByCategory(startDate, endDate), callback::onError, callback);
     }
     
     /**
@@ -317,136 +326,166 @@ public class StatisticsRepository {
      * @param callback 回调
      */
     public void getTrend(int type, String period, final RepositoryCallback<Map<String, Object>> callback) {
-        final String cacheKey = "trend_" + type + "_" + period;
-        
-        // 检查网络状态
-        if (NetworkUtils.isNetworkAvailable(context)) {
-            // 有网络连接，从网络获取数据
-            apiService.getTrend(type, period).enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
-                @Override
-                public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        ApiResponse<Map<String, Object>> apiResponse = response.body();
-                        if (apiResponse.isSuccess()) {
-                            Map<String, Object> data = apiResponse.getData();
-                            
-                            // 保存到缓存
-                            cacheManager.saveStatistics(cacheKey, data);
-                            
-                            // 返回数据
-                            callback.onSuccess(data);
-                        } else {
-                            callback.onError(apiResponse.getMessage());
-                        }
-                    } else {
-                        callback.onError("网络请求失败");
-                    }
-                }
-
-                @Override
-                public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
-                    LogUtils.e(TAG, "获取趋势统计失败", t);
-                    
-                    // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                        Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                        if (cachedData != null && !cachedData.isEmpty()) {
-                            callback.onSuccess(cachedData);
-                            
-                            // 标记为从缓存获取
-                            callback.isCacheData(true);
-                        } else {
-                            callback.onError("获取趋势统计失败: " + t.getMessage());
-                        }
-                    } else {
-                        callback.onError("获取趋势统计失败: " + t.getMessage());
-                    }
-                }
-            });
-        } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                if (cachedData != null && !cachedData.isEmpty()) {
-                    callback.onSuccess(cachedData);
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
-                }
-            } else {
-                callback.onError("无网络连接且无缓存数据");
-            }
-        }
+        loadStatistics("trend_" + type + "_" + period, "趋势统计",
+                () -> apiService.getTrend(type, period), callback::onError, callback);
     }
     
     /**
      * 获取预算使用统计
+     * 网络和缓存都不可用时使用本地数据库统计
      * @param callback 回调
      */
     public void getBudgetUsage(final RepositoryCallback<Map<String, Object>> callback) {
-        final String cacheKey = "budget_usage";
+        loadStatistics("budget_usage", "预算使用统计",
+                () -> apiService.getBudgetUsage(), error -> getLocalBudgetUsage(callback), callback);
+    }
+    
+    /**
+     * 按缓存新鲜度获取统计数据
+     * 缓存未过期时直接返回；已过期但仍可用时先返回缓存，再从网络刷新，成功后以isCacheData(false)再回调一次，
+     * 刷新失败只记录日志，界面保留过期数据；无网络或请求失败时使用仍可用的缓存
+     * @param cacheKey 缓存键
+     * @param name 统计名称，用于日志和错误信息
+     * @param request 创建网络请求，只在需要请求时调用
+     * @param onUnavailable 无网络或请求失败且没有可用缓存时的处理，参数为错误信息
+     * @param callback 回调
+     */
+    private void loadStatistics(final String cacheKey, final String name,
+                                Supplier<Call<ApiResponse<Map<String, Object>>>> request,
+                                final Consumer<String> onUnavailable,
+                                final RepositoryCallback<Map<String, Object>> callback) {
+        // 先检查缓存
+        DataCacheManager.Freshness freshness = cacheManager.getFreshness(cacheKey);
+        Map<String, Object> cached = freshness != DataCacheManager.Freshness.EXPIRED
+                ? cacheManager.getStatistics(cacheKey) : null;
+        final boolean hasCache = cached != null && !cached.isEmpty();
+        if (hasCache && freshness == DataCacheManager.Freshness.FRESH) {
+            LogUtils.d(TAG, "使用缓存数据：" + cacheKey);
+            callback.onSuccess(cached);
+            callback.isCacheData(true);
+            return;
+        }
         
-        // 检查网络状态
-        if (NetworkUtils.isNetworkAvailable(context)) {
-            // 有网络连接，从网络获取数据
-            apiService.getBudgetUsage().enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
-                @Override
-                public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        ApiResponse<Map<String, Object>> apiResponse = response.body();
-                        if (apiResponse.isSuccess()) {
-                            Map<String, Object> data = apiResponse.getData();
-                            
-                            // 保存到缓存
-                            cacheManager.saveStatistics(cacheKey, data);
-                            
-                            // 返回数据
-                            callback.onSuccess(data);
-                        } else {
-                            callback.onError(apiResponse.getMessage());
-                        }
-                    } else {
-                        callback.onError("网络请求失败");
+        // 无网络连接，使用过期缓存
+        if (!NetworkUtils.isNetworkAvailable(context)) {
+            if (hasCache) {
+                callback.onSuccess(cached);
+                
+                // 标记为从缓存获取
+                callback.isCacheData(true);
+            } else {
+                onUnavailable.accept("无网络连接且无缓存数据");
+            }
+            return;
+        }
+        
+        // 先返回过期缓存，网络请求失败时界面保留这份数据
+        final boolean revalidating = hasCache && cacheManager.isStaleWhileRevalidate();
+        if (revalidating) {
+            LogUtils.d(TAG, "先使用过期缓存数据，后台刷新：" + cacheKey);
+            callback.onSuccess(cached);
+            callback.isCacheData(true);
+        }
+        
+        // 有网络连接，从网络获取数据
+        request.get().enqueue(new Callback<ApiResponse<Map<String, Object>>>() {
+            @Override
+            public void onResponse(Call<ApiResponse<Map<String, Object>>> call, Response<ApiResponse<Map<String, Object>>> response) {
+                if (response.isSuccessful() && response.body() != null) {
+                    ApiResponse<Map<String, Object>> apiResponse = response.body();
+                    if (apiResponse.isSuccess()) {
+                        Map<String, Object> data = apiResponse.getData();
+                        
+                        // 保存到缓存
+                        cacheManager.saveStatistics(cacheKey, data);
+                        
+                        // 返回数据
+                        callback.onSuccess(data);
+                        callback.isCacheData(false);
+                    } else if (!revalidating) {
+                        callback.onError(apiResponse.getMessage());
                     }
+                } else if (!revalidating) {
+                    callback.onError("网络请求失败");
                 }
+            }
 
-                @Override
-                public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
-                    LogUtils.e(TAG, "获取预算使用统计失败", t);
-                    
-                    // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                        Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                        if (cachedData != null && !cachedData.isEmpty()) {
-                            callback.onSuccess(cachedData);
-                            
-                            // 标记为从缓存获取
-                            callback.isCacheData(true);
-                        } else {
-                            callback.onError("获取预算使用统计失败: " + t.getMessage());
-                        }
-                    } else {
-                        callback.onError("获取预算使用统计失败: " + t.getMessage());
+            @Override
+            public void onFailure(Call<ApiResponse<Map<String, Object>>> call, Throwable t) {
+                LogUtils.e(TAG, "获取" + name + "失败", t);
+                if (revalidating) {
+                    return;
+                }
+                
+                // 网络请求失败，尝试从缓存获取
+                if (cacheManager.isCacheUsable(cacheKey)) {
+                    Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
+                    if (cachedData != null && !cachedData.isEmpty()) {
+                        callback.onSuccess(cachedData);
+                        
+                        // 标记为从缓存获取
+                        callback.isCacheData(true);
+                        return;
                     }
                 }
-            });
-        } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("statistics_" + cacheKey)) {
-                Map<String, Object> cachedData = cacheManager.getStatistics(cacheKey);
-                if (cachedData != null && !cachedData.isEmpty()) {
-                    callback.onSuccess(cachedData);
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
+                onUnavailable.accept("获取" + name + "失败: " + t.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 从本地数据库统计当前所有有效预算的使用情况，不发起网络请求
+     * 一次连接查询得到全部预算的已用金额，查询次数与预算个数无关，返回结构与预算使用接口一致
+     * @param callback 回调，在主线程执行
+     */
+    public void getLocalBudgetUsage(final RepositoryCallback<Map<String, Object>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            BudgetDao budgetDao = DatabaseManager.getInstance().getBudgetDao();
+            if (budgetDao == null) {
+                LogUtils.e(TAG, "BudgetDao未初始化，无法统计本地预算使用情况");
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+            
+            List<Budget> budgets = budgetDao.queryUsage(userId, null, new Date());
+            
+            Money totalBudget = Money.ZERO;
+            Money totalUsed = Money.ZERO;
+            List<Map<String, Object>> budgetStats = new ArrayList<>();
+            for (Budget budget : budgets) {
+                Map<String, Object> stat = new HashMap<>();
+                stat.put("budgetId", budget.getId());
+                stat.put("categoryId", budget.getCategoryId());
+                if (budget.getCategory() != null) {
+                    stat.put("categoryName", budget.getCategory().getName());
+                    stat.put("categoryIcon", budget.getCategory().getIcon());
                 }
-            } else {
-                callback.onError("无网络连接且无缓存数据");
+                stat.put("period", budget.getPeriod());
+                stat.put("budgetAmount", budget.getMoney());
+                stat.put("usedAmount", budget.getUsedMoney());
+                stat.put("remainAmount", budget.getMoney().minus(budget.getUsedMoney()));
+                stat.put("usagePercentage", budget.getUsedPercent());
+                budgetStats.add(stat);
+                
+                totalBudget = totalBudget.plus(budget.getMoney());
+                totalUsed = totalUsed.plus(budget.getUsedMoney());
             }
-        }
+            
+            final Map<String, Object> data = new HashMap<>();
+            data.put("totalBudget", totalBudget);
+            data.put("totalUsed", totalUsed);
+            data.put("totalRemain", totalBudget.minus(totalUsed));
+            data.put("overallPercentage", totalBudget.isPositive()
+                    ? totalUsed.getCents() * 100.0 / totalBudget.getCents() : 0);
+            data.put("budgetStats", budgetStats);
+            LogUtils.d(TAG, "本地预算使用统计：" + budgets.size() + "个预算");
+            
+            MAIN_HANDLER.post(() -> {
+                callback.onSuccess(data);
+                callback.isCacheData(true);
+            });
+        });
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
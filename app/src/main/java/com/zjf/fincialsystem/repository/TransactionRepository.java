@@ -1,8 +1,12 @@
 package com.zjf.fincialsystem.repository;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.zjf.fincialsystem.db.DataCacheManager;
+import com.zjf.fincialsystem.db.DatabaseManager;
+import com.zjf.fincialsystem.db.dao.TransactionDao;
 import com.zjf.fincialsystem.model.Transaction;
 import com.zjf.fincialsystem.network.ApiResponse;
 import com.zjf.fincialsystem.network.NetworkManager;
@@ -10,8 +14,10 @@ import com.zjf.fincialsystem.network.api.TransactionApiService;
 import com.zjf.fincialsystem.network.model.AddTransactionRequest;
 import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.NetworkUtils;
+import com.zjf.fincialsystem.utils.TokenManager;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import retrofit2.Call;
@@ -25,6 +31,19 @@ import retrofit2.Response;
 public class TransactionRepository {
     private static final String TAG = "TransactionRepository";
     
+    /**
+     * 交易记录列表每页条数
+     */
+    public static final int PAGE_SIZE = 20;
+    
+    // 搜索结果最多返回的条数
+    public static final int SEARCH_LIMIT = 50;
+    
+    private static final String CACHE_KEY_TRANSACTIONS = "transactions";
+    
+    // 本地数据库查询在数据库后台线程执行，结果回到主线程
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    
     private final Context context;
     private final TransactionApiService apiService;
     private final DataCacheManager cacheManager;
@@ -37,13 +56,34 @@ public class TransactionRepository {
     
     /**
      * 获取交易记录列表
+     * 缓存未过期时直接返回；已过期但仍可用时先返回缓存，再从网络刷新，成功后以isCacheData(false)再回调一次
      * @param callback 回调
      */
     public void getTransactions(final RepositoryCallback<List<Transaction>> callback) {
+        // 先检查缓存
+        DataCacheManager.Freshness freshness = cacheManager.getFreshness(CACHE_KEY_TRANSACTIONS);
+        List<Transaction> cached = freshness != DataCacheManager.Freshness.EXPIRED
+                ? cacheManager.getTransactions() : null;
+        boolean hasCache = cached != null && !cached.isEmpty();
+        if (hasCache && freshness == DataCacheManager.Freshness.FRESH) {
+            callback.onSuccess(cached);
+            callback.isCacheData(true);
+            return;
+        }
+        
         // 检查网络状态
         if (NetworkUtils.isNetworkAvailable(context)) {
-            // 有网络连接，从网络获取数据
-            apiService.getTransactions().enqueue(new Callback<ApiResponse<List<Transaction>>>() {
+            // 先返回过期缓存，网络请求失败时界面保留这份数据
+            final boolean revalidating = hasCache && cacheManager.isStaleWhileRevalidate();
+            if (revalidating) {
+                LogUtils.d(TAG, "先使用过期的交易记录缓存，后台刷新");
+                callback.onSuccess(cached);
+                callback.isCacheData(true);
+            }
+            
+            // 有网络连接，从网络获取数据，并发的请求合并为一个
+            SingleFlight.getInstance().enqueue(CACHE_KEY_TRANSACTIONS, apiService::getTransactions,
+                    this::saveTransactionsResponse, new Callback<ApiResponse<List<Transaction>>>() {
                 @Override
                 public void onResponse(Call<ApiResponse<List<Transaction>>> call, Response<ApiResponse<List<Transaction>>> response) {
                     if (response.isSuccessful() && response.body() != null) {
@@ -51,15 +91,13 @@ public class TransactionRepository {
                         if (apiResponse.isSuccess()) {
                             List<Transaction> transactions = apiResponse.getData();
                             
-                            // 保存到缓存
-                            cacheManager.saveTransactions(transactions);
-                            
                             // 返回数据
                             callback.onSuccess(transactions);
-                        } else {
+                            callback.isCacheData(false);
+                        } else if (!revalidating) {
                             callback.onError(apiResponse.getMessage());
                         }
-                    } else {
+                    } else if (!revalidating) {
                         callback.onError("网络请求失败");
                     }
                 }
@@ -67,9 +105,12 @@ public class TransactionRepository {
                 @Override
                 public void onFailure(Call<ApiResponse<List<Transaction>>> call, Throwable t) {
                     LogUtils.e(TAG, "获取交易记录列表失败", t);
+                    if (revalidating) {
+                        return;
+                    }
                     
                     // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("transactions")) {
+                    if (cacheManager.isCacheUsable(CACHE_KEY_TRANSACTIONS)) {
                         List<Transaction> cachedTransactions = cacheManager.getTransactions();
                         if (cachedTransactions != null && !cachedTransactions.isEmpty()) {
                             callback.onSuccess(cachedTransactions);
@@ -85,23 +126,145 @@ public class TransactionRepository {
                 }
             });
         } else {
-            // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("transactions")) {
-                List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                if (cachedTransactions != null && !cachedTransactions.isEmpty()) {
-                    callback.onSuccess(cachedTransactions);
-                    
-                    // 标记为从缓存获取
-                    callback.isCacheData(true);
-                } else {
-                    callback.onError("无网络连接且无缓存数据");
-                }
+            // 无网络连接，使用过期缓存
+            if (hasCache) {
+                callback.onSuccess(cached);
+                
+                // 标记为从缓存获取
+                callback.isCacheData(true);
             } else {
                 callback.onError("无网络连接且无缓存数据");
             }
         }
     }
     
+    /**
+     * 从网络同步交易记录到本地数据库，与getTransactions的网络请求合并
+     * 分页列表和搜索只读本地数据库，同步成功后重新加载即可看到服务器的数据
+     * @param callback 回调，在主线程执行；成功时本地数据库已写入，之后排队的分页查询能读到
+     */
+    public void syncTransactions(final RepositoryCallback<Boolean> callback) {
+        if (!NetworkUtils.isNetworkAvailable(context)) {
+            callback.onError("无网络连接");
+            return;
+        }
+        SingleFlight.getInstance().enqueue(CACHE_KEY_TRANSACTIONS, apiService::getTransactions,
+                this::saveTransactionsResponse, new Callback<ApiResponse<List<Transaction>>>() {
+            @Override
+            public void onResponse(Call<ApiResponse<List<Transaction>>> call, Response<ApiResponse<List<Transaction>>> response) {
+                if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
+                    // 写入任务已排在数据库线程，排在其后回调
+                    DatabaseManager.getInstance().getExecutor().execute(() -> MAIN_HANDLER.post(() -> callback.onSuccess(true)));
+                } else {
+                    callback.onError(response.body() != null ? response.body().getMessage() : "网络请求失败");
+                }
+            }
+            
+            @Override
+            public void onFailure(Call<ApiResponse<List<Transaction>>> call, Throwable t) {
+                LogUtils.e(TAG, "同步交易记录失败", t);
+                callback.onError("同步交易记录失败: " + t.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * 保存网络返回的交易记录列表，合并的请求只处理一次
+     * 写入文件缓存，并在数据库线程写入本地数据库
+     */
+    private void saveTransactionsResponse(Response<ApiResponse<List<Transaction>>> response) {
+        if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
+            return;
+        }
+        List<Transaction> transactions = response.body().getData();
+        saveToDatabase(transactions);
+        cacheManager.saveTransactions(transactions);
+    }
+    
+    /**
+     * 在数据库线程按服务器ID写入或更新本地交易记录，没有用户ID的记录归属当前登录用户
+     * @param transactions 交易记录
+     */
+    private void saveToDatabase(final List<Transaction> transactions) {
+        if (transactions == null || transactions.isEmpty()) {
+            return;
+        }
+        long userId = TokenManager.getInstance().getUserId();
+        for (Transaction transaction : transactions) {
+            if (transaction.getUserId() <= 0) {
+                transaction.setUserId(userId);
+            }
+        }
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+            if (transactionDao != null) {
+                transactionDao.upsertAll(transactions);
+            }
+        });
+    }
+    
+    /**
+     * 在数据库线程删除已同步的本地交易记录
+     * @param transactionId 服务器上的交易记录ID
+     */
+    private void deleteFromDatabase(final long transactionId) {
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+            if (transactionDao != null) {
+                transactionDao.deleteByRemoteId(transactionId);
+            }
+        });
+    }
+    
+    /**
+     * 分页获取当前用户的交易记录（本地数据库，按日期倒序）
+     * 使用键集分页：传入上一页的最后一条记录，查询其之后的一页
+     * @param lastTransaction 上一页的最后一条记录，为null时获取第一页
+     * @param callback 回调，在主线程执行；返回条数小于PAGE_SIZE表示已无更多数据
+     */
+    public void getTransactionPage(final Transaction lastTransaction, final RepositoryCallback<List<Transaction>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+            if (transactionDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+            
+            final List<Transaction> page;
+            if (lastTransaction == null) {
+                page = transactionDao.queryPage(userId, null, 0, PAGE_SIZE);
+            } else if (lastTransaction.getDate() == null) {
+                // 无日期的记录排在最后，已到末尾
+                page = new ArrayList<>();
+            } else {
+                page = transactionDao.queryPage(userId, lastTransaction.getDate(), lastTransaction.getId(), PAGE_SIZE);
+            }
+            LogUtils.d(TAG, "加载交易记录分页，条数: " + page.size());
+            MAIN_HANDLER.post(() -> callback.onSuccess(page));
+        });
+    }
+    
+    /**
+     * 搜索当前用户的交易记录（本地全文索引，匹配描述和备注）
+     * @param query 搜索文本
+     * @param callback 回调，在主线程执行
+     */
+    public void searchTransactions(final String query, final RepositoryCallback<List<Transaction>> callback) {
+        final long userId = TokenManager.getInstance().getUserId();
+        DatabaseManager.getInstance().getExecutor().execute(() -> {
+            TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+            if (transactionDao == null) {
+                MAIN_HANDLER.post(() -> callback.onError("数据库未初始化"));
+                return;
+            }
+            
+            final List<Transaction> result = transactionDao.search(userId, query, SEARCH_LIMIT);
+            LogUtils.d(TAG, "搜索交易记录：" + query + "，条数: " + result.size());
+            MAIN_HANDLER.post(() -> callback.onSuccess(result));
+        });
+    }
+    
     /**
      * 按类型获取交易记录列表
      * @param type 交易类型：0-支出，1-收入
@@ -134,7 +297,7 @@ public class TransactionRepository {
                     LogUtils.e(TAG, "获取交易记录列表失败", t);
                     
                     // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("transactions")) {
+                    if (cacheManager.isCacheUsable(CACHE_KEY_TRANSACTIONS)) {
                         List<Transaction> allTransactions = cacheManager.getTransactions();
                         if (allTransactions != null && !allTransactions.isEmpty()) {
                             // 过滤交易类型
@@ -159,7 +322,7 @@ public class TransactionRepository {
             });
         } else {
             // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("transactions")) {
+            if (cacheManager.isCacheUsable(CACHE_KEY_TRANSACTIONS)) {
                 List<Transaction> allTransactions = cacheManager.getTransactions();
                 if (allTransactions != null && !allTransactions.isEmpty()) {
                     // 过滤交易类型
@@ -203,10 +366,9 @@ public class TransactionRepository {
                     if (apiResponse.isSuccess()) {
                         Transaction transaction = apiResponse.getData();
                         
-                        // 更新缓存
-                        List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                        cachedTransactions.add(transaction);
-                        cacheManager.saveTransactions(cachedTransactions);
+                        // 更新缓存和本地数据库
+                        cacheManager.putTransaction(transaction);
+                        saveToDatabase(Collections.singletonList(transaction));
                         
                         // 返回数据
                         callback.onSuccess(transaction);
@@ -246,15 +408,9 @@ public class TransactionRepository {
                     if (apiResponse.isSuccess()) {
                         Transaction updatedTransaction = apiResponse.getData();
                         
-                        // 更新缓存
-                        List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                        for (int i = 0; i < cachedTransactions.size(); i++) {
-                            if (cachedTransactions.get(i).getId() == updatedTransaction.getId()) {
-                                cachedTransactions.set(i, updatedTransaction);
-                                break;
-                            }
-                        }
-                        cacheManager.saveTransactions(cachedTransactions);
+                        // 更新缓存和本地数据库
+                        cacheManager.putTransaction(updatedTransaction);
+                        saveToDatabase(Collections.singletonList(updatedTransaction));
                         
                         // 返回数据
                         callback.onSuccess(updatedTransaction);
@@ -276,7 +432,7 @@ public class TransactionRepository {
     
     /**
      * 删除交易记录
-     * @param transactionId 要删除的交易记录ID
+     * @param transactionId 要删除的交易记录在服务器上的ID
      * @param callback 回调
      */
     public void deleteTransaction(long transactionId, final RepositoryCallback<Boolean> callback) {
@@ -292,15 +448,9 @@ public class TransactionRepository {
                 if (response.isSuccessful() && response.body() != null) {
                     ApiResponse<Boolean> apiResponse = response.body();
                     if (apiResponse.isSuccess() && apiResponse.getData()) {
-                        // 更新缓存
-                        List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                        for (int i = 0; i < cachedTransactions.size(); i++) {
-                            if (cachedTransactions.get(i).getId() == transactionId) {
-                                cachedTransactions.remove(i);
-                                break;
-                            }
-                        }
-                        cacheManager.saveTransactions(cachedTransactions);
+                        // 更新缓存和本地数据库
+                        cacheManager.removeTransaction(transactionId);
+                        deleteFromDatabase(transactionId);
                         
                         // 返回数据
                         callback.onSuccess(true);
@@ -352,22 +502,16 @@ public class TransactionRepository {
                     LogUtils.e(TAG, "获取交易记录详情失败", t);
                     
                     // 网络请求失败，尝试从缓存获取
-                    if (cacheManager.isCacheValid("transactions")) {
-                        List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                        if (cachedTransactions != null && !cachedTransactions.isEmpty()) {
-                            // 查找指定ID的交易记录
-                            for (Transaction transaction : cachedTransactions) {
-                                if (transaction.getId() == transactionId) {
-                                    callback.onSuccess(transaction);
-                                    
-                                    // 标记为从缓存获取
-                                    callback.isCacheData(true);
-                                    return;
-                                }
-                            }
-                            callback.onError("找不到指定的交易记录");
+                    if (cacheManager.isCacheUsable(CACHE_KEY_TRANSACTIONS)) {
+                        // 查找指定ID的交易记录
+                        Transaction transaction = cacheManager.getTransaction(transactionId);
+                        if (transaction != null) {
+                            callback.onSuccess(transaction);
+                            
+                            // 标记为从缓存获取
+                            callback.isCacheData(true);
                         } else {
-                            callback.onError("获取交易记录详情失败: " + t.getMessage());
+                            callback.onError("找不到指定的交易记录");
                         }
                     } else {
                         callback.onError("获取交易记录详情失败: " + t.getMessage());
@@ -376,22 +520,16 @@ public class TransactionRepository {
             });
         } else {
             // 无网络连接，从缓存获取数据
-            if (cacheManager.isCacheValid("transactions")) {
-                List<Transaction> cachedTransactions = cacheManager.getTransactions();
-                if (cachedTransactions != null && !cachedTransactions.isEmpty()) {
-                    // 查找指定ID的交易记录
-                    for (Transaction transaction : cachedTransactions) {
-                        if (transaction.getId() == transactionId) {
-                            callback.onSuccess(transaction);
-                            
-                            // 标记为从缓存获取
-                            callback.isCacheData(true);
-                            return;
-                        }
-                    }
-                    callback.onError("找不到指定的交易记录");
+            if (cacheManager.isCacheUsable(CACHE_KEY_TRANSACTIONS)) {
+                // 查找指定ID的交易记录
+                Transaction transaction = cacheManager.getTransaction(transactionId);
+                if (transaction != null) {
+                    callback.onSuccess(transaction);
+                    
+                    // 标记为从缓存获取
+                    callback.isCacheData(true);
                 } else {
-                    callback.onError("无网络连接且无缓存数据");
+                    callback.onError("找不到指定的交易记录");
                 }
             } else {
                 callback.onError("无网络连接且无缓存数据");
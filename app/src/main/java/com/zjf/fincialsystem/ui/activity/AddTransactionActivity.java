@@ -29,6 +29,7 @@ import com.zjf.fincialsystem.model.Transaction;
 import com.zjf.fincialsystem.utils.DateUtils;
 import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.StatusBarUtils;
+import com.zjf.fincialsystem.utils.TokenManager;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -490,10 +491,6 @@ public class AddTransactionActivity extends AppCompatActivity {
                 return;
             }
             
-            // 检查数据库状态
-            String dbStatus = DatabaseManager.getInstance().checkDatabaseStatus();
-            LogUtils.d(TAG, "数据库状态检查:\n" + dbStatus);
-            
             // 获取交易类型
             int type = binding.rbIncome.isChecked() ? Transaction.TYPE_INCOME : 
                       (binding.rbExpense.isChecked() ? Transaction.TYPE_EXPENSE : Transaction.TYPE_TRANSFER);
@@ -502,7 +499,7 @@ public class AddTransactionActivity extends AppCompatActivity {
             
             // 创建交易对象
             Transaction transaction = new Transaction();
-            transaction.setUserId(1); // 这里应该使用当前登录用户的ID
+            transaction.setUserId(TokenManager.getInstance().getUserId());
             transaction.setCategoryId(categoryId);
             transaction.setType(type);
             transaction.setAmount(amount);
@@ -525,32 +522,36 @@ public class AddTransactionActivity extends AppCompatActivity {
             transaction.setCreatedAt(currentTime);
             transaction.setUpdatedAt(currentTime);
             
-            // 保存到数据库
-            try {
-                LogUtils.d(TAG, "开始将交易数据保存到数据库");
-                TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
-                
-                if (transactionDao == null) {
-                    LogUtils.e(TAG, "TransactionDao为空");
-                    Toast.makeText(this, "数据访问对象未初始化", Toast.LENGTH_SHORT).show();
-                    return;
-                }
-                
-                long id = transactionDao.insert(transaction);
-                LogUtils.d(TAG, "insert方法返回的ID: " + id);
-                
-                if (id > 0) {
-                    LogUtils.d(TAG, "交易记录保存成功，ID：" + id);
-                    Toast.makeText(this, R.string.success, Toast.LENGTH_SHORT).show();
-                    finish();
-                } else {
-                    LogUtils.e(TAG, "交易保存失败，insert方法返回ID <= 0");
-                    Toast.makeText(this, "保存失败，请重试", Toast.LENGTH_SHORT).show();
+            // 在数据库线程保存，数据库可能还在打开，不能在主线程等待
+            LogUtils.d(TAG, "开始将交易数据保存到数据库");
+            DatabaseManager.getInstance().getExecutor().execute(() -> {
+                try {
+                    TransactionDao transactionDao = DatabaseManager.getInstance().getTransactionDao();
+                    
+                    if (transactionDao == null) {
+                        LogUtils.e(TAG, "TransactionDao为空");
+                        runOnUiThread(() -> Toast.makeText(this, "数据访问对象未初始化", Toast.LENGTH_SHORT).show());
+                        return;
+                    }
+                    
+                    final long id = transactionDao.insert(transaction);
+                    LogUtils.d(TAG, "insert方法返回的ID: " + id);
+                    
+                    runOnUiThread(() -> {
+                        if (id > 0) {
+                            LogUtils.d(TAG, "交易记录保存成功，ID：" + id);
+                            Toast.makeText(this, R.string.success, Toast.LENGTH_SHORT).show();
+                            finish();
+                        } else {
+                            LogUtils.e(TAG, "交易保存失败，insert方法返回ID <= 0");
+                            Toast.makeText(this, "保存失败，请重试", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                } catch (Exception e) {
+                    LogUtils.e(TAG, "数据库操作异常: " + e.getClass().getName() + ": " + e.getMessage());
+                    runOnUiThread(() -> Toast.makeText(this, "数据库操作失败: " + e.getMessage(), Toast.LENGTH_SHORT).show());
                 }
-            } catch (Exception e) {
-                LogUtils.e(TAG, "数据库操作异常: " + e.getClass().getName() + ": " + e.getMessage());
-                Toast.makeText(this, "数据库操作失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-            }
+            });
         } catch (Exception e) {
             LogUtils.e(TAG, "保存交易记录失败：" + e.getClass().getName() + ": " + e.getMessage(), e);
             
@@ -149,15 +149,13 @@ public class LoginActivity extends AppCompatActivity {
                     Constants.PREF_KEY_TOKEN_EXPIRY,
                     loginResponse.getExpiryTime());
             
-            // 保存用户数据到本地数据库
-            if (loginResponse.getUser() != null) {
-                saveUserToLocalDb(loginResponse.getUser());
-                LogUtils.d(TAG, "更新用户信息成功");
-            }
-            
-            // 保存登录历史
-            saveLoginHistory(loginResponse);
-            LogUtils.d(TAG, "记录登录历史成功");
+            // 在数据库线程保存用户数据和登录历史，不等待写入完成就跳转
+            DatabaseManager.getInstance().getExecutor().execute(() -> {
+                if (loginResponse.getUser() != null) {
+                    saveUserToLocalDb(loginResponse.getUser());
+                }
+                saveLoginHistory(loginResponse);
+            });
             
             // 跳转到主页
             LogUtils.d(TAG, "跳转到主页");
@@ -179,7 +177,7 @@ public class LoginActivity extends AppCompatActivity {
     }
     
     /**
-     * 将用户信息保存到本地数据库
+     * 将用户信息保存到本地数据库，在数据库线程调用
      * @param user 用户信息
      */
     private void saveUserToLocalDb(User user) {
@@ -207,7 +205,7 @@ public class LoginActivity extends AppCompatActivity {
     }
     
     /**
-     * 记录登录历史
+     * 记录登录历史，在数据库线程调用
      * @param loginResponse 登录响应
      */
     private void saveLoginHistory(LoginResponse loginResponse) {
@@ -31,6 +31,7 @@ import com.github.mikephil.charting.utils.ColorTemplate;
 import com.zjf.fincialsystem.R;
 import com.zjf.fincialsystem.databinding.ActivityReportBinding;
 import com.zjf.fincialsystem.model.Category;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.repository.RepositoryCallback;
 import com.zjf.fincialsystem.repository.StatisticsRepository;
 import com.zjf.fincialsystem.utils.DateUtils;
@@ -274,9 +275,9 @@ public class ReportActivity extends AppCompatActivity {
                 runOnUiThread(() -> {
                     try {
                         // 获取收入支出数据
-                        double income = statisticsRepository.getDoubleValue(data, "totalIncome", 0.0);
-                        double expense = statisticsRepository.getDoubleValue(data, "totalExpense", 0.0);
-                        double balance = statisticsRepository.getDoubleValue(data, "totalBalance", 0.0);
+                        Money income = statisticsRepository.getMoneyValue(data, "totalIncome");
+                        Money expense = statisticsRepository.getMoneyValue(data, "totalExpense");
+                        Money balance = statisticsRepository.getMoneyValue(data, "totalBalance");
                         
                         // 设置动画过渡
                         animateTextChange(binding.tvIncomeTotal, NumberUtils.formatAmountWithCurrency(income));
@@ -4,8 +4,6 @@ import android.content.Intent;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.view.View;
 import android.view.WindowInsets;
 import android.view.WindowInsetsController;
@@ -17,6 +15,7 @@ import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
 
 import com.zjf.fincialsystem.R;
+import com.zjf.fincialsystem.db.DatabaseManager;
 import com.zjf.fincialsystem.repository.UserRepository;
 import com.zjf.fincialsystem.utils.LogUtils;
 
@@ -27,7 +26,6 @@ import com.zjf.fincialsystem.utils.LogUtils;
 public class SplashActivity extends AppCompatActivity {
     
     private static final String TAG = "SplashActivity";
-    private static final long SPLASH_DELAY = 1500; // 闪屏页显示时间，单位毫秒
     private UserRepository userRepository;
     
     @Override
@@ -42,8 +40,8 @@ public class SplashActivity extends AppCompatActivity {
         // 初始化用户仓库
         userRepository = new UserRepository(this);
         
-        // 使用Handler延迟跳转
-        new Handler(Looper.getMainLooper()).postDelayed(this::navigateToNextScreen, SPLASH_DELAY);
+        // 等待数据库异步打开完成后跳转，不再固定延迟
+        DatabaseManager.getInstance().whenReady(this::navigateToNextScreen);
     }
     
     /**
@@ -86,6 +84,11 @@ public class SplashActivity extends AppCompatActivity {
      * 根据登录状态跳转到相应页面
      */
     private void navigateToNextScreen() {
+        // 等待期间页面可能已被关闭
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        
         // 检查用户是否已登录
         if (userRepository.isLoggedIn()) {
             // 已登录，跳转到主页
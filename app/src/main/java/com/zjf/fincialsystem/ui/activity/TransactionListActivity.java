@@ -3,12 +3,18 @@ package com.zjf.fincialsystem.ui.activity;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.zjf.fincialsystem.R;
 import com.zjf.fincialsystem.databinding.ActivityTransactionListBinding;
@@ -28,11 +34,22 @@ import java.util.List;
 public class TransactionListActivity extends AppCompatActivity {
     
     private static final String TAG = "TransactionListActivity";
+    // 距离列表底部还剩多少条时预加载下一页
+    private static final int PRELOAD_THRESHOLD = 5;
+    // 搜索输入停顿多久后再查询，单位毫秒
+    private static final long SEARCH_DEBOUNCE_MS = 300;
     private ActivityTransactionListBinding binding;
     private TransactionAdapter adapter;
     private androidx.appcompat.widget.Toolbar toolbar;
     private TransactionRepository transactionRepository;
-    private boolean isDataFromCache = false;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = true;
+    // 每次刷新或搜索递增，用于丢弃之前发出的请求结果
+    private int loadGeneration = 0;
+    // 当前搜索文本，为空时显示分页列表
+    private String searchQuery = "";
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::loadData;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,7 +65,7 @@ public class TransactionListActivity extends AppCompatActivity {
         transactionRepository = new TransactionRepository(this);
         
         initViews();
-        loadData();
+        // 数据在onResume中加载
     }
     
     /**
@@ -78,15 +95,52 @@ public class TransactionListActivity extends AppCompatActivity {
         toolbar.setNavigationOnClickListener(v -> finish());
         
         // 设置RecyclerView
-        binding.rvTransactions.setLayoutManager(new LinearLayoutManager(this));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        binding.rvTransactions.setLayoutManager(layoutManager);
         adapter = new TransactionAdapter();
         binding.rvTransactions.setAdapter(adapter);
         
+        // 滚动到接近底部时加载下一页
+        binding.rvTransactions.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) {
+                    return;
+                }
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - PRELOAD_THRESHOLD) {
+                    loadNextPage();
+                }
+            }
+        });
+        
+        // 搜索框输入停顿后再搜索，避免每输入一个字符都查询一次
+        binding.etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                String query = s.toString().trim();
+                if (query.equals(searchQuery)) {
+                    return;
+                }
+                searchQuery = query;
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+            }
+        });
+        
         // 设置点击事件
         adapter.setOnItemClickListener(transaction -> {
             try {
-                // 跳转到交易详情页
-                Intent intent = TransactionDetailActivity.createIntent(this, transaction.getId());
+                // 跳转到交易详情页，详情按服务器ID从接口加载
+                Intent intent = TransactionDetailActivity.createIntent(this, transaction.getRemoteId());
                 startActivity(intent);
             } catch (Exception e) {
                 LogUtils.e(TAG, "跳转到交易详情页失败：" + e.getMessage(), e);
@@ -102,54 +156,139 @@ public class TransactionListActivity extends AppCompatActivity {
     }
     
     /**
-     * 加载数据
+     * 加载数据（从第一页重新加载，有搜索文本时加载搜索结果）
      */
     private void loadData() {
+        searchHandler.removeCallbacks(searchRunnable);
         showLoading(true);
         showError(false);
         showEmptyView(false);
         
-        // 获取交易记录列表
-        transactionRepository.getTransactions(new RepositoryCallback<List<Transaction>>() {
+        loadGeneration++;
+        isLoadingPage = false;
+        if (searchQuery.isEmpty()) {
+            hasMorePages = true;
+            loadPage(true);
+            syncTransactions();
+        } else {
+            // 搜索结果一次返回，不分页
+            hasMorePages = false;
+            loadSearchResult(searchQuery);
+        }
+    }
+    
+    /**
+     * 加载搜索结果（在数据库线程查询全文索引）
+     * @param query 搜索文本
+     */
+    private void loadSearchResult(final String query) {
+        final int generation = loadGeneration;
+        transactionRepository.searchTransactions(query, new RepositoryCallback<List<Transaction>>() {
             @Override
-            public void onSuccess(List<Transaction> transactions) {
-                runOnUiThread(() -> {
-                    // 更新UI
-                    adapter.setData(transactions);
-                    
-                    // 检查是否有数据
-                    if (transactions == null || transactions.isEmpty()) {
-                        showEmptyView(true);
-                    } else {
-                        showEmptyView(false);
-                    }
-                    
-                    // 显示是否来自缓存的提示
-                    if (isDataFromCache) {
-                        Toast.makeText(TransactionListActivity.this, 
-                                "使用缓存数据 - 网络连接不可用", Toast.LENGTH_SHORT).show();
-                    }
-                    
-                    // 隐藏加载中
+            public void onSuccess(List<Transaction> result) {
+                // 页面已销毁或搜索文本已变化，丢弃结果
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                adapter.setData(result);
+                showEmptyView(result.isEmpty());
+                showLoading(false);
+            }
+            
+            @Override
+            public void onError(String error) {
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                LogUtils.e(TAG, "搜索交易记录失败：" + error);
+                showError(true);
+                showLoading(false);
+                binding.tvErrorMessage.setText(error);
+            }
+        });
+    }
+    
+    /**
+     * 从网络同步交易记录到本地数据库，有网络数据写入后从第一页重新加载
+     */
+    private void syncTransactions() {
+        final int generation = loadGeneration;
+        transactionRepository.syncTransactions(new RepositoryCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                // 页面已销毁或已重新刷新，由新的加载处理
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                loadGeneration++;
+                isLoadingPage = false;
+                hasMorePages = true;
+                loadPage(true);
+            }
+            
+            @Override
+            public void onError(String error) {
+                // 同步失败时继续显示本地数据
+                LogUtils.w(TAG, "同步交易记录失败：" + error);
+            }
+        });
+    }
+    
+    /**
+     * 加载下一页
+     */
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMorePages) {
+            return;
+        }
+        loadPage(false);
+    }
+    
+    /**
+     * 加载一页交易记录
+     * @param firstPage 是否为第一页，第一页替换现有数据，其余页追加到末尾
+     */
+    private void loadPage(final boolean firstPage) {
+        isLoadingPage = true;
+        final int generation = loadGeneration;
+        Transaction lastTransaction = firstPage ? null : adapter.getLastItem();
+        
+        transactionRepository.getTransactionPage(lastTransaction, new RepositoryCallback<List<Transaction>>() {
+            @Override
+            public void onSuccess(List<Transaction> page) {
+                // 页面已销毁或已重新刷新，丢弃结果
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                hasMorePages = page.size() >= TransactionRepository.PAGE_SIZE;
+                
+                if (firstPage) {
+                    adapter.setData(page);
+                    showEmptyView(page.isEmpty());
                     showLoading(false);
-                });
+                } else {
+                    adapter.appendData(page);
+                }
             }
 
             @Override
             public void onError(String error) {
-                runOnUiThread(() -> {
-                    LogUtils.e(TAG, "加载交易记录失败：" + error);
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                LogUtils.e(TAG, "加载交易记录失败：" + error);
+                
+                if (firstPage) {
                     showError(true);
                     showLoading(false);
                     
                     // 显示错误提示
                     binding.tvErrorMessage.setText(error);
-                });
-            }
-            
-            @Override
-            public void isCacheData(boolean isCache) {
-                isDataFromCache = isCache;
+                } else {
+                    Toast.makeText(TransactionListActivity.this, error, Toast.LENGTH_SHORT).show();
+                }
             }
         });
     }
@@ -183,7 +322,7 @@ public class TransactionListActivity extends AppCompatActivity {
      * 删除交易记录
      */
     private void deleteTransaction(Transaction transaction) {
-        transactionRepository.deleteTransaction(transaction.getId(), new RepositoryCallback<Boolean>() {
+        transactionRepository.deleteTransaction(transaction.getRemoteId(), new RepositoryCallback<Boolean>() {
             @Override
             public void onSuccess(Boolean result) {
                 runOnUiThread(() -> {
@@ -214,6 +353,7 @@ public class TransactionListActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
         binding = null;
     }
 } 
\ No newline at end of file
@@ -193,8 +193,8 @@ public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetView
             }
 
             // 设置金额
-            tvUsedAmount.setText(NumberUtils.formatAmountWithCurrency(budget.getUsedAmount()));
-            tvBudgetAmount.setText(NumberUtils.formatAmountWithCurrency(budget.getAmount()));
+            tvUsedAmount.setText(NumberUtils.formatAmountWithCurrency(budget.getUsedMoney()));
+            tvBudgetAmount.setText(NumberUtils.formatAmountWithCurrency(budget.getMoney()));
 
             // 设置进度条
             int progress = budget.getUsedPercentage();
@@ -37,10 +37,31 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
     }
     
     public void setData(List<Transaction> transactions) {
-        this.transactions = transactions != null ? transactions : new ArrayList<>();
+        this.transactions = transactions != null ? new ArrayList<>(transactions) : new ArrayList<>();
         notifyDataSetChanged();
     }
     
+    /**
+     * 追加一页数据，只刷新新增的条目
+     * @param page 新的一页数据
+     */
+    public void appendData(List<Transaction> page) {
+        if (page == null || page.isEmpty()) {
+            return;
+        }
+        int start = transactions.size();
+        transactions.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+    
+    /**
+     * 获取最后一条数据，用作下一页的分页游标
+     * @return 最后一条交易记录，没有数据时返回null
+     */
+    public Transaction getLastItem() {
+        return transactions.isEmpty() ? null : transactions.get(transactions.size() - 1);
+    }
+    
     public void setOnItemClickListener(OnItemClickListener listener) {
         this.listener = listener;
     }
@@ -93,10 +114,10 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
             String amountText;
             int amountColor;
             if (transaction.getType() == Transaction.TYPE_EXPENSE) {
-                amountText = "-" + NumberUtils.formatAmount(transaction.getAmount());
+                amountText = "-" + NumberUtils.formatAmount(transaction.getMoney());
                 amountColor = ContextCompat.getColor(context, R.color.expense);
             } else {
-                amountText = "+" + NumberUtils.formatAmount(transaction.getAmount());
+                amountText = "+" + NumberUtils.formatAmount(transaction.getMoney());
                 amountColor = ContextCompat.getColor(context, R.color.income);
             }
             tvAmount.setText(amountText);
@@ -202,8 +202,8 @@ public class BudgetFragment extends Fragment implements BudgetAdapter.OnBudgetCl
             // 显示加载中
             showLoading();
             
-            // 获取月度预算数据
-            budgetRepository.getBudgets(Budget.PERIOD_MONTHLY, new RepositoryCallback<List<Budget>>() {
+            // 获取当前月份的月度预算及使用情况
+            budgetRepository.getBudgetUsage(Budget.PERIOD_MONTHLY, currentDate.getTime(), new RepositoryCallback<List<Budget>>() {
                 @Override
                 public void onSuccess(List<Budget> data) {
                     if (getActivity() == null || !isAdded()) {
@@ -254,8 +254,8 @@ public class BudgetFragment extends Fragment implements BudgetAdapter.OnBudgetCl
                 showLoading();
             }
             
-            // 获取月度预算数据
-            budgetRepository.getBudgets(Budget.PERIOD_MONTHLY, new RepositoryCallback<List<Budget>>() {
+            // 获取当前月份的月度预算及使用情况
+            budgetRepository.getBudgetUsage(Budget.PERIOD_MONTHLY, currentDate.getTime(), new RepositoryCallback<List<Budget>>() {
                 @Override
                 public void onSuccess(List<Budget> data) {
                     if (getActivity() == null || !isAdded()) {
@@ -24,6 +24,7 @@ import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.zjf.fincialsystem.R;
 import com.zjf.fincialsystem.databinding.FragmentDashboardBinding;
+import com.zjf.fincialsystem.model.Money;
 import com.zjf.fincialsystem.model.Transaction;
 import com.zjf.fincialsystem.model.User;
 import com.zjf.fincialsystem.repository.RepositoryCallback;
@@ -391,27 +392,27 @@ public class DashboardFragment extends Fragment {
                     requireActivity().runOnUiThread(() -> {
                         try {
                             // 设置数据
-                            double income = 0.0;
-                            double expense = 0.0;
-                            double balance = 0.0;
+                            Money income = Money.ZERO;
+                            Money expense = Money.ZERO;
+                            Money balance = Money.ZERO;
                             
                             // 使用安全类型转换方法获取数据
                             if (data.containsKey("totalIncome")) {
-                                income = NumberUtils.toDouble(data.get("totalIncome"), 0.0);
+                                income = NumberUtils.toMoney(data.get("totalIncome"));
                                 LogUtils.d(TAG, "收入: " + income + ", 数据类型: " + (data.get("totalIncome") != null ? data.get("totalIncome").getClass().getName() : "null"));
                             } else {
                                 LogUtils.w(TAG, "返回数据中没有totalIncome字段");
                             }
                             
                             if (data.containsKey("totalExpense")) {
-                                expense = NumberUtils.toDouble(data.get("totalExpense"), 0.0);
+                                expense = NumberUtils.toMoney(data.get("totalExpense"));
                                 LogUtils.d(TAG, "支出: " + expense + ", 数据类型: " + (data.get("totalExpense") != null ? data.get("totalExpense").getClass().getName() : "null"));
                             } else {
                                 LogUtils.w(TAG, "返回数据中没有totalExpense字段");
                             }
                             
                             if (data.containsKey("totalBalance")) {
-                                balance = NumberUtils.toDouble(data.get("totalBalance"), 0.0);
+                                balance = NumberUtils.toMoney(data.get("totalBalance"));
                                 LogUtils.d(TAG, "余额: " + balance + ", 数据类型: " + (data.get("totalBalance") != null ? data.get("totalBalance").getClass().getName() : "null"));
                             } else {
                                 LogUtils.w(TAG, "返回数据中没有totalBalance字段");
@@ -423,8 +424,8 @@ public class DashboardFragment extends Fragment {
                             binding.tvBalance.setText(NumberUtils.formatAmountWithCurrency(balance));
                             
                             // 设置进度条
-                            if (income > 0) {
-                                int progress = (int) (expense * 100 / income);
+                            if (income.isPositive()) {
+                                int progress = (int) (expense.getCents() * 100 / income.getCents());
                                 binding.progressBarExpense.setProgress(progress);
                                 // 设置支出占收入比例文本
                                 binding.tvExpensePercentage.setText(getString(R.string.expense_percentage, progress));
@@ -10,13 +10,15 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.zjf.fincialsystem.R;
 import com.zjf.fincialsystem.databinding.FragmentNotificationBinding;
 import com.zjf.fincialsystem.model.Notification;
 import com.zjf.fincialsystem.db.dao.NotificationDao;
-import com.zjf.fincialsystem.db.DatabaseManager;
+import com.zjf.fincialsystem.repository.NotificationRepository;
+import com.zjf.fincialsystem.repository.RepositoryCallback;
 import com.zjf.fincialsystem.ui.adapter.NotificationAdapter;
 import com.zjf.fincialsystem.utils.LogUtils;
 import com.zjf.fincialsystem.utils.StatusBarUtils;
@@ -32,10 +34,16 @@ import java.util.List;
 public class NotificationFragment extends Fragment {
 
     private static final String TAG = "NotificationFragment";
+    // 距离列表底部还剩多少条时预加载下一页
+    private static final int PRELOAD_THRESHOLD = 5;
     private FragmentNotificationBinding binding;
     private NotificationAdapter adapter;
     private List<Notification> notifications = new ArrayList<>();
-    private NotificationDao notificationDao;
+    private NotificationRepository notificationRepository;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = true;
+    // 每次刷新递增，用于丢弃之前发出的请求结果
+    private int loadGeneration = 0;
 
     @Nullable
     @Override
@@ -49,8 +57,8 @@ public class NotificationFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         
-        // 初始化DAO
-        notificationDao = DatabaseManager.getInstance().getNotificationDao();
+        // 初始化数据仓库
+        notificationRepository = new NotificationRepository();
         
         // 设置沉浸式状态栏
         setupStatusBar();
@@ -80,10 +88,25 @@ public class NotificationFragment extends Fragment {
     private void initViews() {
         try {
             // 设置RecyclerView
-            binding.recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
+            final LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
+            binding.recyclerView.setLayoutManager(layoutManager);
             adapter = new NotificationAdapter(notifications);
             binding.recyclerView.setAdapter(adapter);
             
+            // 滚动到接近底部时加载下一页
+            binding.recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    if (dy <= 0) {
+                        return;
+                    }
+                    int lastVisible = layoutManager.findLastVisibleItemPosition();
+                    if (lastVisible >= adapter.getItemCount() - PRELOAD_THRESHOLD) {
+                        loadNextPage();
+                    }
+                }
+            });
+            
             // 设置下拉刷新
             binding.swipeRefreshLayout.setOnRefreshListener(this::loadNotifications);
             binding.swipeRefreshLayout.setColorSchemeResources(
@@ -112,21 +135,26 @@ public class NotificationFragment extends Fragment {
     }
     
     /**
-     * 创建测试通知
+     * 创建测试通知（在数据库线程执行，排在首次加载之前）
      */
     private void createTestNotifications() {
+        // 获取当前用户ID
+        final long userId = TokenManager.getInstance().getUserId();
+        if (userId <= 0) {
+            LogUtils.e(TAG, "用户ID无效: " + userId);
+            return;
+        }
+        notificationRepository.runInBackground(notificationDao -> insertTestNotifications(notificationDao, userId));
+    }
+    
+    /**
+     * 插入测试通知，已有通知时不再创建
+     */
+    private static void insertTestNotifications(NotificationDao notificationDao, long userId) {
         try {
-            // 获取当前用户ID
-            long userId = TokenManager.getInstance().getUserId();
-            if (userId <= 0) {
-                LogUtils.e(TAG, "用户ID无效: " + userId);
-                return;
-            }
-            
             // 查询是否已有通知数据
-            List<Notification> existingNotifications = notificationDao.queryByUserId(userId);
-            if (existingNotifications != null && !existingNotifications.isEmpty()) {
-                LogUtils.d(TAG, "已有" + existingNotifications.size() + "条通知数据，不再创建测试数据");
+            if (!notificationDao.queryRecentByUserId(userId, 1).isEmpty()) {
+                LogUtils.d(TAG, "已有通知数据，不再创建测试数据");
                 return;
             }
             
@@ -192,78 +220,119 @@ public class NotificationFragment extends Fragment {
     }
     
     /**
-     * 加载通知数据
+     * 加载通知数据（从第一页重新加载）
      */
     private void loadNotifications() {
-        try {
-            // 显示加载中
-            binding.swipeRefreshLayout.setRefreshing(true);
-            
-            // 获取当前用户ID
-            long userId = TokenManager.getInstance().getUserId();
-            if (userId <= 0) {
-                LogUtils.e(TAG, "用户ID无效: " + userId);
-                updateEmptyState();
-                binding.swipeRefreshLayout.setRefreshing(false);
-                return;
-            }
-            
-            // 从数据库加载通知
-            List<Notification> notificationList = notificationDao.queryByUserId(userId);
-            
-            // 更新UI
-            getActivity().runOnUiThread(() -> {
-                notifications.clear();
-                if (notificationList != null && !notificationList.isEmpty()) {
-                    notifications.addAll(notificationList);
+        if (binding == null) {
+            return;
+        }
+        // 显示加载中
+        binding.swipeRefreshLayout.setRefreshing(true);
+        
+        // 获取当前用户ID
+        long userId = TokenManager.getInstance().getUserId();
+        if (userId <= 0) {
+            LogUtils.e(TAG, "用户ID无效: " + userId);
+            updateEmptyState();
+            binding.swipeRefreshLayout.setRefreshing(false);
+            return;
+        }
+        
+        loadGeneration++;
+        hasMorePages = true;
+        loadPage(true);
+    }
+    
+    /**
+     * 加载下一页
+     */
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMorePages) {
+            return;
+        }
+        loadPage(false);
+    }
+    
+    /**
+     * 加载一页通知
+     * @param firstPage 是否为第一页，第一页替换现有数据，其余页追加到末尾
+     */
+    private void loadPage(final boolean firstPage) {
+        isLoadingPage = true;
+        final int generation = loadGeneration;
+        Notification lastNotification = firstPage || notifications.isEmpty() ? null : notifications.get(notifications.size() - 1);
+        
+        notificationRepository.getNotificationPage(lastNotification, new RepositoryCallback<List<Notification>>() {
+            @Override
+            public void onSuccess(List<Notification> page) {
+                // 页面已销毁或已重新刷新，丢弃结果
+                if (binding == null || generation != loadGeneration) {
+                    return;
                 }
-                adapter.notifyDataSetChanged();
-                
-                // 更新空状态
-                updateEmptyState();
-                
-                // 隐藏加载中
-                binding.swipeRefreshLayout.setRefreshing(false);
+                isLoadingPage = false;
+                hasMorePages = page.size() >= NotificationRepository.PAGE_SIZE;
                 
+                if (firstPage) {
+                    notifications.clear();
+                    notifications.addAll(page);
+                    adapter.notifyDataSetChanged();
+                    updateEmptyState();
+                    binding.swipeRefreshLayout.setRefreshing(false);
+                } else if (!page.isEmpty()) {
+                    int start = notifications.size();
+                    notifications.addAll(page);
+                    adapter.notifyItemRangeInserted(start, page.size());
+                }
                 LogUtils.d(TAG, "加载了 " + notifications.size() + " 条通知");
-            });
+            }
             
-        } catch (Exception e) {
-            LogUtils.e(TAG, "加载通知失败: " + e.getMessage(), e);
-            if (getActivity() != null) {
-                getActivity().runOnUiThread(() -> {
+            @Override
+            public void onError(String error) {
+                if (binding == null || generation != loadGeneration) {
+                    return;
+                }
+                isLoadingPage = false;
+                LogUtils.e(TAG, "加载通知失败: " + error);
+                if (firstPage) {
                     binding.swipeRefreshLayout.setRefreshing(false);
                     updateEmptyState();
-                    Toast.makeText(getContext(), R.string.data_load_failed, Toast.LENGTH_SHORT).show();
-                });
+                }
+                Toast.makeText(getContext(), R.string.data_load_failed, Toast.LENGTH_SHORT).show();
             }
-        }
+        });
     }
     
     /**
      * 标记通知为已读
      */
-    private void markAsRead(Notification notification) {
-        try {
-            if (notification == null || notification.isRead()) {
-                return;
+    private void markAsRead(final Notification notification) {
+        if (notification == null || notification.isRead()) {
+            return;
+        }
+        
+        // 先更新界面，写入失败时恢复
+        notification.setRead(true);
+        adapter.notifyDataSetChanged();
+        
+        notificationRepository.markAsRead(notification.getId(), new RepositoryCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean success) {
+                if (success) {
+                    LogUtils.d(TAG, "通知已标记为已读: " + notification.getId());
+                } else {
+                    onError("标记通知为已读失败");
+                }
             }
             
-            // 更新通知状态
-            notification.setRead(true);
-            boolean success = notificationDao.update(notification);
-            
-            if (success) {
-                // 刷新列表
-                adapter.notifyDataSetChanged();
-                LogUtils.d(TAG, "通知已标记为已读: " + notification.getId());
-            } else {
-                LogUtils.e(TAG, "标记通知为已读失败");
+            @Override
+            public void onError(String error) {
+                LogUtils.e(TAG, error);
+                notification.setRead(false);
+                if (binding != null) {
+                    adapter.notifyDataSetChanged();
+                }
             }
-            
-        } catch (Exception e) {
-            LogUtils.e(TAG, "标记通知为已读失败: " + e.getMessage(), e);
-        }
+        });
     }
     
     /**
@@ -305,36 +374,46 @@ public class NotificationFragment extends Fragment {
      * 清除所有通知
      */
     private void clearAllNotifications() {
-        try {
-            // 获取当前用户ID
-            long userId = TokenManager.getInstance().getUserId();
-            if (userId <= 0) {
-                LogUtils.e(TAG, "用户ID无效: " + userId);
-                return;
+        // 获取当前用户ID
+        long userId = TokenManager.getInstance().getUserId();
+        if (userId <= 0) {
+            LogUtils.e(TAG, "用户ID无效: " + userId);
+            return;
+        }
+        
+        // 清除当前用户的所有通知
+        notificationRepository.clearAll(new RepositoryCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean success) {
+                if (binding == null) {
+                    return;
+                }
+                if (success) {
+                    // 刷新数据，丢弃还在进行中的分页请求
+                    loadGeneration++;
+                    isLoadingPage = false;
+                    hasMorePages = false;
+                    notifications.clear();
+                    adapter.notifyDataSetChanged();
+                    
+                    // 更新空状态
+                    updateEmptyState();
+                    
+                    Toast.makeText(getContext(), "通知已清空", Toast.LENGTH_SHORT).show();
+                    LogUtils.d(TAG, "清空用户通知: " + userId);
+                } else {
+                    onError("清空通知失败");
+                }
             }
             
-            // 清除当前用户的所有通知
-            boolean success = notificationDao.deleteByUserId(userId);
-            
-            if (success) {
-                // 刷新数据
-                notifications.clear();
-                adapter.notifyDataSetChanged();
-                
-                // 更新空状态
-                updateEmptyState();
-                
-                Toast.makeText(getContext(), "通知已清空", Toast.LENGTH_SHORT).show();
-                LogUtils.d(TAG, "清空用户通知: " + userId);
-            } else {
-                Toast.makeText(getContext(), R.string.operation_failed, Toast.LENGTH_SHORT).show();
-                LogUtils.e(TAG, "清空通知失败");
+            @Override
+            public void onError(String error) {
+                LogUtils.e(TAG, error);
+                if (binding != null) {
+                    Toast.makeText(getContext(), R.string.operation_failed, Toast.LENGTH_SHORT).show();
+                }
             }
-            
-        } catch (Exception e) {
-            LogUtils.e(TAG, "清空通知失败: " + e.getMessage(), e);
-            Toast.makeText(getContext(), R.string.operation_failed, Toast.LENGTH_SHORT).show();
-        }
+        });
     }
     
     /**
@@ -1,5 +1,7 @@
 package com.zjf.fincialsystem.utils;
 
+import com.zjf.fincialsystem.model.Money;
+
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Locale;
@@ -18,7 +20,24 @@ public class NumberUtils {
      * @return 格式化后的金额字符串，例如：1,234.56
      */
     public static String formatAmount(double amount) {
-        return AMOUNT_FORMATTER.format(amount);
+        synchronized (AMOUNT_FORMATTER) {
+            return AMOUNT_FORMATTER.format(amount);
+        }
+    }
+    
+    /**
+     * 格式化金额
+     * 直接使用十进制值格式化，不经过double转换
+     * @param amount 金额
+     * @return 格式化后的金额字符串，例如：1,234.56
+     */
+    public static String formatAmount(Money amount) {
+        if (amount == null) {
+            return formatAmount(0.0);
+        }
+        synchronized (AMOUNT_FORMATTER) {
+            return AMOUNT_FORMATTER.format(amount.toBigDecimal());
+        }
     }
     
     /**
@@ -30,6 +49,36 @@ public class NumberUtils {
         return String.format(Locale.getDefault(), "¥%s", formatAmount(amount));
     }
     
+    /**
+     * 格式化金额并添加货币符号
+     * @param amount 金额
+     * @return 格式化后的金额字符串，例如：¥1,234.56
+     */
+    public static String formatAmountWithCurrency(Money amount) {
+        return String.format(Locale.getDefault(), "¥%s", formatAmount(amount));
+    }
+    
+    /**
+     * 将Object转换为金额
+     * @param value 对象值（接口返回的数字或字符串，单位：元）
+     * @return 金额，无法转换时返回0
+     */
+    public static Money toMoney(Object value) {
+        if (value instanceof Money) {
+            return (Money) value;
+        }
+        if (value instanceof String) {
+            String str = ((String) value).replace(",", "").trim();
+            try {
+                return str.isEmpty() ? Money.ZERO : Money.of(new java.math.BigDecimal(str));
+            } catch (Exception e) {
+                LogUtils.e("NumberUtils", "转换金额失败: " + value, e);
+                return Money.ZERO;
+            }
+        }
+        return Money.of(toDouble(value, 0.0));
+    }
+    
     /**
      * 将Object转换为double
      * @param value 对象值
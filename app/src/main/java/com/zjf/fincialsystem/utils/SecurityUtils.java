@@ -30,6 +30,8 @@ public class SecurityUtils {
     
     private static final String TAG = "SecurityUtils";
     private static final String KEY_DATABASE_KEY = "key_database_key";
+    private static final String KEY_DATABASE_RAW_KEY_ENABLED = "key_database_raw_key_enabled";
+    private static final int DATABASE_KEY_BYTES = 32;
     private static final String SALT = "FinanceApp_Salt_2023";
     private static final String PREFS_NAME = "finance_security_prefs";
     
@@ -70,6 +72,50 @@ public class SecurityUtils {
         return key;
     }
     
+    /**
+     * 获取数据库原始密钥（SQLCipher的x'...'十六进制格式）
+     * 随机生成的密钥本身就是32字节高熵数据，直接作为原始密钥使用可以跳过每次打开时的PBKDF2密钥派生
+     * @return 原始密钥，密钥不是32字节随机数据（如使用了默认密钥）时返回null
+     */
+    public static String getRawDatabaseKey() {
+        try {
+            byte[] keyBytes = Base64.decode(getDatabaseKey(), Base64.NO_WRAP);
+            if (keyBytes.length != DATABASE_KEY_BYTES) {
+                return null;
+            }
+            StringBuilder hex = new StringBuilder(DATABASE_KEY_BYTES * 2 + 3);
+            hex.append("x'");
+            for (byte b : keyBytes) {
+                hex.append(String.format("%02X", b & 0xFF));
+            }
+            hex.append('\'');
+            return hex.toString();
+        } catch (Exception e) {
+            LogUtils.e(TAG, "生成数据库原始密钥失败：" + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 数据库是否已迁移为原始密钥
+     * @return 是否使用原始密钥
+     */
+    public static boolean isRawDatabaseKeyEnabled() {
+        Context context = FinanceApplication.getAppContext();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getBoolean(KEY_DATABASE_RAW_KEY_ENABLED, false);
+    }
+    
+    /**
+     * 记录数据库是否使用原始密钥，迁移完成后立即提交
+     * @param enabled 是否使用原始密钥
+     */
+    public static void setRawDatabaseKeyEnabled(boolean enabled) {
+        Context context = FinanceApplication.getAppContext();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putBoolean(KEY_DATABASE_RAW_KEY_ENABLED, enabled).commit();
+    }
+    
     /**
      * 生成随机密钥
      * @return 随机密钥
@@ -0,0 +1,128 @@
+package com.zjf.fincialsystem.db;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * 文件缓存存储测试
+ */
+public class CacheFileStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("cache");
+    }
+
+    @Test
+    public void putAndGet_survivesReopen() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.put("statistics", "{\"total\":1}");
+        assertEquals("{\"total\":1}", store.get("statistics"));
+        store.flush();
+
+        CacheFileStore reopened = new CacheFileStore(directory);
+        assertEquals("{\"total\":1}", reopened.get("statistics"));
+        assertTrue(reopened.getTimestamp("statistics") > 0);
+    }
+
+    @Test
+    public void readJournal_dropsTornTailAndTruncates() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.append("transactions", "a");
+        store.append("transactions", "bc");
+        store.flush();
+
+        // 模拟追加中途进程退出：长度写了100，内容只写了3个字节
+        File journal = new File(directory, "transactions.journal");
+        long validSize = journal.length();
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(ByteBuffer.allocate(4).putInt(100).array());
+            out.write("xyz".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CacheFileStore reopened = new CacheFileStore(directory);
+        assertEquals(Arrays.asList("a", "bc"), reopened.readJournal("transactions"));
+        assertEquals(validSize, journal.length());
+
+        // 截断后可以继续追加
+        reopened.append("transactions", "d");
+        reopened.flush();
+        assertEquals(Arrays.asList("a", "bc", "d"), reopened.readJournal("transactions"));
+    }
+
+    @Test
+    public void readJournal_dropsPartialLength() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.append("transactions", "a");
+        store.flush();
+
+        File journal = new File(directory, "transactions.journal");
+        long validSize = journal.length();
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[]{0, 0});
+        }
+
+        assertEquals(Collections.singletonList("a"), store.readJournal("transactions"));
+        assertEquals(validSize, journal.length());
+    }
+
+    @Test
+    public void append_keepsSnapshotTimestamp() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.put("transactions", "snapshot");
+        store.flush();
+        long timestamp = store.getTimestamp("transactions");
+
+        Thread.sleep(20);
+        store.append("transactions", "a");
+        store.flush();
+
+        // 追加变更记录不改变快照的写入时间
+        assertEquals(timestamp, store.getTimestamp("transactions"));
+        assertEquals(timestamp, new CacheFileStore(directory).getTimestamp("transactions"));
+    }
+
+    @Test
+    public void put_clearsJournal() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.append("transactions", "a");
+        store.put("transactions", "snapshot");
+        store.flush();
+
+        assertTrue(store.readJournal("transactions").isEmpty());
+        assertFalse(new File(directory, "transactions.journal").exists());
+        assertEquals("snapshot", new CacheFileStore(directory).get("transactions"));
+    }
+
+    @Test
+    public void remove_deletesSnapshotAndJournal() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        store.put("transactions", "snapshot");
+        store.flush();
+        store.append("transactions", "a");
+        store.remove("transactions");
+        assertNull(store.get("transactions"));
+        store.flush();
+
+        CacheFileStore reopened = new CacheFileStore(directory);
+        assertNull(reopened.get("transactions"));
+        assertTrue(reopened.readJournal("transactions").isEmpty());
+        assertEquals(0, reopened.getTimestamp("transactions"));
+    }
+}
@@ -0,0 +1,251 @@
+package com.zjf.fincialsystem.db;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.zjf.fincialsystem.model.Money;
+import com.zjf.fincialsystem.model.Transaction;
+import com.zjf.fincialsystem.network.MoneyTypeAdapter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 数据缓存保存、加载耗时对比：旧版整个SharedPreferences XML与CacheFileStore，交易记录1千、1万、10万条
+ * 耗时较长，默认跳过，使用 ./gradlew testDebugUnitTest -Pbenchmark 运行，结果打印到标准输出。
+ * 保存、加载只计存储层的耗时，不含把交易列表序列化为JSON；
+ * 修改一条交易的耗时包含序列化：旧版要重新序列化整个列表，新版只序列化这一条变更记录
+ */
+public class DataCacheBenchmarkTest {
+
+    private static final String KEY = "transactions";
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Money.class, new MoneyTypeAdapter())
+            .create();
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void saveAndLoad_comparedWithSharedPreferences() throws Exception {
+        System.out.println("条数\t旧版保存\t旧版加载\t新版保存\t新版加载\t旧版改一条\t新版改一条 (中位数, ms)");
+        for (int size : SIZES) {
+            List<Transaction> transactions = transactions(size);
+            String json = gson.toJson(transactions);
+            Map<String, String> others = otherEntries();
+
+            // 旧版：所有键在同一个XML里，每次保存重写整个文件，首次读取解析整个文件
+            File prefsFile = new File(folder.newFolder(), "fincialsystem_data_cache.xml");
+            LegacyPreferences prefs = new LegacyPreferences(prefsFile);
+            for (Map.Entry<String, String> entry : others.entrySet()) {
+                prefs.putString(entry.getKey(), entry.getValue());
+            }
+            prefs.commit();
+            long[] legacySave = new long[ROUNDS];
+            long[] legacyLoad = new long[ROUNDS];
+            long[] legacyUpdate = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                prefs.putString(KEY, json);
+                prefs.commit();
+                legacySave[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                String loaded = LegacyPreferences.load(prefsFile).getString(KEY);
+                legacyLoad[i] = System.nanoTime() - start;
+                assertEquals(json, loaded);
+
+                // 旧版修改一条交易也要重新序列化并写入整个列表
+                Transaction changed = transactions.get(i);
+                changed.setUpdatedAt(changed.getUpdatedAt() + 1);
+                start = System.nanoTime();
+                prefs.putString(KEY, gson.toJson(transactions));
+                prefs.commit();
+                legacyUpdate[i] = System.nanoTime() - start;
+            }
+
+            // 新版：每个键一个文件，交易记录修改一条只追加一条变更记录
+            File directory = folder.newFolder();
+            CacheFileStore store = new CacheFileStore(directory);
+            for (Map.Entry<String, String> entry : others.entrySet()) {
+                store.put(entry.getKey(), entry.getValue());
+            }
+            store.flush();
+            long[] storeSave = new long[ROUNDS];
+            long[] storeLoad = new long[ROUNDS];
+            long[] storeUpdate = new long[ROUNDS];
+            TransactionCache cache = new TransactionCache(store, gson, KEY);
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                store.put(KEY, json);
+                store.flush();
+                storeSave[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                String loaded = new CacheFileStore(directory).get(KEY);
+                storeLoad[i] = System.nanoTime() - start;
+                assertEquals(json, loaded);
+            }
+            cache.merge(transactions);
+            store.flush();
+            for (int i = 0; i < ROUNDS; i++) {
+                Transaction changed = transactions.get(i);
+                changed.setUpdatedAt(changed.getUpdatedAt() + 1);
+                long start = System.nanoTime();
+                cache.put(changed);
+                store.flush();
+                storeUpdate[i] = System.nanoTime() - start;
+            }
+
+            System.out.println(size + "\t" + millis(legacySave) + "\t" + millis(legacyLoad)
+                    + "\t" + millis(storeSave) + "\t" + millis(storeLoad)
+                    + "\t" + millis(legacyUpdate) + "\t" + millis(storeUpdate));
+        }
+    }
+
+    private static List<Transaction> transactions(int size) {
+        List<Transaction> transactions = new ArrayList<>(size);
+        long time = 1_600_000_000_000L;
+        for (int i = 1; i <= size; i++) {
+            Transaction transaction = new Transaction(i, 1, i % 11 + 1, Transaction.TYPE_EXPENSE,
+                    i % 500 + 0.25, new Date(time + i * 60_000L), "午餐" + i);
+            transaction.setNote("备注" + i);
+            transaction.setUpdatedAt(time + i);
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    /**
+     * 与交易记录一起缓存的其他键：分类、预算和几份统计
+     */
+    private Map<String, String> otherEntries() {
+        Map<String, String> entries = new HashMap<>();
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", i);
+            item.put("name", "分类" + i);
+            item.put("amount", i * 100.5);
+            list.add(item);
+        }
+        entries.put("categories", gson.toJson(list));
+        entries.put("budgets", gson.toJson(list));
+        for (String period : Arrays.asList("daily", "weekly", "monthly", "yearly")) {
+            entries.put("overview_" + period, gson.toJson(list));
+        }
+        return entries;
+    }
+
+    private static String millis(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("%.2f", sorted[sorted.length / 2] / 1_000_000.0);
+    }
+
+    /**
+     * 按SharedPreferencesImpl的方式读写：内存中保存所有键，提交时把整个map写成XML，
+     * 先把旧文件改名为备份，写完同步到磁盘后删除备份；加载时解析整个文件
+     */
+    private static class LegacyPreferences {
+        private final File file;
+        private final File backup;
+        private final Map<String, String> map = new HashMap<>();
+
+        LegacyPreferences(File file) {
+            this.file = file;
+            this.backup = new File(file.getPath() + ".bak");
+        }
+
+        static LegacyPreferences load(File file) throws Exception {
+            LegacyPreferences prefs = new LegacyPreferences(file);
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), 16 * 1024)) {
+                XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8");
+                String name = null;
+                StringBuilder text = new StringBuilder();
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && "string".equals(reader.getLocalName())) {
+                        name = reader.getAttributeValue(null, "name");
+                        text.setLength(0);
+                    } else if (event == XMLStreamConstants.CHARACTERS && name != null) {
+                        text.append(reader.getText());
+                    } else if (event == XMLStreamConstants.END_ELEMENT && name != null) {
+                        prefs.map.put(name, text.toString());
+                        name = null;
+                    }
+                }
+                reader.close();
+            }
+            return prefs;
+        }
+
+        void putString(String key, String value) {
+            map.put(key, value);
+        }
+
+        String getString(String key) {
+            return map.get(key);
+        }
+
+        void commit() throws Exception {
+            if (file.exists() && !backup.exists() && !file.renameTo(backup)) {
+                throw new IllegalStateException("备份失败");
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 16 * 1024);
+                writeXml(buffered);
+                buffered.flush();
+                out.getFD().sync();
+            }
+            backup.delete();
+        }
+
+        private void writeXml(OutputStream out) throws Exception {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("map");
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writer.writeStartElement("string");
+                writer.writeAttribute("name", entry.getKey());
+                writer.writeCharacters(entry.getValue());
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        }
+    }
+}
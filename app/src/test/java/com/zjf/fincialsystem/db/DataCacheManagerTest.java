@@ -0,0 +1,78 @@
+package com.zjf.fincialsystem.db;
+
+import com.zjf.fincialsystem.model.Transaction;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据缓存管理器测试
+ */
+public class DataCacheManagerTest {
+
+    private static final String KEY = "transactions";
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("cache");
+    }
+
+    @Test
+    public void localPut_keepsStaleTransactionsStale() throws Exception {
+        // 3小时前从网络刷新过，超过2小时的缓存时长
+        CacheFileStore store = new CacheFileStore(directory);
+        store.append(KEY, "{\"put\":[],\"delete\":[],\"refreshedAt\":" + (System.currentTimeMillis() - 3 * HOUR) + "}");
+        store.flush();
+
+        DataCacheManager manager = new DataCacheManager(new CacheFileStore(directory));
+        assertEquals(DataCacheManager.Freshness.STALE, manager.getFreshness(KEY));
+
+        // 本地新增、删除不能让过期的交易记录变为新鲜
+        manager.putTransaction(transaction(1, 1000));
+        manager.removeTransaction(1);
+        manager.putTransaction(transaction(2, 2000));
+        assertEquals(DataCacheManager.Freshness.STALE, manager.getFreshness(KEY));
+        assertFalse(manager.isCacheValid(KEY));
+
+        CacheFileStore reopenedStore = new CacheFileStore(directory);
+        DataCacheManager reopened = new DataCacheManager(reopenedStore);
+        assertEquals(DataCacheManager.Freshness.STALE, reopened.getFreshness(KEY));
+
+        // 网络刷新后才是新鲜的
+        List<Transaction> latest = new ArrayList<>();
+        latest.add(transaction(2, 2000));
+        reopened.saveTransactions(latest);
+        assertEquals(DataCacheManager.Freshness.FRESH, reopened.getFreshness(KEY));
+    }
+
+    @Test
+    public void localPutWithoutRefresh_isExpired() {
+        DataCacheManager manager = new DataCacheManager(new CacheFileStore(directory));
+        manager.putTransaction(transaction(1, 1000));
+
+        // 只有本地变更、从未刷新过的缓存不可用
+        assertEquals(DataCacheManager.Freshness.EXPIRED, manager.getFreshness(KEY));
+        assertEquals(1, manager.getTransactions().size());
+    }
+
+    private static Transaction transaction(long id, long time) {
+        Transaction transaction = new Transaction(id, 1, 10, Transaction.TYPE_EXPENSE, 12.5, new Date(time), "午餐" + id);
+        transaction.setUpdatedAt(time);
+        return transaction;
+    }
+}
@@ -0,0 +1,100 @@
+package com.zjf.fincialsystem.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 内存缓存测试
+ */
+public class MemoryCacheTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Test
+    public void overMaxSize_evictsLeastRecentlyUsed() {
+        MemoryCache cache = new MemoryCache(30);
+        cache.put("a", "A", 10, NEVER);
+        cache.put("b", "B", 10, NEVER);
+        cache.put("c", "C", 10, NEVER);
+
+        // 访问a后，最久未访问的是b
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D", 10, NEVER);
+
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+        MemoryCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.evictionCount);
+        assertEquals(30, stats.size);
+    }
+
+    @Test
+    public void entryLargerThanMaxSize_isNotCached() {
+        MemoryCache cache = new MemoryCache(10);
+        cache.put("a", "A", 5, NEVER);
+        cache.put("big", "BIG", 11, NEVER);
+
+        assertNull(cache.get("big"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(0, cache.getStats().evictionCount);
+    }
+
+    @Test
+    public void replacingEntry_updatesSize() {
+        MemoryCache cache = new MemoryCache(100);
+        cache.put("a", "A", 40, NEVER);
+        cache.put("a", "AA", 60, NEVER);
+
+        assertEquals("AA", cache.get("a"));
+        assertEquals(60, cache.getStats().size);
+        assertEquals(1, cache.getStats().entryCount);
+    }
+
+    @Test
+    public void expiredEntry_isMissAndRemoved() throws Exception {
+        MemoryCache cache = new MemoryCache(100);
+        long now = System.currentTimeMillis();
+        cache.put("short", "S", 10, now + 20);
+        cache.put("long", "L", 10, now + 60_000);
+
+        Thread.sleep(50);
+
+        // 每个条目按自己的过期时间判断
+        assertNull(cache.get("short"));
+        assertEquals("L", cache.get("long"));
+        MemoryCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.expiredCount);
+        assertEquals(1, stats.hitCount);
+        assertEquals(1, stats.missCount);
+        assertEquals(10, stats.size);
+    }
+
+    @Test
+    public void alreadyExpiredEntry_isNotCached() {
+        MemoryCache cache = new MemoryCache(100);
+        cache.put("a", "A", 10, System.currentTimeMillis() - 1);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getStats().size);
+    }
+
+    @Test
+    public void trim_dropsExpiredEntriesBeforeEvicting() throws Exception {
+        MemoryCache cache = new MemoryCache(20);
+        long now = System.currentTimeMillis();
+        cache.put("expiring", "E", 10, now + 20);
+        cache.put("b", "B", 10, NEVER);
+
+        Thread.sleep(50);
+        cache.put("c", "C", 10, NEVER);
+
+        assertEquals("B", cache.get("b"));
+        assertEquals("C", cache.get("c"));
+        MemoryCache.Stats stats = cache.getStats();
+        assertEquals(0, stats.evictionCount);
+        assertEquals(1, stats.expiredCount);
+    }
+}
@@ -0,0 +1,166 @@
+package com.zjf.fincialsystem.db;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.zjf.fincialsystem.model.Money;
+import com.zjf.fincialsystem.model.Transaction;
+import com.zjf.fincialsystem.network.MoneyTypeAdapter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 交易记录缓存测试
+ */
+public class TransactionCacheTest {
+
+    private static final String KEY = "transactions";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 与DataCacheManager使用相同的配置
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Money.class, new MoneyTypeAdapter())
+            .create();
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("cache");
+    }
+
+    @Test
+    public void putAndRemove_replayFromJournal() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        cache.put(transaction(1, 1000));
+        cache.put(transaction(2, 2000));
+        cache.put(transaction(3, 3000));
+        cache.remove(2);
+        store.flush();
+
+        assertEquals(4, store.readJournal(KEY).size());
+        TransactionCache reloaded = new TransactionCache(new CacheFileStore(directory), gson, KEY);
+        List<Transaction> all = reloaded.getAll();
+        assertEquals(2, all.size());
+        // 日期倒序
+        assertEquals(3, all.get(0).getId());
+        assertEquals(1, all.get(1).getId());
+    }
+
+    @Test
+    public void mergeWritingSnapshot_clearsJournal() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        cache.put(transaction(1, 1000));
+        cache.put(transaction(2, 2000));
+        store.flush();
+        assertEquals(2, store.readJournal(KEY).size());
+
+        // 大部分交易都变化时直接写快照
+        List<Transaction> latest = new ArrayList<>();
+        latest.add(transaction(3, 3000));
+        latest.add(transaction(4, 4000));
+        latest.add(transaction(5, 5000));
+        assertEquals(5, cache.merge(latest));
+        store.flush();
+
+        assertTrue(store.readJournal(KEY).isEmpty());
+        TransactionCache reloaded = new TransactionCache(new CacheFileStore(directory), gson, KEY);
+        assertEquals(3, reloaded.getAll().size());
+        assertNull(reloaded.get(1));
+        assertNotNull(reloaded.get(5));
+    }
+
+    @Test
+    public void largeJournal_isCompactedIntoSnapshot() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        int count = 500;
+        for (int i = 1; i <= count; i++) {
+            cache.put(transaction(i, i * 1000L));
+        }
+        store.flush();
+
+        // 变更记录超过快照大小后合并为快照，之后只保留合并后追加的记录
+        assertNotNull(store.get(KEY));
+        assertTrue(store.readJournal(KEY).size() < count);
+        TransactionCache reloaded = new TransactionCache(new CacheFileStore(directory), gson, KEY);
+        assertEquals(count, reloaded.getAll().size());
+    }
+
+    @Test
+    public void localChanges_keepRefreshTime() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        cache.put(transaction(1, 1000));
+        assertEquals(0, cache.getRefreshedAt());
+
+        List<Transaction> latest = new ArrayList<>();
+        latest.add(transaction(1, 1000));
+        latest.add(transaction(2, 2000));
+        latest.add(transaction(3, 3000));
+        long before = System.currentTimeMillis();
+        cache.merge(latest);
+        long refreshedAt = cache.getRefreshedAt();
+        assertTrue(refreshedAt >= before);
+
+        // 本地增删不改变刷新时间，重新加载后也一样
+        Thread.sleep(20);
+        cache.put(transaction(4, 4000));
+        cache.remove(2);
+        assertEquals(refreshedAt, cache.getRefreshedAt());
+        store.flush();
+        TransactionCache reloaded = new TransactionCache(new CacheFileStore(directory), gson, KEY);
+        assertEquals(refreshedAt, reloaded.getRefreshedAt());
+        assertEquals(3, reloaded.getAll().size());
+    }
+
+    @Test
+    public void mergeWithoutChanges_recordsRefreshTime() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        List<Transaction> latest = new ArrayList<>();
+        latest.add(transaction(1, 1000));
+        latest.add(transaction(2, 2000));
+        latest.add(transaction(3, 3000));
+        cache.merge(latest);
+        long first = cache.getRefreshedAt();
+
+        Thread.sleep(20);
+        assertEquals(0, cache.merge(latest));
+        assertTrue(cache.getRefreshedAt() > first);
+        store.flush();
+        assertEquals(cache.getRefreshedAt(), new TransactionCache(new CacheFileStore(directory), gson, KEY).getRefreshedAt());
+    }
+
+    @Test
+    public void compactionWithoutRefresh_staysUnrefreshed() throws Exception {
+        CacheFileStore store = new CacheFileStore(directory);
+        TransactionCache cache = new TransactionCache(store, gson, KEY);
+        for (int i = 1; i <= 500; i++) {
+            cache.put(transaction(i, i * 1000L));
+        }
+        store.flush();
+
+        // 本地变更合并出的快照不能当作网络刷新
+        assertNotNull(store.get(KEY));
+        assertEquals(0, new TransactionCache(new CacheFileStore(directory), gson, KEY).getRefreshedAt());
+    }
+
+    private static Transaction transaction(long id, long time) {
+        Transaction transaction = new Transaction(id, 1, 10, Transaction.TYPE_EXPENSE, 12.5, new Date(time), "午餐" + id);
+        transaction.setUpdatedAt(time);
+        return transaction;
+    }
+}
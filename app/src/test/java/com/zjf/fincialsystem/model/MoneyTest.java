@@ -0,0 +1,50 @@
+package com.zjf.fincialsystem.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+/**
+ * 金额模型测试
+ */
+public class MoneyTest {
+
+    @Test
+    public void of_roundsHalfUpToCents() {
+        assertEquals(13, Money.of(0.125).getCents());
+        assertEquals(12, Money.of(0.124).getCents());
+        // 1.005的二进制表示略小于1.005，按十进制字面值舍入
+        assertEquals(101, Money.of(1.005).getCents());
+        assertEquals(-13, Money.of(-0.125).getCents());
+        assertEquals(30, Money.of(0.1 + 0.2).getCents());
+    }
+
+    @Test
+    public void ofBigDecimal_roundsHalfUpToCents() {
+        assertEquals(235, Money.of(new BigDecimal("2.345")).getCents());
+        assertEquals(234, Money.of(new BigDecimal("2.3449")).getCents());
+        assertEquals(-235, Money.of(new BigDecimal("-2.345")).getCents());
+    }
+
+    @Test
+    public void plus_hasNoFloatingPointDrift() {
+        Money total = Money.ZERO;
+        for (int i = 0; i < 10; i++) {
+            total = total.plus(Money.of(0.1));
+        }
+        assertEquals(Money.of(1.0), total);
+        assertEquals(Money.ofCents(70), Money.of(1.0).minus(Money.of(0.3)));
+    }
+
+    @Test
+    public void conversions() {
+        Money money = Money.ofCents(12345);
+        assertEquals("123.45", money.toString());
+        assertEquals(new BigDecimal("123.45"), money.toBigDecimal());
+        assertEquals(123.45, money.toDouble(), 0);
+        assertEquals("1.00", Money.of(1).toString());
+        assertSame(Money.ZERO, Money.ofCents(0));
+    }
+}
@@ -0,0 +1,190 @@
+package com.zjf.fincialsystem.repository;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Request;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * 请求合并测试
+ */
+public class SingleFlightTest {
+
+    private final SingleFlight singleFlight = SingleFlight.getInstance();
+
+    @Test
+    public void concurrentCalls_shareOneRequest() {
+        String key = uniqueKey();
+        FakeCall<String> call = new FakeCall<>();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+        List<String> results = new ArrayList<>();
+        long coalescedBefore = singleFlight.getCoalescedCount();
+
+        for (int i = 0; i < 3; i++) {
+            singleFlight.enqueue(key, () -> {
+                created.incrementAndGet();
+                return call;
+            }, response -> handled.incrementAndGet(), recording(results, call));
+        }
+        assertEquals(1, created.get());
+        assertEquals(2, singleFlight.getCoalescedCount() - coalescedBefore);
+        assertTrue(results.isEmpty());
+
+        call.respond(Response.success("ok"));
+
+        // 共享处理只执行一次，每个调用都收到响应
+        assertEquals(1, handled.get());
+        assertEquals(Arrays.asList("ok", "ok", "ok"), results);
+    }
+
+    @Test
+    public void failure_isDeliveredToEveryWaiter() {
+        String key = uniqueKey();
+        FakeCall<String> call = new FakeCall<>();
+        AtomicInteger handled = new AtomicInteger();
+        List<String> results = new ArrayList<>();
+
+        singleFlight.enqueue(key, () -> call, response -> handled.incrementAndGet(), recording(results, call));
+        singleFlight.enqueue(key, () -> call, response -> handled.incrementAndGet(), recording(results, call));
+        call.fail(new IOException("timeout"));
+
+        assertEquals(0, handled.get());
+        assertEquals(Arrays.asList("failure: timeout", "failure: timeout"), results);
+    }
+
+    @Test
+    public void finishedRequest_isNotReused() {
+        String key = uniqueKey();
+        FakeCall<String> first = new FakeCall<>();
+        FakeCall<String> second = new FakeCall<>();
+        List<String> results = new ArrayList<>();
+
+        singleFlight.enqueue(key, () -> first, null, recording(results, first));
+        first.respond(Response.success("first"));
+
+        // 请求完成后相同键的调用发起新的请求
+        singleFlight.enqueue(key, () -> second, null, recording(results, second));
+        assertTrue(second.isExecuted());
+        second.respond(Response.success("second"));
+
+        assertEquals(Arrays.asList("first", "second"), results);
+    }
+
+    @Test
+    public void factoryFailure_isThrownToCallerAndReleasesKey() {
+        String key = uniqueKey();
+        List<String> results = new ArrayList<>();
+        IllegalArgumentException error = new IllegalArgumentException("bad request");
+
+        try {
+            singleFlight.enqueue(key, () -> {
+                throw error;
+            }, null, recording(results, null));
+            fail("创建请求失败时应抛出异常");
+        } catch (IllegalArgumentException e) {
+            assertSame(error, e);
+        }
+        assertTrue(results.isEmpty());
+
+        // 失败的请求没有登记，相同键可以重新发起
+        FakeCall<String> call = new FakeCall<>();
+        singleFlight.enqueue(key, () -> call, null, recording(results, call));
+        assertTrue(call.isExecuted());
+        call.respond(Response.success("ok"));
+        assertEquals(Arrays.asList("ok"), results);
+    }
+
+    private static String uniqueKey() {
+        return "test_" + System.nanoTime();
+    }
+
+    /**
+     * 记录收到的响应或失败，并检查回调拿到的是实际的请求
+     */
+    private static Callback<String> recording(final List<String> results, final Call<String> expectedCall) {
+        return new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                assertSame(expectedCall, call);
+                results.add(response.body());
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                assertSame(expectedCall, call);
+                results.add("failure: " + t.getMessage());
+            }
+        };
+    }
+
+    /**
+     * 由测试手动完成的请求
+     */
+    private static class FakeCall<T> implements Call<T> {
+        private Callback<T> callback;
+        private boolean canceled;
+
+        void respond(Response<T> response) {
+            callback.onResponse(this, response);
+        }
+
+        void fail(Throwable t) {
+            callback.onFailure(this, t);
+        }
+
+        @Override
+        public Response<T> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<T> callback) {
+            if (this.callback != null) {
+                throw new IllegalStateException("Already executed");
+            }
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return callback != null;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public Call<T> clone() {
+            return new FakeCall<>();
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/").build();
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+    }
+}